@@ -17,12 +17,24 @@ export const CONFIG = {
         SIZE: 36,
         BARREL_LENGTH: 25,
         BARREL_OFFSET: 8,
-        SPEED_NORMAL: 12,
-        SPEED_BOOSTED: 20,
-        MIN_X: 15,
-        MAX_X: 1905,
-        MIN_Y: 15,
-        MAX_Y: 1065
+        // Wall collision; must match GameRoom
+        RADIUS: 18,
+        MOVE_SUBSTEP: 6
+    },
+    
+    WALL: {
+        FILL: 'rgba(20, 60, 45, 0.95)',
+        EDGE: 'rgba(0, 255, 136, 0.5)',
+        MINIMAP_FILL: 'rgba(0, 255, 136, 0.35)'
+    },
+    
+    // Movement input bits; must match PlayerInput on the server
+    INPUT: {
+        UP: 1,
+        DOWN: 2,
+        LEFT: 4,
+        RIGHT: 8,
+        MAX_STEPS_PER_FRAME: 3
     },
     
     WEAPON: {
@@ -201,22 +201,13 @@ export class InputManager {
         return 0;
     }
 
-    getMovement() {
-        if (!this.game.myPlayer || !this.game.isAlive) return null;
-        
-        let x = this.game.myPlayer.x;
-        let y = this.game.myPlayer.y;
-        const speed = this.game.myPlayer.speedBoost ? CONFIG.PLAYER.SPEED_BOOSTED : CONFIG.PLAYER.SPEED_NORMAL;
-
-        if (this.keys['KeyW'] || this.keys['ArrowUp']) y -= speed;
-        if (this.keys['KeyS'] || this.keys['ArrowDown']) y += speed;
-        if (this.keys['KeyA'] || this.keys['ArrowLeft']) x -= speed;
-        if (this.keys['KeyD'] || this.keys['ArrowRight']) x += speed;
-
-        x = Math.max(CONFIG.PLAYER.MIN_X, Math.min(CONFIG.PLAYER.MAX_X, x));
-        y = Math.max(CONFIG.PLAYER.MIN_Y, Math.min(CONFIG.PLAYER.MAX_Y, y));
-
-        return { x, y };
+    getMovementKeys() {
+        let keys = 0;
+        if (this.keys['KeyW'] || this.keys['ArrowUp']) keys |= CONFIG.INPUT.UP;
+        if (this.keys['KeyS'] || this.keys['ArrowDown']) keys |= CONFIG.INPUT.DOWN;
+        if (this.keys['KeyA'] || this.keys['ArrowLeft']) keys |= CONFIG.INPUT.LEFT;
+        if (this.keys['KeyD'] || this.keys['ArrowRight']) keys |= CONFIG.INPUT.RIGHT;
+        return keys;
     }
 
     isSpacePressed() {
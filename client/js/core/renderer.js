@@ -16,6 +16,7 @@ export class Renderer {
         ctx.clearRect(0, 0, CONFIG.CANVAS.WIDTH, CONFIG.CANVAS.HEIGHT);
 
         this.renderBackground();
+        this.renderWalls();
         this.renderPowerUps(powerUps);
         this.renderBullets(bullets);
         this.renderParticles();
@@ -42,6 +43,19 @@ export class Renderer {
         }
     }
 
+    renderWalls() {
+        const tileMap = this.game.tileMap;
+        if (!tileMap) return;
+        const ctx = this.ctx;
+        ctx.fillStyle = CONFIG.WALL.FILL;
+        ctx.strokeStyle = CONFIG.WALL.EDGE;
+        ctx.lineWidth = 1;
+        tileMap.forEachWall((x, y, size) => {
+            ctx.fillRect(x, y, size, size);
+            ctx.strokeRect(x + 0.5, y + 0.5, size - 1, size - 1);
+        });
+    }
+
     renderPowerUps(powerUps) {
         const ctx = this.ctx;
         
@@ -493,6 +507,16 @@ export class Renderer {
             ctx.stroke();
         }
         
+        const tileMap = this.game.tileMap;
+        if (tileMap) {
+            const scaleX = CONFIG.MINIMAP.WIDTH / CONFIG.CANVAS.WIDTH;
+            const scaleY = CONFIG.MINIMAP.HEIGHT / CONFIG.CANVAS.HEIGHT;
+            ctx.fillStyle = CONFIG.WALL.MINIMAP_FILL;
+            tileMap.forEachWall((x, y, size) => {
+                ctx.fillRect(x * scaleX, y * scaleY, size * scaleX, size * scaleY);
+            });
+        }
+        
         Object.values(players).forEach(p => {
             if (!p.alive) return;
             
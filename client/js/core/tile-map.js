@@ -0,0 +1,47 @@
+// Tile Map - Static walls sent by the server (same queries as TileMap.java)
+export class TileMap {
+    constructor(msg) {
+        this.tileSize = msg.tileSize;
+        this.rows = msg.tiles.length;
+        this.cols = this.rows > 0 ? msg.tiles[0].length : 0;
+        this.walls = new Uint8Array(this.cols * this.rows);
+        msg.tiles.forEach((row, ty) => {
+            for (let tx = 0; tx < this.cols; tx++) {
+                if (row[tx] === '#') this.walls[ty * this.cols + tx] = 1;
+            }
+        });
+    }
+
+    isWallTile(tx, ty) {
+        if (tx < 0 || ty < 0 || tx >= this.cols || ty >= this.rows) return false;
+        return this.walls[ty * this.cols + tx] === 1;
+    }
+
+    // Whether a circle overlaps a wall tile; only looks at the tiles under it
+    blocksCircle(x, y, radius) {
+        const size = this.tileSize;
+        const tx0 = Math.max(0, Math.floor((x - radius) / size));
+        const tx1 = Math.min(this.cols - 1, Math.floor((x + radius) / size));
+        const ty0 = Math.max(0, Math.floor((y - radius) / size));
+        const ty1 = Math.min(this.rows - 1, Math.floor((y + radius) / size));
+        for (let ty = ty0; ty <= ty1; ty++) {
+            for (let tx = tx0; tx <= tx1; tx++) {
+                if (!this.isWallTile(tx, ty)) continue;
+                const dx = x - Math.max(tx * size, Math.min(x, tx * size + size));
+                const dy = y - Math.max(ty * size, Math.min(y, ty * size + size));
+                if (dx * dx + dy * dy < radius * radius) return true;
+            }
+        }
+        return false;
+    }
+
+    forEachWall(callback) {
+        for (let ty = 0; ty < this.rows; ty++) {
+            for (let tx = 0; tx < this.cols; tx++) {
+                if (this.walls[ty * this.cols + tx]) {
+                    callback(tx * this.tileSize, ty * this.tileSize, this.tileSize);
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import { NetworkManager } from './managers/network-manager.js';
 import { VoiceChatManager } from './managers/voice-chat-manager.js';
 import { Renderer } from './core/renderer.js';
 import { InputManager } from './core/input-manager.js';
+import { TileMap } from './core/tile-map.js';
 
 class GameClient {
     constructor() {
@@ -22,10 +23,33 @@ class GameClient {
         
         // Game state
         this.playerId = null;
+        this.lastTick = -1;
         this.myPlayer = null;
         this.players = {};
         this.bullets = {};
         this.powerUps = {};
+        this.tileMap = null;
+        
+        // Bullets in flight as announced by shot events, simulated locally
+        // (see updateBullets); this.bullets holds their current positions
+        this.shots = {};
+        
+        // Movement prediction: the server sends step sizes in its welcome,
+        // and acknowledges inputs with the seq field of each player
+        this.movement = null;
+        this.inputSeq = 0;
+        this.pendingInputs = [];
+        this.inputAccumulator = 0;
+        this.lastInputTime = null;
+        this.lastSentAngle = null;
+        
+        // Reconnect: the welcome carries a token that resumes this player
+        // on a new connection while the server still holds its tank
+        this.resumeToken = null;
+        this.resumeGraceMs = 0;
+        this.disconnectedAt = null;
+        this.reconnectAttempts = 0;
+        this.joinRejected = false; // Turned away by an overloaded server
         
         // Player stats
         this.kills = 0;
@@ -71,6 +95,13 @@ class GameClient {
     }
 
     init() {
+        // ?spectate[&server=host] opens a read-only view (big screens, streams)
+        const params = new URLSearchParams(window.location.search);
+        if (params.has('spectate')) {
+            this.startSpectating(params.get('server') || window.location.hostname || 'localhost');
+            return;
+        }
+
         this.inputManager.setupEventListeners(this.canvas);
         this.uiManager.setupJoinScreen();
         this.uiManager.setupLobbyScreen();
@@ -139,6 +170,57 @@ class GameClient {
         this.networkManager.connectToLobby(serverAddress);
     }
 
+    startSpectating(serverAddress) {
+        document.getElementById('join-screen').style.display = 'none';
+        const gameHud = document.getElementById('game-hud');
+        gameHud.style.display = 'block';
+        gameHud.classList.add('active');
+        // Only the shared view: no stats, heat bar or chat for spectators
+        ['player-stats', 'heat-bar-vertical', 'chat-panel'].forEach(id => {
+            const el = document.getElementById(id);
+            if (el) el.style.display = 'none';
+        });
+
+        this.connectSpectator(serverAddress);
+        this.spectateLoop();
+    }
+
+    connectSpectator(serverAddress) {
+        // A new connection may be to a restarted server, whose ticks start again at 0
+        this.lastTick = -1;
+        this.players = {};
+        this.bullets = {};
+        this.powerUps = {};
+        this.networkManager.connectToSpectate(
+            serverAddress,
+            (msg) => {
+                if (msg.type === 'map') {
+                    this.tileMap = new TileMap(msg);
+                }
+                // Only the snapshot matters here; older ticks are ignored
+                if (msg.type === 'update' && !(msg.tick <= this.lastTick)) {
+                    this.lastTick = msg.tick ?? this.lastTick;
+                    this.players = {};
+                    msg.players.forEach(p => this.players[p.id] = p);
+                    this.bullets = {};
+                    msg.bullets.forEach(b => this.bullets[b.id] = b);
+                    this.powerUps = {};
+                    msg.powerUps.forEach(pu => this.powerUps[pu.id] = pu);
+                    this.uiManager.updateLeaderboard(this.players, null);
+                }
+            },
+            () => setTimeout(() => this.connectSpectator(serverAddress), 3000)
+        );
+    }
+
+    spectateLoop() {
+        this.renderer.updateParticles();
+        this.renderer.render(this.players, this.bullets, this.powerUps, null, null, 0, 0, 0, false, 0,
+            CONFIG.WEAPON.MAX_HEAT);
+        this.renderer.renderMinimap(this.players, null);
+        requestAnimationFrame(() => this.spectateLoop());
+    }
+
     joinGame(name) {
         this.networkManager.closeLobby();
         
@@ -192,11 +274,43 @@ class GameClient {
 
     onGameDisconnected() {
         this.networkManager.stopPingMonitoring();
+        if (this.joinRejected) {
+            return; // Already on its way back to the lobby
+        }
+        if (this.disconnectedAt === null) {
+            this.disconnectedAt = Date.now();
+        }
+        if (this.resumeToken && Date.now() - this.disconnectedAt < this.resumeGraceMs) {
+            this.scheduleReconnect();
+            return;
+        }
         this.uiManager.hideLoadingOverlay();
         this.uiManager.showNotification('Connection lost. Refreshing in 3 seconds...', 'error');
         setTimeout(() => location.reload(), 3000);
     }
 
+    // Retries with backoff (0.5s, 1s, 2s, then every 4s) until the grace period runs out
+    scheduleReconnect() {
+        const delay = Math.min(500 * Math.pow(2, this.reconnectAttempts), 4000);
+        this.reconnectAttempts++;
+        this.uiManager.showLoadingOverlay('Reconnecting...');
+        setTimeout(() => {
+            // The new connection numbers its inputs from 1 again
+            this.inputSeq = 0;
+            this.pendingInputs = [];
+            this.lastSentAngle = null;
+            this.networkManager.connectToGame(
+                this.playerName,
+                this.serverAddress || 'localhost',
+                () => this.networkManager.startPingMonitoring(),
+                (msg) => this.handleMessage(msg),
+                () => this.onGameDisconnected(),
+                () => {}, // The close that follows schedules the next attempt
+                this.resumeToken
+            );
+        }, delay);
+    }
+
     onGameError(error) {
         this.uiManager.hideLoadingOverlay();
         this.uiManager.showNotification(error, 'error');
@@ -219,6 +333,52 @@ class GameClient {
             case 'update':
                 this.handleGameUpdate(msg);
                 break;
+            case 'events':
+                // Everything that happened since the last update, sent reliably
+                // apart from it (updates may be skipped, events never are)
+                msg.events.forEach(event => this.handleMessage(event));
+                this.updateBullets();
+                break;
+            case 'welcome':
+                this.playerId = msg.playerId;
+                this.movement = msg;
+                this.resumeToken = msg.resumeToken;
+                this.resumeGraceMs = msg.resumeGraceMs;
+                if (this.disconnectedAt !== null) {
+                    this.disconnectedAt = null;
+                    this.reconnectAttempts = 0;
+                    this.uiManager.hideLoadingOverlay();
+                    this.uiManager.showNotification('Reconnected', 'success');
+                }
+                break;
+            case 'join_rejected':
+                // The server is shedding load and did not create a tank for us
+                this.joinRejected = true;
+                this.networkManager.stopPingMonitoring();
+                this.networkManager.ws.close();
+                this.uiManager.showNotification('Server is full right now. Back to the lobby in a few seconds...', 'error');
+                setTimeout(() => location.reload(), Math.max(3000, msg.retryAfterMs || 0));
+                break;
+            case 'shot':
+                this.shots[msg.id] = msg;
+                break;
+            case 'despawn':
+                delete this.shots[msg.id];
+                break;
+            case 'bullets':
+                // Everything in flight when we joined or resumed
+                this.shots = {};
+                msg.bullets.forEach(shot => this.shots[shot.id] = shot);
+                this.updateBullets();
+                break;
+            case 'resume_failed':
+                // The server no longer holds our tank; join as a new player
+                this.resumeToken = null;
+                this.networkManager.sendMessage({ type: 'join', name: this.playerName });
+                break;
+            case 'map':
+                this.tileMap = new TileMap(msg);
+                break;
             case 'chat':
                 this.uiManager.addChatMessage(msg.msg);
                 break;
@@ -235,6 +395,14 @@ class GameClient {
             case 'game_over':
                 this.handleGameOver(msg);
                 break;
+            case 'join':
+                if (msg.playerId !== this.playerId) {
+                    this.uiManager.showNotification(`${msg.name} joined the battle`, 'info');
+                }
+                break;
+            case 'leave':
+                this.uiManager.showNotification(`${msg.name} left the battle`, 'info');
+                break;
             case 'pong':
                 this.networkManager.handlePong(msg.timestamp);
                 break;
@@ -251,6 +419,36 @@ class GameClient {
     }
 
     handleGameUpdate(msg) {
+        // Only apply state that is newer than what we have
+        if (msg.tick === undefined || msg.tick > this.lastTick) {
+            this.lastTick = msg.tick ?? this.lastTick;
+            this.applySnapshot(msg);
+        }
+        this.updateBullets();
+    }
+
+    /**
+     * Bullet positions as of the latest snapshot. The server moves every
+     * bullet by the same (dx, dy) each tick until it despawns, so the
+     * position at tick t follows from the shot event alone.
+     */
+    updateBullets() {
+        this.bullets = {};
+        Object.values(this.shots).forEach(shot => {
+            const ticks = this.lastTick - shot.tick;
+            if (ticks <= 0) return; // Not out of the barrel yet as of this snapshot
+            this.bullets[shot.id] = {
+                id: shot.id,
+                ownerId: shot.ownerId,
+                x: shot.x + ticks * shot.dx,
+                y: shot.y + ticks * shot.dy,
+                dx: shot.dx,
+                dy: shot.dy
+            };
+        });
+    }
+
+    applySnapshot(msg) {
         this.players = {};
         msg.players.forEach(p => {
             this.players[p.id] = p;
@@ -260,6 +458,7 @@ class GameClient {
                 this.kills = p.score || 0;
                 this.health = p.health || 0;
                 this.isAlive = p.alive;
+                this.reconcile(p);
                 
                 if (p.lastPowerUpCollectTime && (!this.myPlayer || 
                     this.myPlayer.lastPowerUpCollectTime !== p.lastPowerUpCollectTime)) {
@@ -268,15 +467,61 @@ class GameClient {
             }
         });
         
-        this.bullets = {};
-        msg.bullets.forEach(b => this.bullets[b.id] = b);
-        
         this.powerUps = {};
         msg.powerUps.forEach(pu => this.powerUps[pu.id] = pu);
         
         this.updateHUD();
     }
 
+    /**
+     * Server position plus the inputs it has not applied yet. Inputs up to
+     * p.seq are part of the snapshot already, so only newer ones are replayed.
+     */
+    reconcile(p) {
+        if (p.seq !== undefined) {
+            this.pendingInputs = this.pendingInputs.filter(input => input.seq > p.seq);
+        }
+        if (this.movement) {
+            this.pendingInputs.forEach(input => this.applyInput(p, input));
+        }
+    }
+
+    /**
+     * One tick of movement, the same integration as GameRoom.movePlayer():
+     * x first, then y, in small steps that stop at walls.
+     */
+    applyInput(player, input) {
+        if (!player.alive) return;
+        const m = this.movement;
+        const step = player.speedBoost ? m.boostSpeed : m.speed;
+        let targetX = player.x;
+        let targetY = player.y;
+        if (input.keys & CONFIG.INPUT.UP) targetY -= step;
+        if (input.keys & CONFIG.INPUT.DOWN) targetY += step;
+        if (input.keys & CONFIG.INPUT.LEFT) targetX -= step;
+        if (input.keys & CONFIG.INPUT.RIGHT) targetX += step;
+        targetX = Math.max(m.margin, Math.min(m.mapWidth - m.margin, targetX));
+        targetY = Math.max(m.margin, Math.min(m.mapHeight - m.margin, targetY));
+        
+        const blocked = (x, y) => this.tileMap && this.tileMap.blocksCircle(x, y, CONFIG.PLAYER.RADIUS);
+        const substep = CONFIG.PLAYER.MOVE_SUBSTEP;
+        let x = player.x;
+        let y = player.y;
+        while (x !== targetX) {
+            const next = targetX > x ? Math.min(targetX, x + substep) : Math.max(targetX, x - substep);
+            if (blocked(next, y)) break;
+            x = next;
+        }
+        while (y !== targetY) {
+            const next = targetY > y ? Math.min(targetY, y + substep) : Math.max(targetY, y - substep);
+            if (blocked(x, next)) break;
+            y = next;
+        }
+        player.x = x;
+        player.y = y;
+        player.angle = input.angle;
+    }
+
     handleHit(msg) {
         if (msg.target === this.playerId) {
             // Only handle death (when health reaches 0)
@@ -336,6 +581,7 @@ class GameClient {
         this.uiManager.showNotification(`${bonusEmoji} ${bonusName} ${bonusEmoji}`, 'success');
     }
 
+    // Mirrors the server's heat and cooldown model, which refuses shots that break it
     tryFire() {
         const now = Date.now();
         const heatPercentage = (this.heatLevel / CONFIG.WEAPON.MAX_HEAT) * 100;
@@ -360,8 +606,7 @@ class GameClient {
                 type: 'fire', 
                 angle: Math.round(angle),
                 mouseX: Math.round(this.inputManager.mouseX),
-                mouseY: Math.round(this.inputManager.mouseY),
-                heatLevel: Math.round(this.heatLevel)
+                mouseY: Math.round(this.inputManager.mouseY)
             });
             
             // Play attack sound
@@ -377,19 +622,25 @@ class GameClient {
         }
     }
 
-    sendMove() {
-        const movement = this.inputManager.getMovement();
-        if (!movement) return;
-        
-        const angle = this.inputManager.getAngle();
+    sendInputs() {
+        const now = performance.now();
+        if (!this.movement || !this.myPlayer) {
+            this.lastInputTime = now;
+            return;
+        }
         
-        if (movement.x !== this.myPlayer.x || movement.y !== this.myPlayer.y || angle !== this.myPlayer.angle) {
-            this.networkManager.sendMessage({ 
-                type: 'move', 
-                x: Math.round(movement.x), 
-                y: Math.round(movement.y), 
-                angle: Math.round(angle) 
-            });
+        // One input per server tick, whatever the frame rate
+        this.inputAccumulator += now - (this.lastInputTime ?? now);
+        this.lastInputTime = now;
+        let steps = Math.floor(this.inputAccumulator / this.movement.tickMs);
+        this.inputAccumulator -= steps * this.movement.tickMs;
+        if (steps > CONFIG.INPUT.MAX_STEPS_PER_FRAME) {
+            // Back from a hidden tab or a long stall: don't send a burst
+            steps = CONFIG.INPUT.MAX_STEPS_PER_FRAME;
+            this.inputAccumulator = 0;
+        }
+        for (let i = 0; i < steps; i++) {
+            this.sendInput();
         }
         
         if (this.inputManager.isSpacePressed()) {
@@ -397,6 +648,23 @@ class GameClient {
         }
     }
 
+    sendInput() {
+        // Reconnecting: the tank holds still on the server, so do not predict
+        if (this.disconnectedAt !== null) return;
+        const keys = this.isAlive ? this.inputManager.getMovementKeys() : 0;
+        const angle = Math.round(this.inputManager.getAngle());
+        // Standing still with the turret unchanged: nothing to tell the server
+        if (keys === 0 && angle === this.lastSentAngle) return;
+        
+        const input = { seq: ++this.inputSeq, keys: keys, angle: angle };
+        this.networkManager.sendMessage({ type: 'input', seq: input.seq, keys: keys, angle: angle });
+        this.lastSentAngle = angle;
+        
+        // Predict now; the next snapshots confirm or correct it
+        this.pendingInputs.push(input);
+        this.applyInput(this.myPlayer, input);
+    }
+
     sendChat() {
         const input = document.getElementById('chat-input');
         const msg = input.value.trim();
@@ -420,7 +688,7 @@ class GameClient {
     }
 
     gameLoop() {
-        this.sendMove();
+        this.sendInputs();
         this.renderer.updateParticles();
         
         // Calculate FPS
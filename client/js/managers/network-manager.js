@@ -14,11 +14,27 @@ export class NetworkManager {
         return window.location.protocol === 'https:' ? 'wss:' : 'ws:';
     }
 
+    // Plain HTTP snapshot of the lobby; the server answers 304 while nothing changed
+    fetchLobby(serverAddress) {
+        const protocol = window.location.protocol === 'https:' ? 'https:' : 'http:';
+        fetch(`${protocol}//${serverAddress}:8080/lobby`, { cache: 'no-cache' })
+            .then(response => response.ok ? response.json() : null)
+            .then(msg => {
+                if (msg && msg.type === 'lobby_info') {
+                    this.game.uiManager.updateLobbyDisplay(msg);
+                }
+            })
+            .catch(error => console.log('Could not fetch lobby:', error));
+    }
+
     connectToLobby(serverAddress) {
+        // Show the current summary right away, then keep it live over the socket
+        this.fetchLobby(serverAddress);
         try {
             const protocol = this.getWebSocketProtocol();
             this.lobbyWs = new WebSocket(`${protocol}//${serverAddress}:8080/game`);
             
+            // Subscribes: the server pushes lobby_info whenever scores or players change
             this.lobbyWs.onopen = () => {
                 this.sendLobbyMessage({ type: 'lobby_info' });
             };
@@ -53,7 +69,22 @@ export class NetworkManager {
         }
     }
 
-    connectToGame(name, serverAddress, onOpen, onMessage, onClose, onError) {
+    // Read-only feed: the server sends a shared snapshot frame at a fixed rate
+    connectToSpectate(serverAddress, onMessage, onClose) {
+        const protocol = this.getWebSocketProtocol();
+        this.ws = new WebSocket(`${protocol}//${serverAddress}:8080/spectate`);
+        this.ws.onmessage = (event) => {
+            try {
+                onMessage(JSON.parse(event.data));
+            } catch (e) {
+                console.error('Error parsing spectator message:', e);
+            }
+        };
+        this.ws.onclose = onClose;
+    }
+
+    // With a resume token the connection takes over the player's tank instead of joining anew
+    connectToGame(name, serverAddress, onOpen, onMessage, onClose, onError, resumeToken = null) {
         const protocol = this.getWebSocketProtocol();
         const wsUrl = `${protocol}//${serverAddress}:8080/game`;
         console.log('Attempting to connect to:', wsUrl);
@@ -70,7 +101,11 @@ export class NetworkManager {
         this.ws.onopen = () => {
             clearTimeout(connectionTimeout);
             console.log('WebSocket connected');
-            this.sendMessage({ type: 'join', name: name });
+            if (resumeToken) {
+                this.sendMessage({ type: 'resume', token: resumeToken });
+            } else {
+                this.sendMessage({ type: 'join', name: name });
+            }
             onOpen();
         };
         
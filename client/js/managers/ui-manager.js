@@ -21,6 +21,11 @@ export class UIManager {
             return isValid;
         };
         
+        // Page served by the game server itself: it is the server to join
+        if (window.location.port === '8080' && !serverAddressInput.value) {
+            serverAddressInput.value = window.location.hostname;
+        }
+        
         playerNameInput.addEventListener('input', validateForm);
         serverAddressInput.addEventListener('input', validateForm);
         validateForm();
@@ -131,8 +136,8 @@ export class UIManager {
         if (!msg.players || msg.players.length === 0) {
             scoresDiv.innerHTML = '<p class="no-players">No players in the game lobby</p>';
         } else {
+            // Already ranked by the server
             scoresDiv.innerHTML = msg.players
-                .sort((a, b) => b.score - a.score)
                 .slice(0, 10)
                 .map((p, index) => `
                     <div class="lobby-score-item">
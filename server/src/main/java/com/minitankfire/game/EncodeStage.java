@@ -0,0 +1,166 @@
+package com.minitankfire.game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.minitankfire.network.ClientHandler;
+import com.minitankfire.network.OutboundQueue;
+import com.minitankfire.util.JsonUtil;
+
+/**
+ * Encodes per-client updates from a snapshot on a small worker pool.
+ *
+ * When every client sees the same world (no area of interest) the update is
+ * encoded once and shared. With an area of interest each client gets its own
+ * frame, which makes encoding O(clients x entities); the clients are then
+ * split into chunks across the workers, and the calling thread encodes one
+ * chunk itself. Each worker appends into its own reused buffer and hands the
+ * finished frame straight to the client's outbound lanes.
+ *
+ * The tick's events are the same for everyone and are encoded once, into a
+ * message of their own on the reliable lane. The update always goes on the
+ * latest-only lane, so a client that falls behind has at most one update
+ * waiting however many events it has queued.
+ */
+public class EncodeStage {
+    // Smaller chunks cost more in handoff than they save
+    private static final int MIN_CLIENTS_PER_CHUNK = 16;
+    private static final int INITIAL_BUFFER_CHARS = 16384;
+
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_BUFFER_CHARS));
+
+    private final int threads;
+    private final ExecutorService workers;
+
+    /**
+     * Outcome of encoding one snapshot.
+     */
+    static final class Result {
+        final int frames;
+        final long chars;
+        final long workNanos;
+
+        Result(int frames, long chars, long workNanos) {
+            this.frames = frames;
+            this.chars = chars;
+            this.workNanos = workNanos;
+        }
+    }
+
+    /**
+     * @param threads encoding threads including the caller; 1 encodes
+     *                everything on the calling thread
+     */
+    public EncodeStage(int threads) {
+        this.threads = Math.max(1, threads);
+        if (this.threads > 1) {
+            AtomicInteger threadCount = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(this.threads - 1, r -> {
+                Thread t = new Thread(r, "Encoder-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.workers = null;
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Encodes the snapshot for every client and queues it on their lanes.
+     *
+     * @param aoiRadius area-of-interest radius, 0 to send everything to everyone
+     */
+    Result encodeForClients(WorldSnapshot snapshot, Collection<ClientHandler> clients, int aoiRadius) {
+        long eventsStart = System.nanoTime();
+        String events = snapshot.getEvents().isEmpty() ? null : JsonUtil.createEventsMessage(snapshot);
+        int eventFrames = events != null ? 1 : 0;
+        long eventChars = events != null ? events.length() : 0;
+        long eventNanos = System.nanoTime() - eventsStart;
+        if (aoiRadius <= 0) {
+            long start = System.nanoTime();
+            String message = JsonUtil.createUpdateMessage(snapshot, false);
+            for (ClientHandler handler : clients) {
+                deliver(handler, events, message);
+            }
+            return new Result(1 + eventFrames, message.length() + eventChars,
+                    System.nanoTime() - start + eventNanos);
+        }
+
+        List<ClientHandler> list = new ArrayList<>(clients);
+        int chunks = Math.min(threads, Math.max(1, list.size() / MIN_CLIENTS_PER_CHUNK));
+        AtomicLong chars = new AtomicLong(eventChars);
+        AtomicLong workNanos = new AtomicLong(eventNanos);
+        if (chunks == 1) {
+            encodeChunk(snapshot, list, 0, list.size(), aoiRadius, events, chars, workNanos);
+            return new Result(list.size() + eventFrames, chars.get(), workNanos.get());
+        }
+
+        int chunkSize = (list.size() + chunks - 1) / chunks;
+        CountDownLatch done = new CountDownLatch(chunks - 1);
+        for (int c = 1; c < chunks; c++) {
+            int from = c * chunkSize;
+            int to = Math.min(list.size(), from + chunkSize);
+            workers.execute(() -> {
+                try {
+                    encodeChunk(snapshot, list, from, to, aoiRadius, events, chars, workNanos);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        encodeChunk(snapshot, list, 0, chunkSize, aoiRadius, events, chars, workNanos);
+        try {
+            // The snapshot is reused once this returns, so wait for every chunk
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new Result(list.size() + eventFrames, chars.get(), workNanos.get());
+    }
+
+    /**
+     * @param events the shared events message, or null for a quiet tick
+     */
+    private static void encodeChunk(WorldSnapshot snapshot, List<ClientHandler> clients, int from, int to,
+            int aoiRadius, String events, AtomicLong chars, AtomicLong workNanos) {
+        long start = System.nanoTime();
+        StringBuilder sb = BUFFER.get();
+        long encoded = 0;
+        for (int i = from; i < to; i++) {
+            ClientHandler handler = clients.get(i);
+            sb.setLength(0);
+            JsonUtil.appendUpdateMessage(sb, snapshot, snapshot.indexOfPlayer(handler.getPlayerId()), aoiRadius,
+                    false);
+            encoded += sb.length();
+            deliver(handler, events, sb.toString());
+        }
+        chars.addAndGet(encoded);
+        workNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private static void deliver(ClientHandler handler, String events, String update) {
+        if (handler.isConnected()) {
+            if (events != null) {
+                handler.enqueue(OutboundQueue.Lane.EVENTS, events);
+            }
+            handler.enqueue(OutboundQueue.Lane.STATE, update);
+            handler.flushTick();
+        }
+    }
+
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -1,101 +1,554 @@
 package com.minitankfire.game;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import com.minitankfire.model.Player;
 import com.minitankfire.model.Bullet;
+import com.minitankfire.model.PlayerInput;
 import com.minitankfire.model.PowerUp;
 import com.minitankfire.network.ClientHandler;
+import com.minitankfire.network.LinkStats;
+import com.minitankfire.network.OutboundQueue;
+import com.minitankfire.network.ResumeTokens;
+import com.minitankfire.network.SpectatorHub;
+import com.minitankfire.util.CollisionUtil;
+import com.minitankfire.util.JfrEvents;
 import com.minitankfire.util.JsonUtil;
+import com.minitankfire.util.Log;
 
 /**
  * Game Room - Core game logic and state management.
  * Manages all players, bullets, power-ups, and game physics.
  * Runs game loop in separate thread for real-time updates.
+ *
+ * Client threads never mutate the world directly: joins, leaves, inputs and
+ * shots are queued as commands and applied at the start of the next tick.
+ * Movement is server-authoritative: clients send the keys they hold, one
+ * sequence-numbered input per tick, and every snapshot carries the last
+ * input applied for each player so clients can reconcile their prediction.
+ * Everything that happens during a tick is sent once at its end, as a single
+ * update carrying the snapshot and the tick's events. The snapshot is copied
+ * on the loop thread and encoded on another one (see SnapshotPipeline).
+ * Bullets are not part of players' snapshots: they fly in straight lines, so
+ * each one is announced once by a shot event and clients simulate it until
+ * its despawn event.
  */
 public class GameRoom {
-    // Game constants
-    private static final int MAP_WIDTH = 1920;
-    private static final int MAP_HEIGHT = 1080;
-    private static final int PLAYER_SPEED = 12;
+    // Game constants (tunable values live in GameSettings)
+    private static final int PLAYER_SPEED = 12; // Pixels per 60 Hz frame; see movementStep()
     private static final int PLAYER_BOOST_SPEED = 20;
-    private static final int BULLET_SPEED = 50;
+    private static final int TANK_MARGIN = 15; // Tanks stay this far inside the map
+    private static final int TANK_RADIUS = 18; // For wall collisions
+    private static final int MOVE_SUBSTEP = 6; // Tanks stop at most this far short of a wall
+    private static final int MAX_PENDING_INPUTS = 8;
     private static final int BULLET_DAMAGE = 20;
-    private static final int GAME_TICK_MS = 50; // 20 FPS
+    // Weapon heat, matching the client's heat bar: each shot adds 20 of 100
+    // and the gun cools by 12 per second; the hotter, the longer the cooldown
+    private static final int MAX_HEAT = 100_000; // Thousandths
+    private static final int HEAT_PER_SHOT = 20_000;
+    private static final int HEAT_DECAY_PER_SECOND = 12_000;
+    private static final int FIRE_TOLERANCE_MS = 100; // Shots bunched together by network jitter
+    private static final int MAX_FIRE_TOLERANCE_MS = 250; // Even on a measured jittery link
     private static final int RESPAWN_TIME_MS = 3000;
     private static final int SHIELD_DURATION_MS = 5000;
     private static final int SPEED_BOOST_DURATION_MS = 3000;
     private static final int DOUBLE_FIRE_DURATION_MS = 10000;
-    private static final int POWERUP_LIFETIME_MS = 10000;
-    private static final int BULLET_LIFETIME_MS = 1500;
+    private static final int HIT_RADIUS = 20;
+    private static final int GRID_CELL_SIZE = 128;
+    private static final int TIMER_WHEEL_SIZE = 256;
 
     // Game state
     private Map<String, Player> players = new ConcurrentHashMap<>();
     private Map<String, Bullet> bullets = new ConcurrentHashMap<>();
     private Map<String, PowerUp> powerUps = new ConcurrentHashMap<>();
     private Map<String, ClientHandler> clientHandlers = new ConcurrentHashMap<>();
-    private Random random = new Random();
+    private final Random random;
+    private final TickClock clock;
+    private final TileMap tileMap;
+    private long nextEntityId = 0;
+
+    // Replaced as a whole at tick boundaries; see updateSettings()
+    private volatile GameSettings settings;
+    private final TickStats stats = new TickStats();
+
+    // Hands each tick's snapshot to the encoder thread, which may fan out to more encoders
+    private final SnapshotPipeline snapshotPipeline = new SnapshotPipeline(this::sendSnapshot);
+    private volatile EncodeStage encodeStage = new EncodeStage(1);
+
+    // Collision broad-phase (only touched by the game loop thread)
+    private SpatialGrid playerGrid;
+    private final List<Player> collisionCandidates = new ArrayList<>();
+
+    // Inputs from client threads, applied on the game loop thread
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    // Events of the current tick, sent with its snapshot (game loop thread only)
+    private final List<String> tickEvents = new ArrayList<>();
+
+    // Expiries, respawns and power-up timers, scheduled once and fired on their tick
+    private final TimerWheel timers = new TimerWheel(TIMER_WHEEL_SIZE);
+
+    // Rankings for the lobby and game over, plus connections watching the lobby
+    private final ScoreIndex scoreIndex = new ScoreIndex();
+    private final Set<ClientHandler> lobbySubscribers = ConcurrentHashMap.newKeySet();
+    private long publishedLobbyVersion = -1;
+
+    // Read-only viewers; never part of players or clientHandlers
+    private volatile SpectatorHub spectatorHub;
+
+    // Signs the tokens players use to reconnect; null disables resuming
+    private volatile ResumeTokens resumeTokens;
+
+    // Degrades the room under load; null (headless rooms) runs at full settings
+    private volatile LoadGovernor loadGovernor;
 
     // Game loop
     private volatile boolean gameRunning = false;
     private Thread gameLoopThread;
-    private long gameStartTime;
-    private int winningScore = Integer.MAX_VALUE;
     private volatile boolean gameOver = false;
 
+    /**
+     * Creates a real-time room. Call {@link #start()} to run its game loop.
+     */
     public GameRoom() {
-        gameStartTime = System.currentTimeMillis();
-        gameRunning = true;
-        startGameLoop();
+        this(GameSettings.defaults());
+    }
+
+    public GameRoom(GameSettings settings) {
+        this(settings, TileMap.EMPTY);
+    }
+
+    public GameRoom(GameSettings settings, TileMap tileMap) {
+        this(System.nanoTime(), new TickClock(System.currentTimeMillis(), settings.getTickMs()), settings, tileMap);
+    }
+
+    /**
+     * Creates a headless room with a seeded RNG and a clock starting at zero.
+     * Nothing runs until {@link #tick()} is called, so the simulation can be
+     * stepped as fast as the caller likes and replays identically per seed.
+     */
+    public GameRoom(long seed) {
+        this(seed, TileMap.EMPTY);
+    }
+
+    public GameRoom(long seed, TileMap tileMap) {
+        this(seed, new TickClock(0, GameSettings.defaults().getTickMs()), GameSettings.defaults(), tileMap);
+    }
+
+    /**
+     * @param tileMap the room's walls; fixed for the room's lifetime, and
+     *                unless it is the open arena it also fixes the map size
+     */
+    public GameRoom(long seed, TickClock clock, GameSettings settings, TileMap tileMap) {
+        this.random = new Random(seed);
+        this.clock = clock;
+        this.tileMap = tileMap;
+        this.settings = fitToMap(settings, tileMap);
+        this.playerGrid = new SpatialGrid(this.settings.getMapWidth(), this.settings.getMapHeight(), GRID_CELL_SIZE);
+        this.scoreIndex.setWinningScore(this.settings.getWinningScore());
+    }
+
+    /**
+     * Takes the map size from the tile map, so the walls and the bounds of
+     * movement, bullets and spawning agree.
+     */
+    private static GameSettings fitToMap(GameSettings settings, TileMap tileMap) {
+        if (tileMap.getWidth() == 0 || (settings.getMapWidth() == tileMap.getWidth() &&
+                settings.getMapHeight() == tileMap.getHeight())) {
+            return settings;
+        }
+        Map<String, String> size = new HashMap<>();
+        size.put("mapWidth", String.valueOf(tileMap.getWidth()));
+        size.put("mapHeight", String.valueOf(tileMap.getHeight()));
+        Log.info("MAP", "Map size " + settings.getMapWidth() + "x" + settings.getMapHeight() + " replaced by '" +
+                tileMap.getName() + "': " + tileMap.getWidth() + "x" + tileMap.getHeight());
+        return settings.with(size);
+    }
+
+    public void setSpectatorHub(SpectatorHub spectatorHub) {
+        this.spectatorHub = spectatorHub;
+    }
+
+    public void setResumeTokens(ResumeTokens resumeTokens) {
+        this.resumeTokens = resumeTokens;
+    }
+
+    public ResumeTokens getResumeTokens() {
+        return resumeTokens;
+    }
+
+    public void setLoadGovernor(LoadGovernor loadGovernor) {
+        this.loadGovernor = loadGovernor;
+    }
+
+    public LoadGovernor getLoadGovernor() {
+        return loadGovernor;
+    }
+
+    public void setEncodeStage(EncodeStage encodeStage) {
+        this.encodeStage = encodeStage;
     }
 
     public void setWinningScore(int winningScore) {
-        this.winningScore = winningScore;
-        System.out.println("[GAME] Winning score configured: " + winningScore);
+        updateSettings(Collections.singletonMap("winningScore", String.valueOf(winningScore)));
+        Log.info("GAME", "Winning score configured: " + winningScore);
     }
 
-    public String getLobbyInfo() {
-        return JsonUtil.createLobbyInfoMessage(players.values(), winningScore);
+    public GameSettings getSettings() {
+        return settings;
+    }
+
+    public TileMap getTileMap() {
+        return tileMap;
+    }
+
+    /**
+     * Changes settings at the next tick boundary, all at once.
+     *
+     * @return completes with the settings in effect once applied, or
+     *         exceptionally if a value is invalid or the map size is fixed
+     *         by the tile map
+     */
+    public CompletableFuture<GameSettings> updateSettings(Map<String, String> changes) {
+        CompletableFuture<GameSettings> applied = new CompletableFuture<>();
+        if (tileMap.getWidth() > 0 && (changes.containsKey("mapWidth") || changes.containsKey("mapHeight"))) {
+            applied.completeExceptionally(new IllegalArgumentException(
+                    "The map size is fixed by the map '" + tileMap.getName() + "'"));
+            return applied;
+        }
+        Map<String, String> copy = new HashMap<>(changes);
+        commands.add(() -> {
+            try {
+                applySettings(settings.with(copy));
+                applied.complete(settings);
+            } catch (IllegalArgumentException e) {
+                applied.completeExceptionally(e);
+            }
+        });
+        return applied;
+    }
+
+    private void applySettings(GameSettings next) {
+        GameSettings previous = settings;
+        settings = next;
+        if (next.getTickMs() != previous.getTickMs()) {
+            clock.setTickMillis(next.getTickMs());
+        }
+        boolean mapChanged = next.getMapWidth() != previous.getMapWidth() ||
+                next.getMapHeight() != previous.getMapHeight();
+        if (mapChanged) {
+            playerGrid = new SpatialGrid(next.getMapWidth(), next.getMapHeight(), GRID_CELL_SIZE);
+        }
+        if (mapChanged || next.getTickMs() != previous.getTickMs()) {
+            // Clients predict with the step size and map bounds, so resend them
+            for (ClientHandler handler : clientHandlers.values()) {
+                handler.enqueue(OutboundQueue.Lane.EVENTS, createWelcomeMessage(handler.getPlayerId()));
+            }
+        }
+        scoreIndex.setWinningScore(next.getWinningScore());
+        Log.info("GAME", "Settings applied at tick " + clock.currentTick() + ": " + next.toJson());
+    }
+
+    /**
+     * Tick timing and broadcast sizes since the previous call, as JSON.
+     */
+    public String drainStatsJson() {
+        return stats.drainJson(clock.currentTick(), players.size(), bullets.size(), powerUps.size(),
+                clientHandlers.size(), encodeStage.getThreads());
+    }
+
+    /**
+     * Cached lobby summary; only re-encoded after scores or membership changed.
+     */
+    public ScoreIndex.Snapshot getLobbySnapshot() {
+        return scoreIndex.snapshot();
+    }
+
+    /**
+     * Sends the lobby summary now and again whenever it changes, until the
+     * connection joins the game or closes.
+     */
+    public void subscribeLobby(ClientHandler handler) {
+        lobbySubscribers.add(handler);
+        handler.enqueue(OutboundQueue.Lane.STATE, scoreIndex.snapshot().getMessage());
+        handler.flushTick();
+    }
+
+    public void unsubscribeLobby(ClientHandler handler) {
+        lobbySubscribers.remove(handler);
+    }
+
+    /**
+     * Pushes the lobby summary to subscribers if it changed since the last push.
+     */
+    private synchronized void publishLobby() {
+        if (lobbySubscribers.isEmpty() || scoreIndex.getVersion() == publishedLobbyVersion) {
+            return;
+        }
+        ScoreIndex.Snapshot snapshot = scoreIndex.snapshot();
+        publishedLobbyVersion = snapshot.getVersion();
+        for (ClientHandler handler : lobbySubscribers) {
+            // Latest-only lane: a subscriber that is behind just gets the newest summary
+            handler.enqueue(OutboundQueue.Lane.STATE, snapshot.getMessage());
+            handler.flushTick();
+        }
     }
 
     // ========== Player Management ==========
 
     public void addPlayer(String playerId, String name, ClientHandler clientHandler) {
+        commands.add(() -> applyJoin(playerId, name, clientHandler));
+    }
+
+    public void removePlayer(String playerId) {
+        commands.add(() -> applyLeave(playerId));
+    }
+
+    /**
+     * Called when a player's connection closes. The tank stays in the game
+     * for the resume grace period so the player can reconnect to it; after
+     * that (or right away if resuming is off) the player leaves.
+     */
+    public void disconnectPlayer(String playerId, ClientHandler clientHandler) {
+        commands.add(() -> applyDisconnect(playerId, clientHandler));
+    }
+
+    /**
+     * Attaches a new connection to a player that is still in the game,
+     * e.g. after a network drop. The caller has verified the resume token.
+     */
+    public void resumePlayer(String playerId, ClientHandler clientHandler) {
+        commands.add(() -> applyResume(playerId, clientHandler));
+    }
+
+    private void applyJoin(String playerId, String name, ClientHandler clientHandler) {
+        LoadGovernor governor = loadGovernor;
+        if (clientHandler != null && governor != null && !governor.acceptsJoins()) {
+            governor.recordJoinRejected();
+            clientHandler.leaveRoom();
+            clientHandler.send(OutboundQueue.Lane.EVENTS,
+                    JsonUtil.createJoinRejectedMessage("server_full", governor.getRetryAfterMs()));
+            Log.info("GAME", "Player '" + name + "' turned away, shedding load");
+            return;
+        }
         Player player = new Player(playerId, name);
-        player.setX(random.nextInt(MAP_WIDTH));
-        player.setY(random.nextInt(MAP_HEIGHT));
+        placeAtSpawnPoint(player);
         player.setAngle(0);
         player.setHealth(100);
         players.put(playerId, player);
-        clientHandlers.put(playerId, clientHandler);
-        System.out.println("[GAME] Player '" + name + "' joined. Total: " + players.size());
-        broadcastUpdate();
+        scoreIndex.add(player);
+        // Headless rooms add players without a connection
+        if (clientHandler != null) {
+            clientHandlers.put(playerId, clientHandler);
+            clientHandler.enqueue(OutboundQueue.Lane.EVENTS, createWelcomeMessage(playerId));
+            clientHandler.enqueue(OutboundQueue.Lane.EVENTS, tileMap.getMessage());
+            clientHandler.enqueue(OutboundQueue.Lane.EVENTS, createBulletsMessage());
+        }
+        Log.info("GAME", "Player '" + name + "' joined. Total: " + players.size());
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createJoinEvent(playerId, name));
+        }
     }
 
-    public void removePlayer(String playerId) {
-        players.remove(playerId);
+    private void applyLeave(String playerId) {
+        Player player = players.remove(playerId);
         clientHandlers.remove(playerId);
+        if (player == null) {
+            return; // Lobby-only connection, or never joined
+        }
+        scoreIndex.remove(playerId);
         // Remove bullets owned by this player
-        bullets.entrySet().removeIf(entry -> entry.getValue().getOwnerId().equals(playerId));
-        broadcastUpdate();
+        for (Bullet bullet : bullets.values()) {
+            if (bullet.getOwnerId().equals(playerId)) {
+                removeBullet(bullet.getId());
+            }
+        }
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createLeaveEvent(playerId, player.getName()));
+        }
     }
 
-    // ========== Input Handling ==========
+    private void applyDisconnect(String playerId, ClientHandler clientHandler) {
+        if (clientHandlers.get(playerId) != clientHandler) {
+            return; // Lobby-only connection, or already replaced by a resumed one
+        }
+        Player player = players.get(playerId);
+        int graceMs = settings.getResumeGraceMs();
+        if (player == null || graceMs == 0 || resumeTokens == null) {
+            applyLeave(playerId);
+            return;
+        }
+        clientHandlers.remove(playerId);
+        player.getPendingInputs().clear();
+        long detachedTick = clock.currentTick();
+        player.setDetachedTick(detachedTick);
+        timers.schedule(toTicks(graceMs), () -> {
+            Player current = players.get(playerId);
+            if (current != null && current.getDetachedTick() == detachedTick) {
+                Log.info("GAME", "Player '" + current.getName() + "' did not reconnect");
+                applyLeave(playerId);
+            }
+        });
+        Log.info("GAME", "Player '" + player.getName() + "' disconnected, holding for " + graceMs + " ms");
+    }
 
-    public void handleMove(String playerId, int x, int y, int angle) {
+    private void applyResume(String playerId, ClientHandler clientHandler) {
         Player player = players.get(playerId);
-        if (player != null && player.isAlive()) {
-            player.setX(Math.max(0, Math.min(MAP_WIDTH, x)));
-            player.setY(Math.max(0, Math.min(MAP_HEIGHT, y)));
-            player.setAngle(angle);
+        if (player == null) {
+            // Grace period over; the client joins as a new player
+            clientHandler.leaveRoom();
+            clientHandler.send(OutboundQueue.Lane.EVENTS, JsonUtil.createResumeFailedMessage());
+            return;
         }
+        ClientHandler previous = clientHandlers.put(playerId, clientHandler);
+        if (previous != null && previous != clientHandler) {
+            previous.disconnect(); // Old connection not noticed as dead yet
+        }
+        player.setDetachedTick(-1);
+        player.getPendingInputs().clear();
+        player.setLastInputSeq(0); // The new connection numbers its inputs from 1
+        clientHandler.enqueue(OutboundQueue.Lane.EVENTS, createWelcomeMessage(playerId));
+        clientHandler.enqueue(OutboundQueue.Lane.EVENTS, tileMap.getMessage());
+        clientHandler.enqueue(OutboundQueue.Lane.EVENTS, createBulletsMessage());
+        // No join event; the next update carries the full state
+        Log.info("GAME", "Player '" + player.getName() + "' resumed");
+    }
+
+    private String createWelcomeMessage(String playerId) {
+        ResumeTokens tokens = resumeTokens;
+        return JsonUtil.createWelcomeMessage(playerId, settings.getTickMs(), movementStep(false),
+                movementStep(true), settings.getMapWidth(), settings.getMapHeight(), TANK_MARGIN,
+                tokens != null ? tokens.issue(playerId) : null, settings.getResumeGraceMs());
+    }
+
+    /**
+     * The bullets in flight, for a connection that missed their shot
+     * events. Commands run before this tick's movement, so bullets are
+     * still where the previous tick left them.
+     */
+    private String createBulletsMessage() {
+        return JsonUtil.createBulletsMessage(bullets.values(), clock.currentTick() - 1);
+    }
+
+    // ========== Input Handling ==========
+
+    /**
+     * Queues one tick of movement input. Inputs that are not newer than the
+     * last one received are dropped (duplicates, reordering).
+     *
+     * @param keys bitmask of {@link PlayerInput#UP} etc.
+     */
+    public void handleInput(String playerId, long seq, int keys, int angle) {
+        commands.add(() -> applyInput(playerId, new PlayerInput(seq, keys, angle)));
     }
 
     public void handleFire(String playerId, Map<String, String> data) {
+        commands.add(() -> applyFire(playerId, data));
+    }
+
+    private void applyInput(String playerId, PlayerInput input) {
+        Player player = players.get(playerId);
+        if (player == null) {
+            return;
+        }
+        ArrayDeque<PlayerInput> pending = player.getPendingInputs();
+        long newest = pending.isEmpty() ? player.getLastInputSeq() : pending.peekLast().getSeq();
+        if (input.getSeq() <= newest) {
+            return; // Duplicate or reordered
+        }
+        if (pending.size() >= MAX_PENDING_INPUTS) {
+            // The client sends faster than the tick rate: latest wins, and its
+            // prediction is corrected by the next snapshot
+            pending.pollLast();
+            stats.recordInputCoalesced();
+        }
+        pending.addLast(input);
+    }
+
+    /**
+     * Applies one queued input per player per tick. A tick without an input
+     * banks a credit, and when inputs have piled up (e.g. after a network
+     * hiccup) a credit buys a second input that tick. A player therefore
+     * never gets more inputs applied than ticks have passed, however fast
+     * the client sends.
+     */
+    private void movePlayers() {
+        for (Player player : players.values()) {
+            ArrayDeque<PlayerInput> pending = player.getPendingInputs();
+            if (pending.isEmpty()) {
+                player.setInputCredit(Math.min(MAX_PENDING_INPUTS, player.getInputCredit() + 1));
+                continue;
+            }
+            int steps = 1;
+            if (pending.size() > 2 && player.getInputCredit() > 0) {
+                player.setInputCredit(player.getInputCredit() - 1);
+                steps = 2;
+            }
+            for (int i = 0; i < steps; i++) {
+                PlayerInput input = pending.pollFirst();
+                // A dead tank ignores its inputs, but they still count as processed
+                if (player.isAlive()) {
+                    movePlayer(player, input);
+                }
+                player.setLastInputSeq(input.getSeq());
+            }
+        }
+    }
+
+    /**
+     * One tick of movement: first along x, then along y, so a tank slides
+     * along a wall it drives into diagonally. Clients run the same
+     * integration to predict their own tank, so keep it in sync with
+     * game-client.js.
+     */
+    private void movePlayer(Player player, PlayerInput input) {
+        int step = movementStep(player.hasSpeedBoost());
+        int x = player.getX();
+        int y = player.getY();
+        int targetX = x;
+        int targetY = y;
+        if (input.isPressed(PlayerInput.UP)) targetY -= step;
+        if (input.isPressed(PlayerInput.DOWN)) targetY += step;
+        if (input.isPressed(PlayerInput.LEFT)) targetX -= step;
+        if (input.isPressed(PlayerInput.RIGHT)) targetX += step;
+        targetX = Math.max(TANK_MARGIN, Math.min(settings.getMapWidth() - TANK_MARGIN, targetX));
+        targetY = Math.max(TANK_MARGIN, Math.min(settings.getMapHeight() - TANK_MARGIN, targetY));
+
+        // Small steps, so a fast tank cannot skip over a thin wall
+        while (x != targetX) {
+            int next = targetX > x ? Math.min(targetX, x + MOVE_SUBSTEP) : Math.max(targetX, x - MOVE_SUBSTEP);
+            if (tileMap.blocksCircle(next, y, TANK_RADIUS)) {
+                break;
+            }
+            x = next;
+        }
+        while (y != targetY) {
+            int next = targetY > y ? Math.min(targetY, y + MOVE_SUBSTEP) : Math.max(targetY, y - MOVE_SUBSTEP);
+            if (tileMap.blocksCircle(x, next, TANK_RADIUS)) {
+                break;
+            }
+            y = next;
+        }
+        player.setX(x);
+        player.setY(y);
+        player.setAngle(input.getAngle());
+    }
+
+    /**
+     * Pixels a tank moves per tick. The speeds are per 60 Hz frame, the rate
+     * the client used to move at, so movement speed does not depend on the
+     * tick length.
+     */
+    private int movementStep(boolean boosted) {
+        int speed = boosted ? PLAYER_BOOST_SPEED : PLAYER_SPEED;
+        return speed * settings.getTickMs() * 60 / 1000;
+    }
+
+    private void applyFire(String playerId, Map<String, String> data) {
         Player player = players.get(playerId);
-        if (player != null && player.isAlive()) {
+        if (player != null && player.isAlive() && canFire(player)) {
             int angle = player.getAngle();
-            int heatLevel = 0;
             Integer mouseX = null;
             Integer mouseY = null;
             
@@ -107,13 +560,6 @@ public class GameRoom {
                         // Use player's angle
                     }
                 }
-                if (data.containsKey("heatLevel")) {
-                    try {
-                        heatLevel = Integer.parseInt(data.get("heatLevel"));
-                    } catch (NumberFormatException e) {
-                        // Use default
-                    }
-                }
                 // Parse mouse coordinates
                 if (data.containsKey("mouseX")) {
                     try {
@@ -131,37 +577,84 @@ public class GameRoom {
                 }
             }
             
-            createBullet(playerId, player, angle, heatLevel, mouseX, mouseY, 0);
+            createBullet(playerId, player, angle, mouseX, mouseY, 0);
 
-            if (player.hasDoubleFire()) {
+            if (player.hasDoubleFire() && hasBulletAllowance(player)) {
                 // Fire second bullet with slight offset to create dual fire effect
-                createBullet(playerId, player, angle, heatLevel, mouseX, mouseY, 15);
+                createBullet(playerId, player, angle, mouseX, mouseY, 15);
             }
         }
     }
 
-    public void handleChat(String playerId, String msg) {
-        Player player = players.get(playerId);
-        if (player != null) {
-            String chatMessage = JsonUtil.createChatMessage(player.getName() + ": " + msg);
-            broadcastMessage(chatMessage);
+    /**
+     * Checks the server's heat and cooldown model (the client's heatLevel is
+     * not trusted) and the live bullet cap; if the shot is allowed, heats
+     * the gun.
+     */
+    private boolean canFire(Player player) {
+        long tick = clock.currentTick();
+        long sinceLastShotMs = (tick - player.getLastFireTick()) * settings.getTickMs();
+        int heat = player.getLastFireTick() < 0 ? 0
+                : (int) Math.max(0, player.getHeat() - sinceLastShotMs * HEAT_DECAY_PER_SECOND / 1000);
+        if (heat >= MAX_HEAT) {
+            stats.recordFireRejected(TickStats.FireRejection.OVERHEAT);
+            return false;
         }
+        if (player.getLastFireTick() >= 0 && sinceLastShotMs < fireCooldownMs(heat) - fireToleranceMs(player)) {
+            stats.recordFireRejected(TickStats.FireRejection.COOLDOWN);
+            return false;
+        }
+        if (!hasBulletAllowance(player)) {
+            stats.recordFireRejected(TickStats.FireRejection.BULLET_CAP);
+            return false;
+        }
+        player.setHeat(Math.min(MAX_HEAT, heat + HEAT_PER_SHOT));
+        player.setLastFireTick(tick);
+        return true;
     }
 
-    private void createBullet(String playerId, Player player, int angle) {
-        createBullet(playerId, player, angle, 0, null, null, 0);
+    /**
+     * How much earlier than its cooldown a shot may arrive. Jitter bunches
+     * shots sent at the cooldown together; two mean deviations of the
+     * player's measured RTT cover most of that.
+     */
+    private int fireToleranceMs(Player player) {
+        LinkStats link = getLinkStats(player.getId());
+        if (link == null) {
+            return FIRE_TOLERANCE_MS;
+        }
+        return (int) Math.min(MAX_FIRE_TOLERANCE_MS, Math.max(FIRE_TOLERANCE_MS, 2 * link.getJitterMillis()));
     }
 
-    private void createBullet(String playerId, Player player, int angle, int heatLevel) {
-        createBullet(playerId, player, angle, heatLevel, null, null, 0);
+    private static int fireCooldownMs(int heat) {
+        if (heat >= 80_000) {
+            return 2000;
+        } else if (heat >= 60_000) {
+            return 1200;
+        } else if (heat >= 40_000) {
+            return 800;
+        }
+        return 500;
     }
 
-    private void createBullet(String playerId, Player player, int angle, int heatLevel, Integer mouseX, Integer mouseY) {
-        createBullet(playerId, player, angle, heatLevel, mouseX, mouseY, 0);
+    private boolean hasBulletAllowance(Player player) {
+        LoadGovernor governor = loadGovernor;
+        int max = governor != null ? governor.maxBulletsPerPlayer(settings) : settings.getMaxBulletsPerPlayer();
+        return max == 0 || player.getActiveBullets() < max;
     }
 
-    private void createBullet(String playerId, Player player, int angle, int heatLevel, Integer mouseX, Integer mouseY, int angleOffset) {
+    public void handleChat(String playerId, String msg) {
+        Player player = players.get(playerId);
+        if (player != null) {
+            String chatMessage = JsonUtil.createChatMessage(player.getName() + ": " + msg);
+            broadcastMessage(OutboundQueue.Lane.CHAT, chatMessage);
+            flushClients();
+        }
+    }
+
+    private void createBullet(String playerId, Player player, int angle, Integer mouseX, Integer mouseY, int angleOffset) {
         int dx, dy;
+        int bulletSpeed = settings.getBulletSpeed();
         
         // If mouse coordinates are provided, calculate trajectory towards mouse position
         if (mouseX != null && mouseY != null) {
@@ -172,51 +665,189 @@ public class GameRoom {
             
             // Normalize and scale by bullet speed
             if (distance > 0) {
-                dx = (int) ((deltaX / distance) * BULLET_SPEED);
-                dy = (int) ((deltaY / distance) * BULLET_SPEED);
+                dx = (int) ((deltaX / distance) * bulletSpeed);
+                dy = (int) ((deltaY / distance) * bulletSpeed);
             } else {
                 // Fallback to angle-based calculation if mouse is exactly on player
                 double rad = Math.toRadians(angle + angleOffset);
-                dx = (int) (BULLET_SPEED * Math.cos(rad));
-                dy = (int) (BULLET_SPEED * Math.sin(rad));
+                dx = (int) (bulletSpeed * Math.cos(rad));
+                dy = (int) (bulletSpeed * Math.sin(rad));
             }
         } else {
             // Fallback to angle-based calculation
             double rad = Math.toRadians(angle + angleOffset);
-            dx = (int) (BULLET_SPEED * Math.cos(rad));
-            dy = (int) (BULLET_SPEED * Math.sin(rad));
+            dx = (int) (bulletSpeed * Math.cos(rad));
+            dy = (int) (bulletSpeed * Math.sin(rad));
         }
 
-        String bulletId = UUID.randomUUID().toString();
+        String bulletId = nextEntityId("b");
         
-        Bullet bullet = new Bullet(bulletId, playerId, player.getX(), player.getY(), dx, dy, BULLET_DAMAGE);
+        Bullet bullet = new Bullet(bulletId, playerId, player.getX(), player.getY(), dx, dy, BULLET_DAMAGE,
+                clock.currentTick());
         bullets.put(bulletId, bullet);
+        player.setActiveBullets(player.getActiveBullets() + 1);
+        timers.schedule(toTicks(settings.getBulletLifetimeMs()), () -> removeBullet(bulletId));
+        // Fired during commands, so it first moves in this tick's bullet update:
+        // as far as clients are concerned it was at the muzzle at the end of the last tick
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createShotEvent(bullet, clock.currentTick() - 1));
+        }
+    }
+
+    /**
+     * Removes a bullet that did not strike anything: it expired, left the
+     * map or its owner left.
+     */
+    private void removeBullet(String bulletId) {
+        Bullet bullet = bullets.get(bulletId);
+        if (bullet != null) {
+            removeBullet(bullet, false);
+        }
+    }
+
+    /**
+     * Removes a bullet where it is now and tells clients to stop simulating it.
+     *
+     * @param impact true if it struck a tank or a wall
+     */
+    private void removeBullet(Bullet bullet, boolean impact) {
+        if (bullets.remove(bullet.getId()) == null) {
+            return;
+        }
+        Player owner = players.get(bullet.getOwnerId());
+        if (owner != null) {
+            owner.setActiveBullets(owner.getActiveBullets() - 1);
+        }
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createDespawnEvent(bullet.getId(), bullet.getX(), bullet.getY(), impact));
+        }
     }
 
     // ========== Game State Updates ==========
 
-    private void updateGameState() {
+    /**
+     * Advances the simulation by exactly one tick. The real-time loop calls
+     * this on its own thread; headless rooms call it directly.
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        LoadGovernor governor = loadGovernor;
+        double behind = governor != null ? writesBehind() : 0;
+        clock.advance();
+        JfrEvents.TickPhase phase = beginPhase();
+        applyCommands();
+        phase = endPhase(phase, "commands");
+        movePlayers();
+        phase = endPhase(phase, "movement");
+        timers.advance();
+        phase = endPhase(phase, "timers");
         updateBullets();
+        phase = endPhase(phase, "bullets");
         checkCollisions();
+        phase = endPhase(phase, "collisions");
+        removeOutOfBoundsBullets();
+        phase = endPhase(phase, "bounds");
         updatePowerUps();
-        updatePlayerPowerUps();
-        respawnDeadPlayers();
-        broadcastUpdate();
+        phase = endPhase(phase, "powerUps");
+        publishTickSnapshot();
+        phase = endPhase(phase, "snapshot");
+        publishLobby();
+        endPhase(phase, "lobby");
+        long end = System.nanoTime();
+        stats.recordTick(end - start, settings.getTickMs());
+        if (governor != null) {
+            governor.recordTick(end, end - start, settings.getTickMs(), behind);
+        }
+    }
+
+    /**
+     * Share of clients whose previous write is still queued or in progress,
+     * i.e. the writer pool is not keeping up with the tick rate.
+     */
+    private double writesBehind() {
+        int clients = 0;
+        int behind = 0;
+        for (ClientHandler handler : clientHandlers.values()) {
+            clients++;
+            if (handler.isWriteBehind()) {
+                behind++;
+            }
+        }
+        return clients == 0 ? 0 : (double) behind / clients;
+    }
+
+    private static JfrEvents.TickPhase beginPhase() {
+        if (!JfrEvents.isEnabled()) {
+            return null;
+        }
+        JfrEvents.TickPhase phase = new JfrEvents.TickPhase();
+        phase.begin();
+        return phase;
+    }
+
+    /**
+     * Commits the finished phase (if recording) and starts timing the next one.
+     */
+    private JfrEvents.TickPhase endPhase(JfrEvents.TickPhase phase, String name) {
+        if (phase == null) {
+            return null;
+        }
+        phase.end();
+        if (phase.shouldCommit()) {
+            phase.tick = clock.currentTick();
+            phase.phase = name;
+            phase.players = players.size();
+            phase.bullets = bullets.size();
+            phase.powerUps = powerUps.size();
+            phase.commit();
+        }
+        return beginPhase();
+    }
+
+    private void applyCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            } catch (Exception e) {
+                Log.error("COMMAND_ERROR", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deterministic, compact ids for bullets and power-ups.
+     */
+    private synchronized String nextEntityId(String prefix) {
+        return prefix + Long.toString(++nextEntityId, 36);
+    }
+
+    /**
+     * Converts a duration to whole game ticks (at least one) at the current tick length.
+     */
+    private long toTicks(long durationMs) {
+        return Math.max(1, durationMs / settings.getTickMs());
     }
 
     private void updateBullets() {
-        bullets.entrySet().removeIf(entry -> {
-            Bullet bullet = entry.getValue();
+        for (Bullet bullet : bullets.values()) {
             bullet.updatePosition();
+        }
+    }
 
-            // Remove if expired or out of bounds
-            if (bullet.isExpired() ||
-                    bullet.getX() < 0 || bullet.getX() > MAP_WIDTH ||
-                    bullet.getY() < 0 || bullet.getY() > MAP_HEIGHT) {
-                return true;
+    /**
+     * Runs after collision checks so a bullet leaving the map can still hit a
+     * tank it passed on the way out.
+     */
+    private void removeOutOfBoundsBullets() {
+        int width = settings.getMapWidth();
+        int height = settings.getMapHeight();
+        for (Bullet bullet : bullets.values()) {
+            if (bullet.getX() < 0 || bullet.getX() > width ||
+                    bullet.getY() < 0 || bullet.getY() > height) {
+                removeBullet(bullet.getId());
             }
-            return false;
-        });
+        }
     }
 
     private void checkCollisions() {
@@ -224,27 +855,63 @@ public class GameRoom {
         checkPowerUpCollisions();
     }
 
+    /**
+     * Swept bullet-vs-tank collision. Each bullet's path for this tick is
+     * tested as a segment against a circle around every nearby tank, and the
+     * tank touched earliest along the path takes the hit. This keeps hits
+     * correct regardless of bullet speed or tick rate. A wall crossed before
+     * any tank stops the bullet.
+     */
     private void checkBulletPlayerCollisions() {
-        List<String> bulletsToRemove = new ArrayList<>();
+        List<Bullet> bulletsToRemove = new ArrayList<>();
+        playerGrid.rebuild(players.values());
 
         for (Bullet bullet : bullets.values()) {
-            for (Player player : players.values()) {
-                if (isValidTarget(player, bullet)) {
-                    handlePlayerHit(player, bullet);
-                    bulletsToRemove.add(bullet.getId());
-                    break;
+            int x0 = bullet.getPrevX();
+            int y0 = bullet.getPrevY();
+            int x1 = bullet.getX();
+            int y1 = bullet.getY();
+
+            collisionCandidates.clear();
+            playerGrid.query(Math.min(x0, x1) - HIT_RADIUS, Math.min(y0, y1) - HIT_RADIUS,
+                    Math.max(x0, x1) + HIT_RADIUS, Math.max(y0, y1) + HIT_RADIUS,
+                    collisionCandidates);
+
+            double wall = tileMap.segmentHit(x0, y0, x1, y1);
+            Player target = null;
+            double earliest = wall >= 0 ? wall : Double.MAX_VALUE;
+            for (Player player : collisionCandidates) {
+                if (!isValidTarget(player, bullet)) {
+                    continue;
+                }
+                double t = CollisionUtil.sweptCircleHit(x0, y0, x1, y1,
+                        player.getX(), player.getY(), HIT_RADIUS);
+                if (t >= 0 && t < earliest) {
+                    earliest = t;
+                    target = player;
                 }
             }
+
+            if (target != null) {
+                handlePlayerHit(target, bullet);
+            }
+            if (target != null || wall >= 0) {
+                // Stop it where it struck, for the despawn event
+                bullet.setX(x0 + (int) Math.round(earliest * (x1 - x0)));
+                bullet.setY(y0 + (int) Math.round(earliest * (y1 - y0)));
+                bulletsToRemove.add(bullet);
+            }
         }
 
-        bulletsToRemove.forEach(bullets::remove);
+        for (Bullet bullet : bulletsToRemove) {
+            removeBullet(bullet, true);
+        }
     }
 
     private boolean isValidTarget(Player player, Bullet bullet) {
+        // A tank killed earlier in this tick is still in the grid, so re-check alive
         return player.isAlive() &&
-                !player.getId().equals(bullet.getOwnerId()) &&
-                Math.abs(bullet.getX() - player.getX()) < 20 &&
-                Math.abs(bullet.getY() - player.getY()) < 20;
+                !player.getId().equals(bullet.getOwnerId());
     }
 
     private void handlePlayerHit(Player player, Bullet bullet) {
@@ -256,24 +923,26 @@ public class GameRoom {
             // Check if player died from this hit
             if (player.getHealth() <= 0) {
                 player.setAlive(false);
-                player.setLastRespawnTime(System.currentTimeMillis());
-                player.setScore(player.getScore() - 1);
+                player.setLastRespawnTime(clock.nowMillis());
+                scoreIndex.addScore(player, -1);
+                scheduleRespawn(player);
 
                 // Award point to shooter
                 Player shooter = players.get(bullet.getOwnerId());
                 if (shooter != null) {
-                    shooter.setScore(shooter.getScore() + 1);
+                    int shooterScore = scoreIndex.addScore(shooter, 1);
                     // Check winning condition
-                    if (!gameOver && shooter.getScore() >= winningScore) {
+                    if (!gameOver && shooterScore >= settings.getWinningScore()) {
                         endGame(shooter);
                     }
                 }
                 
-                String hitMessage = JsonUtil.createHitMessage(player.getId(), bullet.getOwnerId());
-                broadcastMessage(hitMessage);
-            } else {
-                // Player took damage but is still alive - broadcast health update
-                broadcastUpdate();
+                if (hasEventRecipients()) {
+                    tickEvents.add(JsonUtil.createHitMessage(player.getId(), bullet.getOwnerId()));
+                }
+            } else if (hasEventRecipients()) {
+                // Player took damage but is still alive; the new health goes out with the tick's snapshot
+                tickEvents.add(JsonUtil.createDamageEvent(player.getId(), bullet.getOwnerId(), player.getHealth()));
             }
         } else {
             player.setShield(false);
@@ -283,14 +952,18 @@ public class GameRoom {
     private void endGame(Player winner) {
         gameOver = true;
         gameRunning = false; // stop game loop
-        System.out.println("[GAME] Game over! Winner: " + (winner != null ? winner.getName() : "unknown"));
+        Log.info("GAME", "Game over! Winner: " + (winner != null ? winner.getName() : "unknown"));
 
-        // Build and broadcast game over message with leaderboard
-        String gameOverMsg = JsonUtil.createGameOverMessage(winner.getId(), winner.getName(), players.values());
-        broadcastMessage(gameOverMsg);
+        // Game over (with leaderboard) is the last event of the final tick's update
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createGameOverMessage(winner.getId(), winner.getName(), scoreIndex.ranked()));
+        }
     }
 
     private void checkPowerUpCollisions() {
+        if (powerUps.isEmpty()) {
+            return; // Most ticks; saves a walk of the map per player
+        }
         for (Player player : players.values()) {
             if (player.isAlive()) {
                 powerUps.entrySet().removeIf(entry -> {
@@ -298,6 +971,9 @@ public class GameRoom {
                     if (Math.abs(powerUp.getX() - player.getX()) < 20 &&
                             Math.abs(powerUp.getY() - player.getY()) < 20) {
                         applyPowerUp(player, powerUp.getType());
+                        if (hasEventRecipients()) {
+                            tickEvents.add(JsonUtil.createPickupEvent(player.getId(), powerUp.getType().name()));
+                        }
                         return true;
                     }
                     return false;
@@ -307,63 +983,74 @@ public class GameRoom {
     }
 
     private void updatePowerUps() {
-        powerUps.entrySet().removeIf(entry -> entry.getValue().isExpired());
-
-        // Spawn power-ups randomly (0.5% chance per tick)
-        if (random.nextInt(1000) < 5) {
+        // Spawn power-ups randomly (default 0.5% chance per tick)
+        LoadGovernor governor = loadGovernor;
+        int perMille = governor != null ? governor.powerUpSpawnPerMille(settings) : settings.getPowerUpSpawnPerMille();
+        if (random.nextInt(1000) < perMille) {
             spawnPowerUp();
         }
     }
 
-    private void updatePlayerPowerUps() {
-        long now = System.currentTimeMillis();
-        for (Player player : players.values()) {
-            if (player.hasShield() && now > player.getShieldEndTime()) {
-                player.setShield(false);
-            }
-            if (player.hasSpeedBoost() && now > player.getSpeedBoostEndTime()) {
-                player.setSpeedBoost(false);
-            }
-            if (player.hasDoubleFire() && now > player.getDoubleFireEndTime()) {
-                player.setDoubleFire(false);
-            }
-        }
-    }
-
-    private void respawnDeadPlayers() {
-        long now = System.currentTimeMillis();
-        for (Player player : players.values()) {
-            if (!player.isAlive() && now - player.getLastRespawnTime() > RESPAWN_TIME_MS) {
+    /**
+     * Respawns the player once the respawn delay has elapsed, unless they
+     * left the room in the meantime.
+     */
+    private void scheduleRespawn(Player player) {
+        timers.schedule(toTicks(RESPAWN_TIME_MS), () -> {
+            if (players.get(player.getId()) == player && !player.isAlive()) {
                 respawnPlayer(player);
             }
-        }
+        });
     }
 
     private void applyPowerUp(Player player, PowerUp.Type type) {
-        long now = System.currentTimeMillis();
+        long now = clock.nowMillis();
+        long tick = clock.currentTick();
         
         // Track power-up collection for animation
         player.setLastPowerUpCollectTime(now);
         player.setLastPowerUpType(type.toString());
         
+        // Each expiry only clears the effect if no later pickup extended it
         switch (type) {
-            case SHIELD:
+            case SHIELD: {
+                long endTick = tick + toTicks(SHIELD_DURATION_MS);
                 player.setShield(true);
-                player.setShieldEndTime(now + SHIELD_DURATION_MS);
+                player.setShieldEndTick(endTick);
+                timers.schedule(endTick - tick, () -> {
+                    if (player.getShieldEndTick() == endTick) {
+                        player.setShield(false);
+                    }
+                });
                 break;
-            case SPEED_BOOST:
+            }
+            case SPEED_BOOST: {
+                long endTick = tick + toTicks(SPEED_BOOST_DURATION_MS);
                 player.setSpeedBoost(true);
-                player.setSpeedBoostEndTime(now + SPEED_BOOST_DURATION_MS);
+                player.setSpeedBoostEndTick(endTick);
+                timers.schedule(endTick - tick, () -> {
+                    if (player.getSpeedBoostEndTick() == endTick) {
+                        player.setSpeedBoost(false);
+                    }
+                });
                 break;
-            case DOUBLE_FIRE:
+            }
+            case DOUBLE_FIRE: {
+                long endTick = tick + toTicks(DOUBLE_FIRE_DURATION_MS);
                 player.setDoubleFire(true);
-                player.setDoubleFireEndTime(now + DOUBLE_FIRE_DURATION_MS);
+                player.setDoubleFireEndTick(endTick);
+                timers.schedule(endTick - tick, () -> {
+                    if (player.getDoubleFireEndTick() == endTick) {
+                        player.setDoubleFire(false);
+                    }
+                });
                 break;
+            }
         }
     }
 
     private void spawnPowerUp() {
-        String id = UUID.randomUUID().toString();
+        String id = nextEntityId("p");
         
         // Weighted randomization for better variety
         // Use weighted distribution: 30% Shield, 35% Speed Boost, 35% Double Fire
@@ -377,74 +1064,251 @@ public class GameRoom {
             type = PowerUp.Type.DOUBLE_FIRE;
         }
         
-        // Randomize spawn location with better distribution
-        int x = random.nextInt(MAP_WIDTH);
-        int y = random.nextInt(MAP_HEIGHT);
-        
-        // Avoid spawning too close to edges
-        x = Math.max(100, Math.min(MAP_WIDTH - 100, x));
-        y = Math.max(100, Math.min(MAP_HEIGHT - 100, y));
+        int x;
+        int y;
+        if (tileMap.getSpawnPointCount() > 0) {
+            int spawn = random.nextInt(tileMap.getSpawnPointCount());
+            x = tileMap.getSpawnX(spawn);
+            y = tileMap.getSpawnY(spawn);
+        } else {
+            // Open arena: anywhere, but not too close to the edges
+            int width = settings.getMapWidth();
+            int height = settings.getMapHeight();
+            x = Math.max(100, Math.min(width - 100, random.nextInt(width)));
+            y = Math.max(100, Math.min(height - 100, random.nextInt(height)));
+        }
         
-        powerUps.put(id, new PowerUp(id, type, x, y));
+        powerUps.put(id, new PowerUp(id, type, x, y, clock.currentTick()));
+        timers.schedule(toTicks(settings.getPowerUpLifetimeMs()), () -> powerUps.remove(id));
     }
 
     private void respawnPlayer(Player player) {
         player.setAlive(true);
         player.setHealth(100);
-        player.setX(random.nextInt(MAP_WIDTH));
-        player.setY(random.nextInt(MAP_HEIGHT));
-        String respawnMessage = JsonUtil.createRespawnMessage(player.getId(), player.getX(), player.getY());
-        broadcastMessage(respawnMessage);
+        placeAtSpawnPoint(player);
+        if (hasEventRecipients()) {
+            tickEvents.add(JsonUtil.createRespawnMessage(player.getId(), player.getX(), player.getY()));
+        }
+    }
+
+    /**
+     * Puts the player on a random precomputed spawn point of the map, or
+     * anywhere in an open arena.
+     */
+    private void placeAtSpawnPoint(Player player) {
+        if (tileMap.getSpawnPointCount() > 0) {
+            int spawn = random.nextInt(tileMap.getSpawnPointCount());
+            player.setX(tileMap.getSpawnX(spawn));
+            player.setY(tileMap.getSpawnY(spawn));
+        } else {
+            player.setX(random.nextInt(settings.getMapWidth()));
+            player.setY(random.nextInt(settings.getMapHeight()));
+        }
     }
 
     // ========== Broadcasting ==========
 
-    private void broadcastUpdate() {
-        String updateMessage = JsonUtil.createUpdateMessage(
-                players.values(),
-                bullets.values(),
-                powerUps.values());
-        broadcastMessage(updateMessage);
+    /**
+     * The tick's only state broadcast: the snapshot plus every event of the
+     * tick, encoded once and shared by players and (on their send interval)
+     * spectators. The loop only copies the world into a {@link WorldSnapshot};
+     * encoding and sending happen on the encoder thread while the next tick
+     * simulates.
+     *
+     * With a send interval above one tick, players only get every n-th
+     * tick's update and events accumulate until then. They also wait if the
+     * encoder is still busy with the previous two snapshots. Under load the
+     * governor may stretch the interval.
+     */
+    /**
+     * Events only go to connected players (spectator frames carry none), so
+     * without any the room does not encode them at all, e.g. headless.
+     */
+    private boolean hasEventRecipients() {
+        return !clientHandlers.isEmpty();
+    }
+
+    private void publishTickSnapshot() {
+        long tick = clock.currentTick();
+        LoadGovernor governor = loadGovernor;
+        int sendInterval = governor != null ? governor.sendIntervalTicks(settings) : settings.getSendIntervalTicks();
+        boolean playerFrame = !clientHandlers.isEmpty() && tick % sendInterval == 0;
+        SpectatorHub hub = spectatorHub;
+        boolean spectatorFrame = hub != null && hub.wantsFrame(tick);
+        if (!playerFrame && !spectatorFrame) {
+            if (clientHandlers.isEmpty()) {
+                tickEvents.clear(); // The last player left with events still pending
+            }
+            return;
+        }
+        WorldSnapshot snapshot = snapshotPipeline.acquire();
+        if (snapshot == null) {
+            stats.recordSnapshotSkipped();
+            if (governor != null && playerFrame) {
+                governor.recordSnapshotSkipped();
+            }
+            return;
+        }
+        snapshot.capture(tick, playerFrame, spectatorFrame, players.values(), bullets.values(),
+                powerUps.values(), tickEvents);
+        if (playerFrame || clientHandlers.isEmpty()) {
+            tickEvents.clear();
+        }
+        snapshotPipeline.publish(snapshot);
     }
 
-    private void broadcastMessage(String message) {
+    /**
+     * Encodes a snapshot and hands it to the clients and spectators. Runs on
+     * the encoder thread (or the caller's thread in headless rooms). The
+     * tick's events go out in their own message on the reliable lane so no
+     * event is lost (clients need every shot and despawn); the update is
+     * latest-only, so a slow client skips to the newest one. Spectators
+     * always get the whole map, bullets included.
+     */
+    private void sendSnapshot(WorldSnapshot snapshot) {
+        JfrEvents.Broadcast event = JfrEvents.isEnabled() ? new JfrEvents.Broadcast() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        int recipients = 0;
+        int frames = 0;
+        long chars = 0;
+        long workNanos = 0;
+        if (snapshot.isForPlayers()) {
+            LoadGovernor governor = loadGovernor;
+            EncodeStage.Result result = encodeStage.encodeForClients(snapshot, clientHandlers.values(),
+                    governor != null ? governor.aoiRadius(settings) : settings.getAoiRadius());
+            recipients += clientHandlers.size();
+            frames += result.frames;
+            chars += result.chars;
+            workNanos += result.workNanos;
+        }
+        SpectatorHub hub = spectatorHub;
+        if (snapshot.isForSpectators() && hub != null) {
+            // Spectators skip frames and join at any time, so they get bullets
+            // in every frame instead of as events
+            long spectatorStart = System.nanoTime();
+            String spectatorMessage = JsonUtil.createUpdateMessage(snapshot, true);
+            frames++;
+            chars += spectatorMessage.length();
+            workNanos += System.nanoTime() - spectatorStart;
+            hub.publish(snapshot.getTick(), spectatorMessage);
+            recipients += hub.getSpectatorCount();
+        }
+        stats.recordUpdate(frames, chars, System.nanoTime() - start, workNanos);
+        if (event != null && event.shouldCommit()) {
+            event.tick = snapshot.getTick();
+            event.kind = "update";
+            event.bytes = chars;
+            event.frames = frames;
+            event.recipients = recipients;
+            event.commit();
+        }
+    }
+
+    /**
+     * Queues a message on every client's lane. Nothing is written until the
+     * clients are flushed.
+     */
+    private void broadcastMessage(OutboundQueue.Lane lane, String message) {
+        JfrEvents.Broadcast event = JfrEvents.isEnabled() ? new JfrEvents.Broadcast() : null;
+        if (event != null) {
+            event.begin();
+        }
+        int recipients = 0;
         for (ClientHandler handler : clientHandlers.values()) {
-            try {
-                if (handler.isConnected()) {
-                    handler.sendMessage(message);
-                }
-            } catch (Exception e) {
-                System.err.println("[BROADCAST_ERROR] " + e.getMessage());
+            if (handler.isConnected()) {
+                handler.enqueue(lane, message);
+                recipients++;
             }
         }
+        if (event != null && event.shouldCommit()) {
+            event.tick = clock.currentTick();
+            event.kind = lane.name().toLowerCase();
+            event.bytes = message.length();
+            event.frames = 1;
+            event.recipients = recipients;
+            event.commit();
+        }
+    }
+
+    /**
+     * Writes messages queued outside the tick (chat).
+     */
+    private void flushClients() {
+        for (ClientHandler handler : clientHandlers.values()) {
+            handler.flush();
+        }
+    }
+
+    /**
+     * The server's measurements of a player's connection (RTT, jitter,
+     * throughput, send stalls).
+     *
+     * @return null if the player has no connection (e.g. dropped and
+     *         waiting for a resume)
+     */
+    public LinkStats getLinkStats(String playerId) {
+        ClientHandler handler = clientHandlers.get(playerId);
+        return handler != null ? handler.getLinkStats() : null;
     }
 
-    public void sendToPlayer(String playerId, String message) {
+    public void sendToPlayer(String playerId, OutboundQueue.Lane lane, String message) {
         ClientHandler handler = clientHandlers.get(playerId);
         if (handler != null && handler.isConnected()) {
-            try {
-                handler.sendMessage(message);
-            } catch (Exception e) {
-                System.err.println("[SEND_ERROR] To player " + playerId.substring(0, 8) + ": " + e.getMessage());
-            }
+            handler.send(lane, message);
         }
     }
 
     // ========== Game Loop ==========
 
-    private void startGameLoop() {
+    public TickClock getClock() {
+        return clock;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    public Collection<Player> getPlayers() {
+        return Collections.unmodifiableCollection(players.values());
+    }
+
+    public int getBulletCount() {
+        return bullets.size();
+    }
+
+    /**
+     * Starts the real-time game loop thread.
+     */
+    public void start() {
+        if (gameRunning) {
+            return;
+        }
+        gameRunning = true;
+        snapshotPipeline.start();
         gameLoopThread = new Thread(() -> {
-            System.out.println("[GAME_LOOP] Started (20 FPS, " + GAME_TICK_MS + "ms per frame)");
+            Log.info("GAME_LOOP", "Started (" + settings.getTickMs() + "ms per frame)");
+            // Fixed rate: the next tick is due one tick length after the previous
+            // one was due, so processing time doesn't stretch the tick
+            long nextTickAt = System.nanoTime();
             while (gameRunning) {
                 try {
-                    updateGameState();
-                    Thread.sleep(GAME_TICK_MS);
+                    tick();
+                    nextTickAt += settings.getTickMs() * 1_000_000L;
+                    long sleepNanos = nextTickAt - System.nanoTime();
+                    if (sleepNanos > 0) {
+                        Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                    } else {
+                        nextTickAt = System.nanoTime(); // Overran; don't try to catch up
+                    }
                 } catch (InterruptedException e) {
-                    System.out.println("[GAME_LOOP] Interrupted");
+                    Log.info("GAME_LOOP", "Interrupted");
                     break;
                 }
             }
-            System.out.println("[GAME_LOOP] Stopped");
+            Log.info("GAME_LOOP", "Stopped");
         }, "GameLoop");
         gameLoopThread.setDaemon(false);
         gameLoopThread.start();
@@ -455,11 +1319,13 @@ public class GameRoom {
         if (gameLoopThread != null) {
             gameLoopThread.interrupt();
         }
+        snapshotPipeline.stop();
         // Disconnect all clients
         for (ClientHandler handler : clientHandlers.values()) {
             handler.stop();
         }
         clientHandlers.clear();
+        timers.clear();
         players.clear();
         bullets.clear();
         powerUps.clear();
@@ -0,0 +1,159 @@
+package com.minitankfire.game;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Tunable simulation parameters of a room.
+ *
+ * Instances are immutable: a change produces a new instance, which the room
+ * swaps in at the next tick boundary, so a tick never sees half of an
+ * update. Values are validated when the new instance is built.
+ */
+public final class GameSettings {
+    private final int tickMs;
+    private final int sendIntervalTicks;
+    private final int bulletSpeed;
+    private final int bulletLifetimeMs;
+    private final int powerUpLifetimeMs;
+    private final int powerUpSpawnPerMille;
+    private final int mapWidth;
+    private final int mapHeight;
+    private final int maxBulletsPerPlayer;
+    private final int winningScore;
+    private final int aoiRadius;
+    private final int resumeGraceMs;
+
+    private GameSettings(Map<String, Integer> values) {
+        this.tickMs = values.get("tickMs");
+        this.sendIntervalTicks = values.get("sendIntervalTicks");
+        this.bulletSpeed = values.get("bulletSpeed");
+        this.bulletLifetimeMs = values.get("bulletLifetimeMs");
+        this.powerUpLifetimeMs = values.get("powerUpLifetimeMs");
+        this.powerUpSpawnPerMille = values.get("powerUpSpawnPerMille");
+        this.mapWidth = values.get("mapWidth");
+        this.mapHeight = values.get("mapHeight");
+        this.maxBulletsPerPlayer = values.get("maxBulletsPerPlayer");
+        this.winningScore = values.get("winningScore");
+        this.aoiRadius = values.get("aoiRadius");
+        this.resumeGraceMs = values.get("resumeGraceMs");
+    }
+
+    /**
+     * The built-in defaults (the original game constants). Headless rooms use
+     * these so that simulations replay identically regardless of config.
+     */
+    public static GameSettings defaults() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        values.put("tickMs", 50); // 20 FPS
+        values.put("sendIntervalTicks", 1);
+        values.put("bulletSpeed", 50);
+        values.put("bulletLifetimeMs", 1500);
+        values.put("powerUpLifetimeMs", 10000);
+        values.put("powerUpSpawnPerMille", 5);
+        values.put("mapWidth", 1920);
+        values.put("mapHeight", 1080);
+        values.put("maxBulletsPerPlayer", 8); // 0 = unlimited
+        values.put("winningScore", Integer.MAX_VALUE);
+        values.put("aoiRadius", 0); // 0 = every client sees the whole map
+        values.put("resumeGraceMs", 15000); // 0 = a dropped player leaves at once
+        return new GameSettings(values);
+    }
+
+    /**
+     * Defaults overridden by {@code game.<name>} keys, e.g. {@code game.tickMs}.
+     */
+    public static GameSettings fromProperties(Properties props) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (String name : defaults().toMap().keySet()) {
+            String value = props.getProperty("game." + name);
+            if (value != null) {
+                changes.put(name, value.trim());
+            }
+        }
+        return defaults().with(changes);
+    }
+
+    /**
+     * Returns a copy with the given values changed.
+     *
+     * @throws IllegalArgumentException for unknown names or out-of-range values
+     */
+    public GameSettings with(Map<String, String> changes) {
+        Map<String, Integer> values = toMap();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String name = change.getKey();
+            if (!values.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+            int value;
+            try {
+                value = Integer.parseInt(change.getValue());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + name + "=" + change.getValue());
+            }
+            values.put(name, value);
+        }
+        check(values, "tickMs", 5, 1000);
+        check(values, "sendIntervalTicks", 1, 100);
+        check(values, "bulletSpeed", 1, 500);
+        check(values, "bulletLifetimeMs", 50, 60000);
+        check(values, "powerUpLifetimeMs", 100, 600000);
+        check(values, "powerUpSpawnPerMille", 0, 1000);
+        check(values, "mapWidth", 200, 20000);
+        check(values, "mapHeight", 200, 20000);
+        check(values, "maxBulletsPerPlayer", 0, 10000);
+        check(values, "winningScore", 1, Integer.MAX_VALUE);
+        check(values, "aoiRadius", 0, 20000);
+        check(values, "resumeGraceMs", 0, 300000);
+        return new GameSettings(values);
+    }
+
+    private static void check(Map<String, Integer> values, String name, int min, int max) {
+        int value = values.get(name);
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+    }
+
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        values.put("tickMs", tickMs);
+        values.put("sendIntervalTicks", sendIntervalTicks);
+        values.put("bulletSpeed", bulletSpeed);
+        values.put("bulletLifetimeMs", bulletLifetimeMs);
+        values.put("powerUpLifetimeMs", powerUpLifetimeMs);
+        values.put("powerUpSpawnPerMille", powerUpSpawnPerMille);
+        values.put("mapWidth", mapWidth);
+        values.put("mapHeight", mapHeight);
+        values.put("maxBulletsPerPlayer", maxBulletsPerPlayer);
+        values.put("winningScore", winningScore);
+        values.put("aoiRadius", aoiRadius);
+        values.put("resumeGraceMs", resumeGraceMs);
+        return values;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, Integer> entry : toMap().entrySet()) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        return sb.append('}').toString();
+    }
+
+    public int getTickMs() { return tickMs; }
+    public int getSendIntervalTicks() { return sendIntervalTicks; }
+    public int getBulletSpeed() { return bulletSpeed; }
+    public int getBulletLifetimeMs() { return bulletLifetimeMs; }
+    public int getPowerUpLifetimeMs() { return powerUpLifetimeMs; }
+    public int getPowerUpSpawnPerMille() { return powerUpSpawnPerMille; }
+    public int getMapWidth() { return mapWidth; }
+    public int getMapHeight() { return mapHeight; }
+    public int getMaxBulletsPerPlayer() { return maxBulletsPerPlayer; }
+    public int getWinningScore() { return winningScore; }
+    public int getAoiRadius() { return aoiRadius; }
+    public int getResumeGraceMs() { return resumeGraceMs; }
+}
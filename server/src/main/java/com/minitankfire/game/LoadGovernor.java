@@ -0,0 +1,227 @@
+package com.minitankfire.game;
+
+import java.util.Locale;
+import com.minitankfire.util.Log;
+
+/**
+ * Sheds load in steps while a room runs hot, instead of letting every tick
+ * stretch for everyone.
+ *
+ * Once per window the governor looks at three signals: the average tick
+ * time as a share of the tick length, the share of clients whose previous
+ * write was still pending when the next tick started (or ticks whose
+ * snapshot was skipped because the encoder was behind), and heap use. The
+ * room is hot if any signal reaches its high mark and cool once all are
+ * below their low marks. A run of hot windows raises the level by one; a
+ * longer run of cool windows lowers it by one. The gap between the marks
+ * and the slower way down keep it from flapping.
+ *
+ * Levels are cumulative and ordered from least to most noticeable:
+ * <ol>
+ *   <li>SEND_RATE: snapshots on every other send tick</li>
+ *   <li>VISIBILITY: clients only see entities within a smaller radius</li>
+ *   <li>BULLETS: fewer live bullets per player</li>
+ *   <li>POWER_UPS: no new power-ups</li>
+ *   <li>JOINS: new players are turned away with a "server full" answer</li>
+ * </ol>
+ * None of them changes the room's settings; they are applied on top of
+ * them, so an operator's changes stay in place and come back in full once
+ * the load drops.
+ *
+ * Windows are measured and levels changed on the game loop thread; the
+ * current level may be read from any thread.
+ */
+public class LoadGovernor {
+
+    public enum Level {
+        NORMAL, SEND_RATE, VISIBILITY, BULLETS, POWER_UPS, JOINS
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final long windowNanos;
+    private final double tickHigh;
+    private final double tickLow;
+    private final double backlogHigh;
+    private final double backlogLow;
+    private final double heapHigh;
+    private final double heapLow;
+    private final int upWindows;
+    private final int downWindows;
+    private final int aoiRadius;
+    private final int maxBulletsPerPlayer;
+
+    // Current window (game loop thread only)
+    private long windowStart = -1;
+    private int windowTicks;
+    private long windowTickNanos;
+    private long windowBudgetNanos;
+    private double windowBehind;
+    private int hotWindows;
+    private int coolWindows;
+
+    private volatile Level level = Level.NORMAL;
+    private volatile double tickLoad;
+    private volatile double backlog;
+    private volatile double heap;
+    private volatile long raised;
+    private volatile long lowered;
+    private volatile long joinsRejected;
+
+    /**
+     * @param tickHigh            average tick time, as a share of the tick length, that counts as hot
+     * @param backlogHigh         share of clients behind on writes that counts as hot
+     * @param heapHigh            share of the maximum heap in use that counts as hot
+     * @param upWindows           hot windows in a row before the level goes up
+     * @param downWindows         cool windows in a row before it comes down
+     * @param aoiRadius           visibility radius from level VISIBILITY on
+     * @param maxBulletsPerPlayer live bullet cap from level BULLETS on
+     */
+    public LoadGovernor(long windowMs, double tickHigh, double tickLow, double backlogHigh, double backlogLow,
+            double heapHigh, double heapLow, int upWindows, int downWindows, int aoiRadius,
+            int maxBulletsPerPlayer) {
+        this.windowNanos = Math.max(1, windowMs) * 1_000_000L;
+        this.tickHigh = tickHigh;
+        this.tickLow = Math.min(tickLow, tickHigh);
+        this.backlogHigh = backlogHigh;
+        this.backlogLow = Math.min(backlogLow, backlogHigh);
+        this.heapHigh = heapHigh;
+        this.heapLow = Math.min(heapLow, heapHigh);
+        this.upWindows = Math.max(1, upWindows);
+        this.downWindows = Math.max(1, downWindows);
+        this.aoiRadius = Math.max(1, aoiRadius);
+        this.maxBulletsPerPlayer = Math.max(1, maxBulletsPerPlayer);
+    }
+
+    /**
+     * Records a finished tick and, once the window is over, re-evaluates
+     * the level.
+     *
+     * @param behind share of clients whose previous write was still pending
+     *               when the tick started
+     */
+    void recordTick(long now, long tickNanos, int tickMs, double behind) {
+        if (windowStart < 0) {
+            windowStart = now;
+        }
+        windowTicks++;
+        windowTickNanos += tickNanos;
+        windowBudgetNanos += tickMs * 1_000_000L;
+        windowBehind += behind;
+        if (now - windowStart >= windowNanos) {
+            evaluate();
+            windowStart = now;
+            windowTicks = 0;
+            windowTickNanos = 0;
+            windowBudgetNanos = 0;
+            windowBehind = 0;
+        }
+    }
+
+    /**
+     * The encoder was still busy with older snapshots, so nobody got this
+     * tick's; counts as a tick with every client behind.
+     */
+    void recordSnapshotSkipped() {
+        windowBehind += 1;
+    }
+
+    void recordJoinRejected() {
+        joinsRejected++;
+    }
+
+    private void evaluate() {
+        Runtime runtime = Runtime.getRuntime();
+        tickLoad = (double) windowTickNanos / windowBudgetNanos;
+        backlog = Math.min(1.0, windowBehind / windowTicks);
+        // Includes garbage not collected yet, hence the high marks near the top
+        heap = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+
+        boolean hot = tickLoad >= tickHigh || backlog >= backlogHigh || heap >= heapHigh;
+        boolean cool = tickLoad < tickLow && backlog < backlogLow && heap < heapLow;
+        if (hot) {
+            coolWindows = 0;
+            if (++hotWindows >= upWindows && level.ordinal() < LEVELS.length - 1) {
+                hotWindows = 0;
+                level = LEVELS[level.ordinal() + 1];
+                raised++;
+                Log.warn("LOAD", "Raised to level " + level.ordinal() + " (" + level + "): " + signals());
+            }
+        } else if (cool) {
+            hotWindows = 0;
+            if (++coolWindows >= downWindows && level != Level.NORMAL) {
+                coolWindows = 0;
+                level = LEVELS[level.ordinal() - 1];
+                lowered++;
+                Log.info("LOAD", "Lowered to level " + level.ordinal() + " (" + level + "): " + signals());
+            }
+        } else {
+            hotWindows = 0;
+            coolWindows = 0;
+        }
+    }
+
+    private String signals() {
+        return String.format(Locale.ROOT, "tick %.0f%% of budget, %.0f%% of clients behind, heap %.0f%%",
+                tickLoad * 100, backlog * 100, heap * 100);
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    private boolean atLeast(Level threshold) {
+        return level.ordinal() >= threshold.ordinal();
+    }
+
+    int sendIntervalTicks(GameSettings settings) {
+        int interval = settings.getSendIntervalTicks();
+        return atLeast(Level.SEND_RATE) ? interval * 2 : interval;
+    }
+
+    /**
+     * @return the radius to encode with; 0 = whole map
+     */
+    int aoiRadius(GameSettings settings) {
+        int radius = settings.getAoiRadius();
+        if (!atLeast(Level.VISIBILITY)) {
+            return radius;
+        }
+        return radius == 0 ? aoiRadius : Math.min(radius, aoiRadius);
+    }
+
+    /**
+     * @return the live bullet cap; 0 = unlimited
+     */
+    int maxBulletsPerPlayer(GameSettings settings) {
+        int max = settings.getMaxBulletsPerPlayer();
+        if (!atLeast(Level.BULLETS)) {
+            return max;
+        }
+        return max == 0 ? maxBulletsPerPlayer : Math.min(max, maxBulletsPerPlayer);
+    }
+
+    int powerUpSpawnPerMille(GameSettings settings) {
+        return atLeast(Level.POWER_UPS) ? 0 : settings.getPowerUpSpawnPerMille();
+    }
+
+    boolean acceptsJoins() {
+        return !atLeast(Level.JOINS);
+    }
+
+    /**
+     * @return how long a turned-away player should wait before trying
+     *         again: the soonest the level can come down
+     */
+    int getRetryAfterMs() {
+        return (int) (downWindows * windowNanos / 1_000_000L);
+    }
+
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"level\":%d,\"name\":\"%s\",\"tickLoad\":%.2f,\"backlog\":%.2f,\"heap\":%.2f," +
+                "\"raised\":%d,\"lowered\":%d,\"joinsRejected\":%d}",
+                level.ordinal(), level.name().toLowerCase(), tickLoad, backlog, heap, raised, lowered,
+                joinsRejected);
+    }
+}
@@ -0,0 +1,149 @@
+package com.minitankfire.game;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import com.minitankfire.model.Player;
+import com.minitankfire.util.JsonUtil;
+
+/**
+ * Players ordered by score, kept up to date incrementally.
+ *
+ * A score change moves one entry in the tree instead of re-sorting the whole
+ * room, and the encoded lobby summary is only rebuilt after the ranking,
+ * membership or winning score actually changed. Everything that reads
+ * rankings (lobby HTTP endpoint, lobby subscribers, game over leaderboard)
+ * shares the same index. Scores must be changed through {@link #addScore}
+ * so the tree stays ordered.
+ */
+public class ScoreIndex {
+
+    /**
+     * Immutable, pre-encoded lobby summary.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final String etag;
+        private final String message;
+        private final byte[] body;
+
+        private Snapshot(long version, String etag, String message) {
+            this.version = version;
+            this.etag = etag;
+            this.message = message;
+            this.body = message.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public long getVersion() { return version; }
+        public String getEtag() { return etag; }
+        public String getMessage() { return message; }
+
+        /**
+         * UTF-8 encoded message; callers must not modify it.
+         */
+        public byte[] getBody() { return body; }
+    }
+
+    private static final class Entry {
+        final Player player;
+        final int score;
+        final long joinOrder;
+
+        Entry(Player player, int score, long joinOrder) {
+            this.player = player;
+            this.score = score;
+            this.joinOrder = joinOrder;
+        }
+    }
+
+    // Highest score first; ties keep join order
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingInt((Entry e) -> -e.score)
+            .thenComparingLong(e -> e.joinOrder);
+
+    private final TreeSet<Entry> ranking = new TreeSet<>(RANKING);
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Distinguishes ETags across server restarts
+    private final String etagPrefix = Long.toString(System.currentTimeMillis(), 36);
+    private long nextJoinOrder = 0;
+    private long version = 0;
+    private int winningScore = Integer.MAX_VALUE;
+    private Snapshot snapshot;
+
+    public synchronized void add(Player player) {
+        remove(player.getId());
+        Entry entry = new Entry(player, player.getScore(), nextJoinOrder++);
+        ranking.add(entry);
+        entries.put(player.getId(), entry);
+        version++;
+    }
+
+    public synchronized void remove(String playerId) {
+        Entry entry = entries.remove(playerId);
+        if (entry != null) {
+            ranking.remove(entry);
+            version++;
+        }
+    }
+
+    /**
+     * Changes a player's score and moves it to its new rank.
+     *
+     * @return the new score
+     */
+    public synchronized int addScore(Player player, int delta) {
+        int score = player.getScore() + delta;
+        player.setScore(score);
+        Entry entry = entries.get(player.getId());
+        if (entry != null) {
+            ranking.remove(entry);
+            Entry moved = new Entry(player, score, entry.joinOrder);
+            ranking.add(moved);
+            entries.put(player.getId(), moved);
+            version++;
+        }
+        return score;
+    }
+
+    public synchronized void setWinningScore(int winningScore) {
+        if (this.winningScore != winningScore) {
+            this.winningScore = winningScore;
+            version++;
+        }
+    }
+
+    /**
+     * Changes whenever the ranking, membership or winning score changes.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return players from highest to lowest score
+     */
+    public synchronized List<Player> ranked() {
+        List<Player> list = new ArrayList<>(ranking.size());
+        for (Entry entry : ranking) {
+            list.add(entry.player);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the lobby summary, encoding it only if something changed since
+     * the last call.
+     */
+    public synchronized Snapshot snapshot() {
+        if (snapshot == null || snapshot.getVersion() != version) {
+            String message = JsonUtil.createLobbyInfoMessage(ranked(), winningScore);
+            snapshot = new Snapshot(version, "\"" + etagPrefix + "-" + version + "\"", message);
+        }
+        return snapshot;
+    }
+}
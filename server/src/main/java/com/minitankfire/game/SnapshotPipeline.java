@@ -0,0 +1,90 @@
+package com.minitankfire.game;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import com.minitankfire.util.Log;
+
+/**
+ * Double buffer between the game loop and the snapshot encoder.
+ *
+ * There are exactly two {@link WorldSnapshot}s: while the encoder thread
+ * encodes and sends one, the loop captures the next tick into the other, so
+ * simulation, encoding and network writes overlap on different cores. If
+ * the encoder still holds both when the loop wants to capture, the loop
+ * skips that send; the room keeps the tick's events for the next one.
+ *
+ * Until {@link #start()} is called (headless rooms) snapshots are handed to
+ * the sink on the caller's thread.
+ */
+public class SnapshotPipeline {
+    private final BlockingQueue<WorldSnapshot> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<WorldSnapshot> ready = new ArrayBlockingQueue<>(2);
+    private final Consumer<WorldSnapshot> sink;
+    private volatile Thread encoderThread;
+
+    /**
+     * @param sink encodes and sends a snapshot; must not keep it after returning
+     */
+    public SnapshotPipeline(Consumer<WorldSnapshot> sink) {
+        this.sink = sink;
+        free.add(new WorldSnapshot());
+        free.add(new WorldSnapshot());
+    }
+
+    /**
+     * @return the buffer to capture into, or null if the encoder holds both
+     */
+    WorldSnapshot acquire() {
+        return free.poll();
+    }
+
+    /**
+     * Hands a captured snapshot to the encoder (or encodes it right away if
+     * no encoder thread runs).
+     */
+    void publish(WorldSnapshot snapshot) {
+        if (encoderThread == null) {
+            encode(snapshot);
+        } else {
+            ready.add(snapshot); // Never full: only two snapshots exist
+        }
+    }
+
+    private void encode(WorldSnapshot snapshot) {
+        try {
+            sink.accept(snapshot);
+        } catch (RuntimeException e) {
+            Log.error("SNAPSHOT_ERROR", e.getMessage());
+        } finally {
+            free.add(snapshot);
+        }
+    }
+
+    public synchronized void start() {
+        if (encoderThread != null) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    encode(ready.take());
+                }
+            } catch (InterruptedException e) {
+                // Stopped
+            }
+        }, "SnapshotEncoder");
+        thread.setDaemon(true);
+        encoderThread = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = encoderThread;
+        if (thread != null) {
+            thread.interrupt();
+            encoderThread = null;
+            ready.drainTo(free);
+        }
+    }
+}
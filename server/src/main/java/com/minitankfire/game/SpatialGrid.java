@@ -0,0 +1,77 @@
+package com.minitankfire.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.minitankfire.model.Player;
+
+/**
+ * Uniform grid broad-phase for player collision queries.
+ * Rebuilt once per tick; cells are reused so rebuilding does not allocate.
+ */
+public class SpatialGrid {
+    private final int cellSize;
+    private final int cols;
+    private final int rows;
+    private final List<List<Player>> cells;
+    private final List<Integer> usedCells = new ArrayList<>();
+
+    public SpatialGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.cols = width / cellSize + 1;
+        this.rows = height / cellSize + 1;
+        this.cells = new ArrayList<>(cols * rows);
+        for (int i = 0; i < cols * rows; i++) {
+            cells.add(new ArrayList<>(4));
+        }
+    }
+
+    /**
+     * Clears the grid and inserts every alive player by its centre position.
+     */
+    public void rebuild(Iterable<Player> players) {
+        for (int index : usedCells) {
+            cells.get(index).clear();
+        }
+        usedCells.clear();
+
+        for (Player player : players) {
+            if (!player.isAlive()) {
+                continue;
+            }
+            int index = cellIndex(column(player.getX()), row(player.getY()));
+            List<Player> cell = cells.get(index);
+            if (cell.isEmpty()) {
+                usedCells.add(index);
+            }
+            cell.add(player);
+        }
+    }
+
+    /**
+     * Collects every player whose cell overlaps the given box into {@code out}.
+     * The box should already be expanded by the collision radius.
+     */
+    public void query(int minX, int minY, int maxX, int maxY, List<Player> out) {
+        int c0 = column(minX);
+        int c1 = column(maxX);
+        int r0 = row(minY);
+        int r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                out.addAll(cells.get(cellIndex(c, r)));
+            }
+        }
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(cols - 1, x / cellSize));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / cellSize));
+    }
+
+    private int cellIndex(int column, int row) {
+        return row * cols + column;
+    }
+}
@@ -0,0 +1,49 @@
+package com.minitankfire.game;
+
+/**
+ * Simulation clock counted in game ticks.
+ *
+ * All game logic reads time from here instead of the wall clock, so the same
+ * inputs and seed always produce the same game, and a headless room can run
+ * as fast as the CPU allows. Millisecond timestamps are derived from the tick
+ * count and an epoch; changing the tick length re-bases the epoch so
+ * simulation time stays continuous.
+ */
+public class TickClock {
+    private volatile long epochMillis;
+    private volatile int tickMillis;
+    private volatile long tick;
+
+    public TickClock(long epochMillis, int tickMillis) {
+        this.epochMillis = epochMillis;
+        this.tickMillis = tickMillis;
+    }
+
+    public long currentTick() {
+        return tick;
+    }
+
+    public int getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Simulation time in milliseconds (epoch + ticks elapsed × tick length).
+     */
+    public long nowMillis() {
+        return epochMillis + tick * tickMillis;
+    }
+
+    public void advance() {
+        tick++;
+    }
+
+    /**
+     * Changes the length of future ticks. Called on the ticking thread.
+     */
+    public void setTickMillis(int tickMillis) {
+        long now = nowMillis();
+        this.tickMillis = tickMillis;
+        this.epochMillis = now - tick * tickMillis;
+    }
+}
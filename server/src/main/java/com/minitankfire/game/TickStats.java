@@ -0,0 +1,123 @@
+package com.minitankfire.game;
+
+import java.util.Arrays;
+
+/**
+ * Tick timings and update sizes of a room since the last report.
+ *
+ * The game loop records every tick and the encoder every update it sends.
+ * The admin endpoint drains a summary, which also starts a new measuring
+ * window.
+ */
+public class TickStats {
+    /**
+     * Why a shot was refused.
+     */
+    public enum FireRejection { COOLDOWN, OVERHEAT, BULLET_CAP }
+
+    private long ticks;
+    private long totalTickNanos;
+    private long maxTickNanos;
+    private long overruns;
+    private long updatesSent;
+    private long framesEncoded;
+    private long totalFrameChars;
+    private long totalEncodeNanos;
+    private long maxEncodeNanos;
+    private long totalEncodeWorkNanos;
+    private long snapshotsSkipped;
+    private long inputsCoalesced;
+    private final long[] firesRejected = new long[FireRejection.values().length];
+
+    /**
+     * @param tickNanos time spent in the tick
+     * @param tickMs    tick length the tick had to fit in
+     */
+    public synchronized void recordTick(long tickNanos, int tickMs) {
+        ticks++;
+        totalTickNanos += tickNanos;
+        maxTickNanos = Math.max(maxTickNanos, tickNanos);
+        if (tickNanos > tickMs * 1_000_000L) {
+            overruns++;
+        }
+    }
+
+    /**
+     * @param frames      distinct frames encoded (1 if all clients share one)
+     * @param chars       their total length
+     * @param encodeNanos wall time from snapshot to frames queued
+     * @param workNanos   encoding time summed over all encoder threads
+     */
+    public synchronized void recordUpdate(int frames, long chars, long encodeNanos, long workNanos) {
+        updatesSent++;
+        framesEncoded += frames;
+        totalFrameChars += chars;
+        totalEncodeNanos += encodeNanos;
+        maxEncodeNanos = Math.max(maxEncodeNanos, encodeNanos);
+        totalEncodeWorkNanos += workNanos;
+    }
+
+    /**
+     * A send was skipped because the encoder still held both snapshot buffers.
+     */
+    public synchronized void recordSnapshotSkipped() {
+        snapshotsSkipped++;
+    }
+
+    /**
+     * An input arrived while the player's queue was full and replaced the
+     * newest queued one.
+     */
+    public synchronized void recordInputCoalesced() {
+        inputsCoalesced++;
+    }
+
+    public synchronized void recordFireRejected(FireRejection reason) {
+        firesRejected[reason.ordinal()]++;
+    }
+
+    /**
+     * Summarizes the window as JSON and resets it. Frame sizes are counted
+     * in characters, which equals bytes unless player names are non-ASCII.
+     * encodeWorkMicros close to encodeThreads x avgEncodeMicros means the
+     * encoders are saturated.
+     */
+    public synchronized String drainJson(long tick, int players, int bullets, int powerUps, int clients,
+            int encodeThreads) {
+        String json = "{\"tick\":" + tick +
+                ",\"players\":" + players +
+                ",\"bullets\":" + bullets +
+                ",\"powerUps\":" + powerUps +
+                ",\"clients\":" + clients +
+                ",\"ticks\":" + ticks +
+                ",\"avgTickMicros\":" + (ticks == 0 ? 0 : totalTickNanos / ticks / 1000) +
+                ",\"maxTickMicros\":" + maxTickNanos / 1000 +
+                ",\"overruns\":" + overruns +
+                ",\"updatesSent\":" + updatesSent +
+                ",\"framesEncoded\":" + framesEncoded +
+                ",\"avgFrameBytes\":" + (framesEncoded == 0 ? 0 : totalFrameChars / framesEncoded) +
+                ",\"encodeThreads\":" + encodeThreads +
+                ",\"avgEncodeMicros\":" + (updatesSent == 0 ? 0 : totalEncodeNanos / updatesSent / 1000) +
+                ",\"maxEncodeMicros\":" + maxEncodeNanos / 1000 +
+                ",\"encodeWorkMicros\":" + (updatesSent == 0 ? 0 : totalEncodeWorkNanos / updatesSent / 1000) +
+                ",\"snapshotsSkipped\":" + snapshotsSkipped +
+                ",\"inputsCoalesced\":" + inputsCoalesced +
+                ",\"firesRejected\":{\"cooldown\":" + firesRejected[FireRejection.COOLDOWN.ordinal()] +
+                ",\"overheat\":" + firesRejected[FireRejection.OVERHEAT.ordinal()] +
+                ",\"bulletCap\":" + firesRejected[FireRejection.BULLET_CAP.ordinal()] + "}}";
+        ticks = 0;
+        totalTickNanos = 0;
+        maxTickNanos = 0;
+        overruns = 0;
+        updatesSent = 0;
+        framesEncoded = 0;
+        totalFrameChars = 0;
+        totalEncodeNanos = 0;
+        maxEncodeNanos = 0;
+        totalEncodeWorkNanos = 0;
+        snapshotsSkipped = 0;
+        inputsCoalesced = 0;
+        Arrays.fill(firesRejected, 0);
+        return json;
+    }
+}
@@ -0,0 +1,284 @@
+package com.minitankfire.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Static walls of a room, as a grid of square tiles.
+ *
+ * Loaded once when the room is created and never changed, so it is safe to
+ * read from any thread. Walls are one bit per tile; a point or tank query
+ * looks at a constant number of tiles, and a segment (bullet path, line of
+ * sight) walks only the tiles it crosses. Tiles outside the grid are open;
+ * the map edges are enforced by the room.
+ *
+ * Map files live under {@code maps/} on the classpath: optional
+ * {@code key=value} header lines ({@code tileSize}), then one line per row
+ * with {@code #} for a wall and {@code .} for floor. Lines starting with
+ * {@code #} and a space are comments.
+ */
+public final class TileMap {
+    /** An open arena without walls. */
+    public static final TileMap EMPTY = new TileMap("open", 1, 0, 0, new long[0]);
+
+    private static final int DEFAULT_TILE_SIZE = 40;
+
+    private final String name;
+    private final int tileSize;
+    private final int cols;
+    private final int rows;
+    private final long[] walls;
+    private final int[] spawnX;
+    private final int[] spawnY;
+    private final String message;
+
+    private TileMap(String name, int tileSize, int cols, int rows, long[] walls) {
+        this.name = name;
+        this.tileSize = tileSize;
+        this.cols = cols;
+        this.rows = rows;
+        this.walls = walls;
+
+        // Spawn points: centres of open tiles with no wall around them
+        List<Integer> spawns = new ArrayList<>();
+        for (int ty = 0; ty < rows; ty++) {
+            for (int tx = 0; tx < cols; tx++) {
+                if (isOpenAround(tx, ty)) {
+                    spawns.add(ty * cols + tx);
+                }
+            }
+        }
+        this.spawnX = new int[spawns.size()];
+        this.spawnY = new int[spawns.size()];
+        for (int i = 0; i < spawns.size(); i++) {
+            spawnX[i] = (spawns.get(i) % cols) * tileSize + tileSize / 2;
+            spawnY[i] = (spawns.get(i) / cols) * tileSize + tileSize / 2;
+        }
+        this.message = encodeMessage();
+    }
+
+    /**
+     * Loads {@code maps/<name>.map} from the classpath.
+     */
+    public static TileMap load(String name) throws IOException {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IOException("Invalid map name: " + name);
+        }
+        String path = "maps/" + name + ".map";
+        try (InputStream in = TileMap.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IOException("Map not found on the classpath: " + path);
+            }
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+            return parse(name, lines);
+        }
+    }
+
+    static TileMap parse(String name, List<String> lines) throws IOException {
+        int tileSize = DEFAULT_TILE_SIZE;
+        List<String> grid = new ArrayList<>();
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("# ")) {
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq > 0) {
+                if (line.substring(0, eq).trim().equals("tileSize")) {
+                    tileSize = Integer.parseInt(line.substring(eq + 1).trim());
+                }
+                continue;
+            }
+            grid.add(line);
+        }
+        if (grid.isEmpty() || tileSize <= 0) {
+            throw new IOException("Map " + name + " has no rows or an invalid tile size");
+        }
+
+        int cols = grid.get(0).length();
+        int rows = grid.size();
+        long[] walls = new long[(cols * rows + 63) / 64];
+        for (int ty = 0; ty < rows; ty++) {
+            String row = grid.get(ty);
+            if (row.length() != cols) {
+                throw new IOException("Map " + name + ": row " + ty + " has " + row.length() +
+                        " tiles, expected " + cols);
+            }
+            for (int tx = 0; tx < cols; tx++) {
+                char c = row.charAt(tx);
+                if (c == '#') {
+                    int bit = ty * cols + tx;
+                    walls[bit >>> 6] |= 1L << bit;
+                } else if (c != '.') {
+                    throw new IOException("Map " + name + ": unknown tile '" + c + "' in row " + ty);
+                }
+            }
+        }
+        return new TileMap(name, tileSize, cols, rows, walls);
+    }
+
+    public String getName() { return name; }
+    public int getTileSize() { return tileSize; }
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+
+    // Size of the map in pixels, 0 for the open arena (which takes its size from the settings)
+    public int getWidth() { return cols * tileSize; }
+    public int getHeight() { return rows * tileSize; }
+
+    public boolean hasWalls() {
+        for (long word : walls) {
+            if (word != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isWallTile(int tx, int ty) {
+        if (tx < 0 || ty < 0 || tx >= cols || ty >= rows) {
+            return false;
+        }
+        int bit = ty * cols + tx;
+        return (walls[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    private boolean isOpenAround(int tx, int ty) {
+        for (int y = ty - 1; y <= ty + 1; y++) {
+            for (int x = tx - 1; x <= tx + 1; x++) {
+                if (isWallTile(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public boolean isWallAt(int x, int y) {
+        return isWallTile(Math.floorDiv(x, tileSize), Math.floorDiv(y, tileSize));
+    }
+
+    /**
+     * Whether a circle overlaps any wall tile. Checks only the tiles under
+     * the circle's bounding box (at most four for a tank on 40 px tiles).
+     */
+    public boolean blocksCircle(int x, int y, int radius) {
+        if (cols == 0) {
+            return false;
+        }
+        int tx0 = Math.max(0, Math.floorDiv(x - radius, tileSize));
+        int tx1 = Math.min(cols - 1, Math.floorDiv(x + radius, tileSize));
+        int ty0 = Math.max(0, Math.floorDiv(y - radius, tileSize));
+        int ty1 = Math.min(rows - 1, Math.floorDiv(y + radius, tileSize));
+        long r2 = (long) radius * radius;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                if (!isWallTile(tx, ty)) {
+                    continue;
+                }
+                // Closest point of the tile to the centre
+                long dx = x - Math.max(tx * tileSize, Math.min(x, tx * tileSize + tileSize));
+                long dy = y - Math.max(ty * tileSize, Math.min(y, ty * tileSize + tileSize));
+                if (dx * dx + dy * dy < r2) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the tiles crossed by a segment (grid DDA) and finds the first wall.
+     *
+     * @return position along the segment (0..1) where it enters a wall, or
+     *         -1 if the segment is clear
+     */
+    public double segmentHit(int x0, int y0, int x1, int y1) {
+        if (cols == 0) {
+            return -1;
+        }
+        int tx = Math.floorDiv(x0, tileSize);
+        int ty = Math.floorDiv(y0, tileSize);
+        if (isWallTile(tx, ty)) {
+            return 0;
+        }
+        int endX = Math.floorDiv(x1, tileSize);
+        int endY = Math.floorDiv(y1, tileSize);
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        double tDeltaX = stepX != 0 ? tileSize / Math.abs(dx) : Double.MAX_VALUE;
+        double tDeltaY = stepY != 0 ? tileSize / Math.abs(dy) : Double.MAX_VALUE;
+        double tMaxX = stepX > 0 ? ((tx + 1) * (double) tileSize - x0) / dx
+                : (stepX < 0 ? (tx * (double) tileSize - x0) / dx : Double.MAX_VALUE);
+        double tMaxY = stepY > 0 ? ((ty + 1) * (double) tileSize - y0) / dy
+                : (stepY < 0 ? (ty * (double) tileSize - y0) / dy : Double.MAX_VALUE);
+
+        while (tx != endX || ty != endY) {
+            double t;
+            if (tMaxX < tMaxY) {
+                tx += stepX;
+                t = tMaxX;
+                tMaxX += tDeltaX;
+            } else {
+                ty += stepY;
+                t = tMaxY;
+                tMaxY += tDeltaY;
+            }
+            if (t > 1) {
+                break; // Rounding; the end tile is behind us
+            }
+            if (isWallTile(tx, ty)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasLineOfSight(int x0, int y0, int x1, int y1) {
+        return segmentHit(x0, y0, x1, y1) < 0;
+    }
+
+    public int getSpawnPointCount() { return spawnX.length; }
+    public int getSpawnX(int i) { return spawnX[i]; }
+    public int getSpawnY(int i) { return spawnY[i]; }
+
+    /**
+     * The map as a message for clients, which draw the walls and use them
+     * to predict their own movement. Encoded once.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    private String encodeMessage() {
+        StringBuilder sb = new StringBuilder(64 + rows * (cols + 3));
+        sb.append("{\"type\":\"map\",\"name\":\"").append(name)
+                .append("\",\"tileSize\":").append(tileSize)
+                .append(",\"tiles\":[");
+        for (int ty = 0; ty < rows; ty++) {
+            if (ty > 0) {
+                sb.append(',');
+            }
+            sb.append('"');
+            for (int tx = 0; tx < cols; tx++) {
+                sb.append(isWallTile(tx, ty) ? '#' : '.');
+            }
+            sb.append('"');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.minitankfire.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import com.minitankfire.util.Log;
+
+/**
+ * Hashed timer wheel driven by game ticks.
+ *
+ * Timers are bucketed by {@code deadline % wheelSize}; timers further away
+ * than one revolution carry a round counter. Advancing the wheel only visits
+ * the bucket for the current tick, so the per-tick cost depends on how many
+ * timers are due rather than on how many entities exist.
+ *
+ * Scheduling is thread-safe (new timers are handed over through a queue and
+ * placed on the next advance); advancing and running callbacks happen on the
+ * game loop thread only.
+ */
+public class TimerWheel {
+
+    /**
+     * Handle for a scheduled callback.
+     */
+    public static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public long getDeadline() { return deadline; }
+
+        /**
+         * Prevents the callback from running. The entry is dropped lazily
+         * the next time its bucket is visited.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    private final List<List<Timeout>> buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private volatile long currentTick;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Schedules a callback to run {@code delayTicks} ticks from now (at least one).
+     */
+    public Timeout schedule(long delayTicks, Runnable task) {
+        Timeout timeout = new Timeout(currentTick + Math.max(1, delayTicks), task);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Moves the wheel forward one tick and runs every callback that is due.
+     */
+    public void advance() {
+        long tick = currentTick + 1;
+        currentTick = tick;
+        transferPending(tick);
+
+        List<Timeout> bucket = buckets.get((int) (tick & mask));
+        int kept = 0;
+        int size = bucket.size();
+        for (int i = 0; i < size; i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                Log.error("TIMER_ERROR", e.getMessage());
+            }
+        }
+        // Callbacks never touch the current bucket (new timers go through pending)
+        bucket.subList(kept, size).clear();
+    }
+
+    private void transferPending(long tick) {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // A timer scheduled late for an already-passed tick fires now
+            long deadline = Math.max(timeout.deadline, tick);
+            timeout.remainingRounds = (deadline - tick) / buckets.size();
+            buckets.get((int) (deadline & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Drops every scheduled timer.
+     */
+    public void clear() {
+        pending.clear();
+        for (List<Timeout> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.minitankfire.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.minitankfire.model.Bullet;
+import com.minitankfire.model.Player;
+import com.minitankfire.model.PowerUp;
+
+/**
+ * Copy of the world at the end of one tick, in flat arrays.
+ *
+ * The game loop captures it and another thread encodes it, so encoding
+ * never reads entities that the next tick is already changing. Instances
+ * are reused: {@link SnapshotPipeline} owns two and flips between them,
+ * and the arrays only grow. A snapshot is only read between capture and
+ * release, while the loop is filling the other one.
+ */
+public final class WorldSnapshot {
+    // Bits of playerFlags
+    public static final int ALIVE = 1;
+    public static final int SHIELD = 2;
+    public static final int SPEED_BOOST = 4;
+    public static final int DOUBLE_FIRE = 8;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long tick;
+    private boolean forPlayers;
+    private boolean forSpectators;
+
+    private int playerCount;
+    private String[] playerIds = new String[INITIAL_CAPACITY];
+    private String[] playerNames = new String[INITIAL_CAPACITY];
+    private int[] playerX = new int[INITIAL_CAPACITY];
+    private int[] playerY = new int[INITIAL_CAPACITY];
+    private int[] playerAngle = new int[INITIAL_CAPACITY];
+    private int[] playerScore = new int[INITIAL_CAPACITY];
+    private int[] playerHealth = new int[INITIAL_CAPACITY];
+    private int[] playerFlags = new int[INITIAL_CAPACITY];
+    private long[] playerInputSeq = new long[INITIAL_CAPACITY];
+    private final Map<String, Integer> playerIndex = new HashMap<>();
+
+    private int bulletCount;
+    private String[] bulletIds = new String[INITIAL_CAPACITY];
+    private String[] bulletOwners = new String[INITIAL_CAPACITY];
+    private int[] bulletX = new int[INITIAL_CAPACITY];
+    private int[] bulletY = new int[INITIAL_CAPACITY];
+    private int[] bulletDx = new int[INITIAL_CAPACITY];
+    private int[] bulletDy = new int[INITIAL_CAPACITY];
+
+    private int powerUpCount;
+    private String[] powerUpIds = new String[INITIAL_CAPACITY];
+    private String[] powerUpTypes = new String[INITIAL_CAPACITY];
+    private int[] powerUpX = new int[INITIAL_CAPACITY];
+    private int[] powerUpY = new int[INITIAL_CAPACITY];
+
+    private final List<String> events = new ArrayList<>();
+
+    /**
+     * Copies the world. Game loop thread only.
+     *
+     * @param events already encoded events; copied only for player frames,
+     *               spectator-only frames carry none so events are never sent twice
+     * @param bullets copied only for spectator frames; players simulate
+     *                bullets from their shot events
+     */
+    void capture(long tick, boolean forPlayers, boolean forSpectators, Collection<Player> players,
+            Collection<Bullet> bullets, Collection<PowerUp> powerUps, List<String> events) {
+        this.tick = tick;
+        this.forPlayers = forPlayers;
+        this.forSpectators = forSpectators;
+
+        playerCount = 0;
+        playerIndex.clear();
+        ensurePlayerCapacity(players.size());
+        for (Player player : players) {
+            if (playerCount == playerIds.length) {
+                ensurePlayerCapacity(playerCount + 1);
+            }
+            int i = playerCount++;
+            playerIds[i] = player.getId();
+            playerIndex.put(player.getId(), i);
+            playerNames[i] = player.getName();
+            playerX[i] = player.getX();
+            playerY[i] = player.getY();
+            playerAngle[i] = player.getAngle();
+            playerScore[i] = player.getScore();
+            playerHealth[i] = player.getHealth();
+            playerFlags[i] = (player.isAlive() ? ALIVE : 0) |
+                    (player.hasShield() ? SHIELD : 0) |
+                    (player.hasSpeedBoost() ? SPEED_BOOST : 0) |
+                    (player.hasDoubleFire() ? DOUBLE_FIRE : 0);
+            playerInputSeq[i] = player.getLastInputSeq();
+        }
+
+        bulletCount = 0;
+        if (forSpectators) {
+            captureBullets(bullets);
+        }
+
+        powerUpCount = 0;
+        ensurePowerUpCapacity(powerUps.size());
+        for (PowerUp powerUp : powerUps) {
+            if (powerUpCount == powerUpIds.length) {
+                ensurePowerUpCapacity(powerUpCount + 1);
+            }
+            int i = powerUpCount++;
+            powerUpIds[i] = powerUp.getId();
+            powerUpTypes[i] = powerUp.getType().name();
+            powerUpX[i] = powerUp.getX();
+            powerUpY[i] = powerUp.getY();
+        }
+
+        this.events.clear();
+        if (forPlayers) {
+            this.events.addAll(events);
+        }
+    }
+
+    private void captureBullets(Collection<Bullet> bullets) {
+        ensureBulletCapacity(bullets.size());
+        for (Bullet bullet : bullets) {
+            if (bulletCount == bulletIds.length) {
+                ensureBulletCapacity(bulletCount + 1);
+            }
+            int i = bulletCount++;
+            bulletIds[i] = bullet.getId();
+            bulletOwners[i] = bullet.getOwnerId();
+            bulletX[i] = bullet.getX();
+            bulletY[i] = bullet.getY();
+            bulletDx[i] = bullet.getDx();
+            bulletDy[i] = bullet.getDy();
+        }
+    }
+
+    private void ensurePlayerCapacity(int needed) {
+        if (needed <= playerIds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, playerIds.length * 2);
+        playerIds = Arrays.copyOf(playerIds, capacity);
+        playerNames = Arrays.copyOf(playerNames, capacity);
+        playerX = Arrays.copyOf(playerX, capacity);
+        playerY = Arrays.copyOf(playerY, capacity);
+        playerAngle = Arrays.copyOf(playerAngle, capacity);
+        playerScore = Arrays.copyOf(playerScore, capacity);
+        playerHealth = Arrays.copyOf(playerHealth, capacity);
+        playerFlags = Arrays.copyOf(playerFlags, capacity);
+        playerInputSeq = Arrays.copyOf(playerInputSeq, capacity);
+    }
+
+    private void ensureBulletCapacity(int needed) {
+        if (needed <= bulletIds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, bulletIds.length * 2);
+        bulletIds = Arrays.copyOf(bulletIds, capacity);
+        bulletOwners = Arrays.copyOf(bulletOwners, capacity);
+        bulletX = Arrays.copyOf(bulletX, capacity);
+        bulletY = Arrays.copyOf(bulletY, capacity);
+        bulletDx = Arrays.copyOf(bulletDx, capacity);
+        bulletDy = Arrays.copyOf(bulletDy, capacity);
+    }
+
+    private void ensurePowerUpCapacity(int needed) {
+        if (needed <= powerUpIds.length) {
+            return;
+        }
+        int capacity = Math.max(needed, powerUpIds.length * 2);
+        powerUpIds = Arrays.copyOf(powerUpIds, capacity);
+        powerUpTypes = Arrays.copyOf(powerUpTypes, capacity);
+        powerUpX = Arrays.copyOf(powerUpX, capacity);
+        powerUpY = Arrays.copyOf(powerUpY, capacity);
+    }
+
+    public long getTick() { return tick; }
+    public boolean isForPlayers() { return forPlayers; }
+    public boolean isForSpectators() { return forSpectators; }
+
+    public int getPlayerCount() { return playerCount; }
+
+    /**
+     * @return the player's index, or -1 if it is not in the snapshot
+     */
+    public int indexOfPlayer(String playerId) {
+        Integer index = playerIndex.get(playerId);
+        return index == null ? -1 : index;
+    }
+
+    public String getPlayerId(int i) { return playerIds[i]; }
+    public String getPlayerName(int i) { return playerNames[i]; }
+    public int getPlayerX(int i) { return playerX[i]; }
+    public int getPlayerY(int i) { return playerY[i]; }
+    public int getPlayerAngle(int i) { return playerAngle[i]; }
+    public int getPlayerScore(int i) { return playerScore[i]; }
+    public int getPlayerHealth(int i) { return playerHealth[i]; }
+    public boolean hasPlayerFlag(int i, int flag) { return (playerFlags[i] & flag) != 0; }
+    public long getPlayerInputSeq(int i) { return playerInputSeq[i]; }
+
+    public int getBulletCount() { return bulletCount; }
+    public String getBulletId(int i) { return bulletIds[i]; }
+    public String getBulletOwner(int i) { return bulletOwners[i]; }
+    public int getBulletX(int i) { return bulletX[i]; }
+    public int getBulletY(int i) { return bulletY[i]; }
+    public int getBulletDx(int i) { return bulletDx[i]; }
+    public int getBulletDy(int i) { return bulletDy[i]; }
+
+    public int getPowerUpCount() { return powerUpCount; }
+    public String getPowerUpId(int i) { return powerUpIds[i]; }
+    public String getPowerUpType(int i) { return powerUpTypes[i]; }
+    public int getPowerUpX(int i) { return powerUpX[i]; }
+    public int getPowerUpY(int i) { return powerUpY[i]; }
+
+    public List<String> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+}
@@ -8,23 +8,26 @@ public class Bullet {
     private String id;
     private String ownerId;
     private int x, y;
+    private int prevX, prevY;
     private int dx, dy;
     private int damage;
-    private long creationTime;
+    private long spawnTick;
 
-    public Bullet(String id, String ownerId, int x, int y, int dx, int dy) {
-        this(id, ownerId, x, y, dx, dy, 20); // Default damage set to 20
+    public Bullet(String id, String ownerId, int x, int y, int dx, int dy, long spawnTick) {
+        this(id, ownerId, x, y, dx, dy, 20, spawnTick); // Default damage set to 20
     }
 
-    public Bullet(String id, String ownerId, int x, int y, int dx, int dy, int damage) {
+    public Bullet(String id, String ownerId, int x, int y, int dx, int dy, int damage, long spawnTick) {
         this.id = id;
         this.ownerId = ownerId;
         this.x = x;
         this.y = y;
+        this.prevX = x;
+        this.prevY = y;
         this.dx = dx;
         this.dy = dy;
         this.damage = damage;
-        this.creationTime = System.currentTimeMillis();
+        this.spawnTick = spawnTick;
     }
 
     // Getters
@@ -34,18 +37,22 @@ public class Bullet {
     public void setX(int x) { this.x = x; }
     public int getY() { return y; }
     public void setY(int y) { this.y = y; }
+    public int getPrevX() { return prevX; }
+    public int getPrevY() { return prevY; }
     public int getDx() { return dx; }
     public int getDy() { return dy; }
     public int getDamage() { return damage; }
     public void setDamage(int damage) { this.damage = damage; }
-    public long getCreationTime() { return creationTime; }
+    public long getSpawnTick() { return spawnTick; }
 
+    /**
+     * Advances the bullet by one tick, remembering where it started so the
+     * travelled segment can be swept for collisions.
+     */
     public void updatePosition() {
+        prevX = x;
+        prevY = y;
         x += dx;
         y += dy;
     }
-
-    public boolean isExpired() {
-        return System.currentTimeMillis() - creationTime > 1500; // 1.5 seconds (updated bullet lifetime)
-    }
 }
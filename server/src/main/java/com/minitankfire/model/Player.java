@@ -1,5 +1,7 @@
 package com.minitankfire.model;
 
+import java.util.ArrayDeque;
+
 /**
  * Player model representing a tank in the game.
  * Manages player state including position, health, and power-ups.
@@ -14,13 +16,20 @@ public class Player {
     private boolean alive;
     private long lastRespawnTime;
     private boolean hasShield;
-    private long shieldEndTime;
+    private long shieldEndTick;
     private boolean speedBoost;
-    private long speedBoostEndTime;
+    private long speedBoostEndTick;
     private boolean doubleFire;
-    private long doubleFireEndTime;
+    private long doubleFireEndTick;
     private long lastPowerUpCollectTime;
     private String lastPowerUpType;
+    private int activeBullets;
+    private final ArrayDeque<PlayerInput> pendingInputs = new ArrayDeque<>();
+    private long lastInputSeq;
+    private int inputCredit;
+    private long detachedTick = -1;
+    private int heat; // Weapon heat right after the last shot, in thousandths of the maximum scale
+    private long lastFireTick = -1;
 
     public Player(String id, String name) {
         this.id = id;
@@ -44,6 +53,8 @@ public class Player {
     public void setY(int y) { this.y = y; }
     public int getAngle() { return angle; }
     public void setAngle(int angle) { this.angle = angle; }
+    public int getActiveBullets() { return activeBullets; }
+    public void setActiveBullets(int activeBullets) { this.activeBullets = activeBullets; }
     public int getScore() { return score; }
     public void setScore(int score) { this.score = score; }
     public int getHealth() { return health; }
@@ -54,17 +65,35 @@ public class Player {
     public void setLastRespawnTime(long lastRespawnTime) { this.lastRespawnTime = lastRespawnTime; }
     public boolean hasShield() { return hasShield; }
     public void setShield(boolean hasShield) { this.hasShield = hasShield; }
-    public long getShieldEndTime() { return shieldEndTime; }
-    public void setShieldEndTime(long shieldEndTime) { this.shieldEndTime = shieldEndTime; }
+    public long getShieldEndTick() { return shieldEndTick; }
+    public void setShieldEndTick(long shieldEndTick) { this.shieldEndTick = shieldEndTick; }
     public boolean hasSpeedBoost() { return speedBoost; }
     public void setSpeedBoost(boolean speedBoost) { this.speedBoost = speedBoost; }
-    public long getSpeedBoostEndTime() { return speedBoostEndTime; }
-    public void setSpeedBoostEndTime(long speedBoostEndTime) { this.speedBoostEndTime = speedBoostEndTime; }
+    public long getSpeedBoostEndTick() { return speedBoostEndTick; }
+    public void setSpeedBoostEndTick(long speedBoostEndTick) { this.speedBoostEndTick = speedBoostEndTick; }
     public boolean hasDoubleFire() { return doubleFire; }
     public void setDoubleFire(boolean doubleFire) { this.doubleFire = doubleFire; }
-    public long getDoubleFireEndTime() { return doubleFireEndTime; }
-    public void setDoubleFireEndTime(long doubleFireEndTime) { this.doubleFireEndTime = doubleFireEndTime; }
+    public long getDoubleFireEndTick() { return doubleFireEndTick; }
+    public void setDoubleFireEndTick(long doubleFireEndTick) { this.doubleFireEndTick = doubleFireEndTick; }
     
+    // Movement inputs waiting for their tick (game loop thread only)
+    public ArrayDeque<PlayerInput> getPendingInputs() { return pendingInputs; }
+    public long getLastInputSeq() { return lastInputSeq; }
+    public void setLastInputSeq(long lastInputSeq) { this.lastInputSeq = lastInputSeq; }
+    // Ticks that passed without an input, which a lagging client may catch up on
+    public int getInputCredit() { return inputCredit; }
+    public void setInputCredit(int inputCredit) { this.inputCredit = inputCredit; }
+
+    // Tick the connection dropped, or -1 while connected (resume grace window)
+    public long getDetachedTick() { return detachedTick; }
+    public void setDetachedTick(long detachedTick) { this.detachedTick = detachedTick; }
+
+    // Weapon heat and cooldown (server-side model)
+    public int getHeat() { return heat; }
+    public void setHeat(int heat) { this.heat = heat; }
+    public long getLastFireTick() { return lastFireTick; }
+    public void setLastFireTick(long lastFireTick) { this.lastFireTick = lastFireTick; }
+
     // Power-up collection tracking for animations
     public long getLastPowerUpCollectTime() { return lastPowerUpCollectTime; }
     public void setLastPowerUpCollectTime(long lastPowerUpCollectTime) { this.lastPowerUpCollectTime = lastPowerUpCollectTime; }
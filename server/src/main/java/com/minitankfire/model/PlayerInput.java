@@ -0,0 +1,31 @@
+package com.minitankfire.model;
+
+/**
+ * PlayerInput model representing one movement input sent by a client.
+ * Holds the movement keys pressed for one tick and the turret angle; the
+ * server moves the tank one tick's step per input.
+ */
+public class PlayerInput {
+    // Bits of keys
+    public static final int UP = 1;
+    public static final int DOWN = 2;
+    public static final int LEFT = 4;
+    public static final int RIGHT = 8;
+    public static final int ALL_KEYS = UP | DOWN | LEFT | RIGHT;
+
+    private long seq;
+    private int keys;
+    private int angle;
+
+    public PlayerInput(long seq, int keys, int angle) {
+        this.seq = seq;
+        this.keys = keys & ALL_KEYS;
+        this.angle = angle;
+    }
+
+    // Getters
+    public long getSeq() { return seq; }
+    public int getKeys() { return keys; }
+    public int getAngle() { return angle; }
+    public boolean isPressed(int key) { return (keys & key) != 0; }
+}
@@ -12,14 +12,14 @@ public class PowerUp {
     private String id;
     private Type type;
     private int x, y;
-    private long spawnTime;
+    private long spawnTick;
 
-    public PowerUp(String id, Type type, int x, int y) {
+    public PowerUp(String id, Type type, int x, int y, long spawnTick) {
         this.id = id;
         this.type = type;
         this.x = x;
         this.y = y;
-        this.spawnTime = System.currentTimeMillis();
+        this.spawnTick = spawnTick;
     }
 
     // Getters
@@ -27,9 +27,5 @@ public class PowerUp {
     public Type getType() { return type; }
     public int getX() { return x; }
     public int getY() { return y; }
-    public long getSpawnTime() { return spawnTime; }
-
-    public boolean isExpired() {
-        return System.currentTimeMillis() - spawnTime > 10000; // 10 seconds
-    }
+    public long getSpawnTick() { return spawnTick; }
 }
@@ -0,0 +1,52 @@
+package com.minitankfire.network;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed-size direct buffers.
+ * Direct buffers are expensive to allocate and free, so connections borrow
+ * them for their lifetime (or a single write) and give them back. At most
+ * {@code maxPooled} idle buffers are retained; extras are left to the GC.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * @return a cleared buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
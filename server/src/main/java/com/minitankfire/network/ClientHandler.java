@@ -1,10 +1,15 @@
 package com.minitankfire.network;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import com.minitankfire.game.GameRoom;
+import com.minitankfire.util.JfrEvents;
 import com.minitankfire.util.JsonUtil;
+import com.minitankfire.util.Log;
 
 /**
  * Handles individual client connections.
@@ -13,32 +18,51 @@ import com.minitankfire.util.JsonUtil;
 public class ClientHandler implements Runnable {
     private WebSocketHandler webSocket;
     private GameRoom gameRoom;
-    private String playerId;
+    private volatile String playerId; // Replaced by the resumed player's id on "resume"
     private volatile boolean running;
+    private volatile boolean inRoom; // After join or resume, until the room turns the connection away
+    private final Runnable onClose;
+    private final InboundLimits.Budget inbound; // Reader thread only
+    private final LinkMonitor linkMonitor;
 
-    public ClientHandler(Socket socket, GameRoom gameRoom) throws IOException {
-        this.webSocket = new WebSocketHandler(socket);
+    // Outbound lanes, drained by the shared writer pool
+    private final OutboundScheduler scheduler;
+    private final OutboundQueue outbound;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean tickPending = new AtomicBoolean();
+    private final AtomicBoolean pingPending = new AtomicBoolean();
+    private volatile long pingTimeoutNanos;
+    private final List<String> writeBatch = new ArrayList<>();
+    private int allowance; // Bytes left in this tick's budget (writer thread only)
+
+    /**
+     * @param webSocket an upgraded connection (handshake already completed)
+     * @param onClose   called once after the connection has been cleaned up
+     */
+    public ClientHandler(WebSocketHandler webSocket, GameRoom gameRoom, OutboundScheduler scheduler,
+            InboundLimits inboundLimits, LinkMonitor linkMonitor, Runnable onClose) {
+        this.webSocket = webSocket;
         this.gameRoom = gameRoom;
         this.playerId = webSocket.getClientId();
         this.running = true;
+        this.onClose = onClose;
+        this.inbound = inboundLimits.newBudget();
+        this.linkMonitor = linkMonitor;
+        this.scheduler = scheduler;
+        this.outbound = scheduler.newQueue();
+        this.allowance = scheduler.getBudgetBytesPerTick();
     }
 
     /**
      * Main client thread execution.
-     * Performs WebSocket handshake and processes incoming messages.
+     * Processes incoming messages until the connection closes.
      */
     @Override
     public void run() {
         try {
-            // Perform WebSocket handshake
-            if (!webSocket.performHandshake()) {
-                System.err.println("[HANDSHAKE] Failed for client: " + playerId);
-                webSocket.close();
-                return;
-            }
-
-            System.out.println("[CONNECTED] Client: " + playerId.substring(0, 8) +
+            Log.info("CONNECTED", "Client: " + playerId.substring(0, 8) +
                     " from " + webSocket.getSocket().getInetAddress());
+            linkMonitor.register(this);
 
             // Message processing loop
             while (running && webSocket.isConnected()) {
@@ -51,7 +75,7 @@ public class ClientHandler implements Runnable {
             }
 
         } catch (Exception e) {
-            System.err.println("[ERROR] Client " + playerId.substring(0, 8) + ": " + e.getMessage());
+            Log.warn("ERROR", "Client " + playerId.substring(0, 8) + ": " + e.getMessage());
         } finally {
             cleanup();
         }
@@ -66,20 +90,30 @@ public class ClientHandler implements Runnable {
             Map<String, String> data = JsonUtil.parseJson(message);
             String type = data.get("type");
 
-            if (type == null)
+            if (type == null) {
+                JfrEvents.parseFailure(playerId, "missing_type", message);
                 return;
+            }
+            InboundLimits.Kind kind = InboundLimits.Kind.of(type);
+            if (kind != null && !inbound.tryAcquire(kind)) {
+                return; // Over its rate; counted by InboundLimits
+            }
 
             switch (type) {
                 case "lobby_info":
-                    handleLobbyInfo();
+                    gameRoom.subscribeLobby(this);
                     break;
 
                 case "join":
                     handleJoin(data);
                     break;
 
-                case "move":
-                    handleMove(data);
+                case "resume":
+                    handleResume(data);
+                    break;
+
+                case "input":
+                    handleInput(data);
                     break;
 
                 case "fire":
@@ -101,34 +135,68 @@ public class ClientHandler implements Runnable {
                     break;
 
                 default:
-                    System.out.println("[UNKNOWN] Message type: " + type);
+                    Log.warn("UNKNOWN", "Message type: " + type);
+                    JfrEvents.parseFailure(playerId, "unknown_type", type);
             }
         } catch (Exception e) {
-            System.err.println("[MESSAGE_ERROR] " + playerId.substring(0, 8) + ": " + e.getMessage());
+            Log.warn("MESSAGE_ERROR", playerId.substring(0, 8) + ": " + e.getMessage());
+            JfrEvents.parseFailure(playerId, "invalid_message", e + ": " + message);
         }
     }
 
     private void handleJoin(Map<String, String> data) {
         String name = data.get("name");
+        if (inRoom) {
+            JfrEvents.parseFailure(playerId, "already_in_room", "join");
+            return;
+        }
         if (name != null) {
-            System.out.println("[JOIN] Player '" + name + "' (ID: " + playerId.substring(0, 8) + ")");
+            inRoom = true;
+            Log.info("JOIN", "Player '" + name + "' (ID: " + playerId.substring(0, 8) + ")");
+            gameRoom.unsubscribeLobby(this);
             gameRoom.addPlayer(playerId, name, this);
         }
     }
 
-    private void handleLobbyInfo() {
-        String lobbyInfo = gameRoom.getLobbyInfo();
-        sendMessage(lobbyInfo);
+    private void handleResume(Map<String, String> data) {
+        if (inRoom) {
+            // Switching players would leave the first one attached to nothing
+            JfrEvents.parseFailure(playerId, "already_in_room", "resume");
+            return;
+        }
+        String token = data.get("token");
+        ResumeTokens tokens = gameRoom.getResumeTokens();
+        String resumedId = token != null && tokens != null ? tokens.verify(token) : null;
+        if (resumedId == null) {
+            JfrEvents.parseFailure(playerId, "invalid_resume_token", String.valueOf(token));
+            send(OutboundQueue.Lane.EVENTS, JsonUtil.createResumeFailedMessage());
+            return;
+        }
+        Log.info("RESUME", "Connection " + playerId.substring(0, 8) + " resumes " + resumedId.substring(0, 8));
+        gameRoom.unsubscribeLobby(this);
+        inRoom = true;
+        playerId = resumedId;
+        gameRoom.resumePlayer(resumedId, this);
     }
 
-    private void handleMove(Map<String, String> data) {
+    /**
+     * Called by the room when it did not take the connection after all
+     * (join rejected, or resumed player already gone), so the client may
+     * send another join.
+     */
+    public void leaveRoom() {
+        inRoom = false;
+    }
+
+    private void handleInput(Map<String, String> data) {
         try {
-            int x = Integer.parseInt(data.get("x"));
-            int y = Integer.parseInt(data.get("y"));
+            long seq = Long.parseLong(data.get("seq"));
+            int keys = Integer.parseInt(data.get("keys"));
             int angle = Integer.parseInt(data.get("angle"));
-            gameRoom.handleMove(playerId, x, y, angle);
+            gameRoom.handleInput(playerId, seq, keys, angle);
         } catch (NumberFormatException e) {
-            // Invalid coordinates, ignore
+            // Invalid input, ignore
+            JfrEvents.parseFailure(playerId, "invalid_input", String.valueOf(data));
         }
     }
 
@@ -144,34 +212,109 @@ public class ClientHandler implements Runnable {
         if (target != null) {
             // Reconstruct message with from field
             String forwardMsg = message.replace("}", ",\"from\":\"" + playerId + "\"}");
-            gameRoom.sendToPlayer(target, forwardMsg);
+            gameRoom.sendToPlayer(target, OutboundQueue.Lane.VOICE, forwardMsg);
         }
     }
 
     private void handlePing(Map<String, String> data) {
         String timestamp = data.get("timestamp");
         if (timestamp != null) {
-            System.out.println("[PING] Received ping from " + playerId.substring(0, 8) +
-                    ", timestamp: " + timestamp);
             // Echo back the ping with the same timestamp
             String pongMessage = "{\"type\":\"pong\",\"timestamp\":\"" + timestamp + "\"}";
-            sendMessage(pongMessage);
-            System.out.println("[PING] Sent pong to " + playerId.substring(0, 8));
+            send(OutboundQueue.Lane.EVENTS, pongMessage);
+            if (Log.isDebugEnabled()) {
+                Log.debug("PING", "Pong to " + playerId.substring(0, 8) + ", timestamp: " + timestamp);
+            }
+        }
+    }
+
+    /**
+     * Queues a message without writing it yet. The game loop uses this
+     * during a tick and calls {@link #flushTick()} once at the end.
+     */
+    public void enqueue(OutboundQueue.Lane lane, String message) {
+        if (!running) {
+            return;
+        }
+        if (!outbound.offer(lane, message)) {
+            Log.warn("SLOW_CLIENT", playerId.substring(0, 8) + ": reliable queue full, disconnecting");
+            disconnect();
         }
     }
 
     /**
-     * Sends a message to this client
+     * Queues a message and schedules a write right away (for messages that
+     * do not originate from the game tick, e.g. chat, voice signaling, pong).
      */
-    public void sendMessage(String message) {
+    public void send(OutboundQueue.Lane lane, String message) {
+        enqueue(lane, message);
+        flush();
+    }
+
+    /**
+     * Starts a new send budget and writes whatever the lanes allow,
+     * including the latest snapshot.
+     */
+    public void flushTick() {
+        tickPending.set(true);
+        flush();
+    }
+
+    public void flush() {
+        if (running && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(this::writePending);
+        }
+    }
+
+    /**
+     * Runs on a writer thread; at most one instance per client at a time.
+     */
+    private void writePending() {
+        int moved = 0;
         try {
-            webSocket.sendMessage(message);
+            boolean newTick = tickPending.getAndSet(false);
+            if (newTick) {
+                allowance = scheduler.getBudgetBytesPerTick();
+            }
+            writeBatch.clear();
+            moved = outbound.drain(allowance, newTick, writeBatch);
+            allowance = Math.max(0, allowance - moved);
+            // Everything drained this round (e.g. update + hit + respawn) in one syscall
+            webSocket.sendMessages(writeBatch);
+            if (pingPending.getAndSet(false)) {
+                webSocket.sendPing(pingTimeoutNanos);
+            }
         } catch (IOException e) {
-            System.err.println("[SEND_ERROR] " + playerId.substring(0, 8) + ": " + e.getMessage());
-            stop();
+            Log.warn("SEND_ERROR", playerId.substring(0, 8) + ": " + e.getMessage());
+            disconnect();
+        } finally {
+            writeBatch.clear();
+            flushScheduled.set(false);
+        }
+        // Pick up messages that arrived while writing; anything the budget
+        // held back waits for the next tick
+        if (tickPending.get() || pingPending.get() || (moved > 0 && allowance > 0 && !outbound.isEmpty())) {
+            flush();
         }
     }
 
+    /**
+     * Has the next write send a ping frame, so pings go through the same
+     * single writer as everything else and a blocked socket never holds up
+     * the monitor or a second writer thread. Skipped while an earlier write
+     * or ping has not gone through yet; the link is measured again once it
+     * catches up.
+     */
+    void ping(long timeoutNanos) {
+        if (!running || isWriteBehind() ||
+                webSocket.getLinkStats().isPingOutstanding(System.nanoTime(), timeoutNanos)) {
+            return;
+        }
+        pingTimeoutNanos = timeoutNanos;
+        pingPending.set(true);
+        flush();
+    }
+
     /**
      * Stops the client handler
      */
@@ -179,19 +322,60 @@ public class ClientHandler implements Runnable {
         running = false;
     }
 
+    /**
+     * Stops the handler and closes the connection, e.g. when the player has
+     * resumed on a new connection or fell too far behind. Never blocks, so
+     * the game loop may call it; the reader notices and cleans up.
+     */
+    public void disconnect() {
+        stop();
+        webSocket.shutdown();
+    }
+
+    /**
+     * Drops the connection if a write to it has been blocked for longer
+     * than {@code timeoutNanos}, which frees the writer thread it holds.
+     */
+    void enforceSendTimeout(long now, long timeoutNanos) {
+        if (running && webSocket.isWriteOverdue(now, timeoutNanos)) {
+            Log.warn("SLOW_CLIENT", playerId.substring(0, 8) + ": write blocked for over " +
+                    TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms, disconnecting");
+            disconnect();
+        }
+    }
+
     /**
      * Cleanup resources when client disconnects
      */
     private void cleanup() {
-        System.out.println("[DISCONNECTED] Client: " + playerId.substring(0, 8));
-        gameRoom.removePlayer(playerId);
+        Log.info("DISCONNECTED", "Client: " + playerId.substring(0, 8));
+        linkMonitor.unregister(this);
+        gameRoom.unsubscribeLobby(this);
+        gameRoom.disconnectPlayer(playerId, this);
         webSocket.close();
+        onClose.run();
     }
 
     public String getPlayerId() {
         return playerId;
     }
 
+    /**
+     * @return true while a write scheduled by an earlier flush is still
+     *         queued or in progress
+     */
+    public boolean isWriteBehind() {
+        return flushScheduled.get();
+    }
+
+    public LinkStats getLinkStats() {
+        return webSocket.getLinkStats();
+    }
+
+    String getRemoteAddress() {
+        return String.valueOf(webSocket.getSocket().getRemoteSocketAddress());
+    }
+
     public boolean isConnected() {
         return running && webSocket.isConnected();
     }
@@ -0,0 +1,311 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental WebSocket frame decoder (RFC 6455, server side).
+ *
+ * Reads from the channel into one reusable buffer and parses as many frames
+ * as that read delivered before touching the socket again. Handles
+ * fragmented messages with control frames interleaved between fragments,
+ * refuses messages larger than the configured limit before buffering them,
+ * and unmasks payloads eight bytes at a time.
+ */
+public class FrameDecoder {
+
+    /**
+     * Receives control frames as they are decoded.
+     */
+    public interface ControlHandler {
+        void onPing(ByteBuffer payload) throws IOException;
+
+        void onPong(ByteBuffer payload);
+
+        void onClose(int statusCode) throws IOException;
+    }
+
+    /**
+     * A frame violated the protocol or the size limit. The connection must be
+     * closed with {@link #getCloseCode()}.
+     */
+    public static class ProtocolException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public static final int PROTOCOL_ERROR = 1002;
+        public static final int MESSAGE_TOO_BIG = 1009;
+
+        private final int closeCode;
+
+        public ProtocolException(int closeCode, String message) {
+            super(message);
+            this.closeCode = closeCode;
+        }
+
+        public int getCloseCode() {
+            return closeCode;
+        }
+    }
+
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+    private static final int INITIAL_MESSAGE_CAPACITY = 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final int maxMessageBytes;
+    private final ControlHandler controlHandler;
+    private final ByteBuffer controlPayload = ByteBuffer.allocate(125);
+
+    // Message being assembled from one or more data frames
+    private byte[] message = new byte[INITIAL_MESSAGE_CAPACITY];
+    private int messageLength;
+    private int messageOpcode = -1;
+    private volatile long bytesRead; // Written by the reading thread only
+
+    /**
+     * @param buffer read buffer owned by this decoder until the connection
+     *               closes; must hold at least 14 bytes (a maximal header)
+     */
+    public FrameDecoder(ReadableByteChannel channel, ByteBuffer buffer, int maxMessageBytes,
+            ControlHandler controlHandler) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.maxMessageBytes = maxMessageBytes;
+        this.controlHandler = controlHandler;
+        buffer.clear().flip(); // Read mode, nothing buffered
+    }
+
+    /**
+     * Adds bytes that were received before the decoder existed (e.g. read
+     * together with the HTTP upgrade request).
+     */
+    public void preload(ByteBuffer early) {
+        buffer.compact();
+        buffer.put(early);
+        buffer.flip();
+    }
+
+    /**
+     * @return bytes read from the channel so far
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the next complete text message, handling control frames on the way.
+     *
+     * @return the message, or null when the peer closed the connection
+     */
+    public String readMessage() throws IOException {
+        while (true) {
+            if (!ensure(2)) {
+                return null;
+            }
+            int start = buffer.position();
+            int b0 = buffer.get(start) & 0xFF;
+            int b1 = buffer.get(start + 1) & 0xFF;
+            int lengthCode = b1 & 0x7F;
+            int headerLength = 2 + (lengthCode == 126 ? 2 : lengthCode == 127 ? 8 : 0) + 4;
+            if (!ensure(headerLength)) {
+                return null;
+            }
+            start = buffer.position(); // ensure() may have compacted the buffer
+
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            if ((b0 & 0x70) != 0) {
+                throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Reserved bits set");
+            }
+            if ((b1 & 0x80) == 0) {
+                throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Unmasked client frame");
+            }
+
+            buffer.position(start + 2);
+            long length;
+            if (lengthCode == 126) {
+                length = buffer.getShort() & 0xFFFF;
+            } else if (lengthCode == 127) {
+                length = buffer.getLong();
+            } else {
+                length = lengthCode;
+            }
+            int mask = buffer.getInt();
+
+            if ((opcode & 0x8) != 0) {
+                if (!fin || length > 125) {
+                    throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Invalid control frame");
+                }
+                if (!handleControlFrame(opcode, (int) length, mask)) {
+                    return null;
+                }
+                continue;
+            }
+
+            if (opcode == OPCODE_CONTINUATION) {
+                if (messageOpcode < 0) {
+                    throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Unexpected continuation");
+                }
+            } else if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+                if (messageOpcode >= 0) {
+                    throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Interleaved data message");
+                }
+                messageOpcode = opcode;
+                messageLength = 0;
+            } else {
+                throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Unknown opcode " + opcode);
+            }
+
+            // Checked before reading the payload, so a bogus length never allocates
+            if (length < 0 || length > maxMessageBytes - messageLength) {
+                throw new ProtocolException(ProtocolException.MESSAGE_TOO_BIG,
+                        "Message exceeds " + maxMessageBytes + " bytes");
+            }
+            if (!readPayload((int) length, mask)) {
+                return null;
+            }
+
+            if (fin) {
+                int completedOpcode = messageOpcode;
+                messageOpcode = -1;
+                if (completedOpcode == OPCODE_TEXT) {
+                    String text = new String(message, 0, messageLength, StandardCharsets.UTF_8);
+                    releaseLargeMessageBuffer();
+                    return text;
+                }
+                releaseLargeMessageBuffer(); // Binary messages are not used by the game
+            }
+        }
+    }
+
+    /**
+     * @return false if the frame was a close frame
+     */
+    private boolean handleControlFrame(int opcode, int length, int mask) throws IOException {
+        if (!ensure(length)) {
+            return false;
+        }
+        int start = buffer.position();
+        unmask(buffer, start, length, mask, 0);
+        controlPayload.clear();
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(start + length);
+        controlPayload.put(slice);
+        controlPayload.flip();
+        buffer.position(start + length);
+
+        switch (opcode) {
+            case OPCODE_PING:
+                controlHandler.onPing(controlPayload);
+                return true;
+            case OPCODE_PONG:
+                controlHandler.onPong(controlPayload);
+                return true;
+            case OPCODE_CLOSE:
+                int code = controlPayload.remaining() >= 2 ? controlPayload.getShort() & 0xFFFF : 1005;
+                controlHandler.onClose(code);
+                return false;
+            default:
+                throw new ProtocolException(ProtocolException.PROTOCOL_ERROR, "Unknown control opcode " + opcode);
+        }
+    }
+
+    /**
+     * Copies the payload into the message buffer, unmasking in place chunk by
+     * chunk as bytes arrive.
+     */
+    private boolean readPayload(int length, int mask) throws IOException {
+        ensureMessageCapacity(messageLength + length);
+        int copied = 0;
+        while (copied < length) {
+            if (!buffer.hasRemaining() && !fill()) {
+                return false;
+            }
+            int chunk = Math.min(length - copied, buffer.remaining());
+            int start = buffer.position();
+            unmask(buffer, start, chunk, mask, copied);
+            buffer.get(message, messageLength, chunk);
+            messageLength += chunk;
+            copied += chunk;
+        }
+        return true;
+    }
+
+    /**
+     * XORs {@code buf[start, start + length)} with the masking key, where the
+     * first byte is at {@code payloadOffset} within the frame payload.
+     * Works on 64-bit words, falling back to bytes for the tail.
+     */
+    static void unmask(ByteBuffer buf, int start, int length, int mask, int payloadOffset) {
+        int rotated = Integer.rotateLeft(mask, 8 * (payloadOffset & 3));
+        long wideMask = ((long) rotated << 32) | (rotated & 0xFFFFFFFFL);
+        int end = start + length;
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            buf.putLong(i, buf.getLong(i) ^ wideMask);
+        }
+        for (int k = 0; i < end; i++, k++) {
+            int maskByte = rotated >>> (24 - 8 * (k & 3));
+            buf.put(i, (byte) (buf.get(i) ^ maskByte));
+        }
+    }
+
+    /**
+     * Makes sure at least {@code n} unread bytes are buffered.
+     *
+     * @return false on end of stream
+     */
+    private boolean ensure(int n) throws IOException {
+        while (buffer.remaining() < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads more bytes from the channel (one syscall, possibly several frames).
+     *
+     * @return false on end of stream
+     */
+    private boolean fill() throws IOException {
+        buffer.compact();
+        try {
+            int n = channel.read(buffer);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n >= 0;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private void ensureMessageCapacity(int required) {
+        if (required > message.length) {
+            // Grow geometrically, but never beyond what the size limit allows
+            int capacity = Math.max(required, Math.min(maxMessageBytes, message.length * 2));
+            byte[] grown = new byte[capacity];
+            System.arraycopy(message, 0, grown, 0, messageLength);
+            message = grown;
+        }
+    }
+
+    /**
+     * Drops an oversized accumulation buffer after a rare large message.
+     */
+    private void releaseLargeMessageBuffer() {
+        if (message.length > 16 * INITIAL_MESSAGE_CAPACITY) {
+            message = new byte[INITIAL_MESSAGE_CAPACITY];
+        }
+        messageLength = 0;
+    }
+}
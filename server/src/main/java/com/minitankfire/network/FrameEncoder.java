@@ -0,0 +1,51 @@
+package com.minitankfire.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Server-to-client WebSocket frame headers (RFC 6455, unmasked).
+ */
+public final class FrameEncoder {
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int MAX_HEADER_BYTES = 10;
+
+    private FrameEncoder() {
+    }
+
+    public static int headerLength(int payloadLength) {
+        return payloadLength <= 125 ? 2 : payloadLength <= 65535 ? 4 : 10;
+    }
+
+    /**
+     * Writes a final-fragment header for {@code opcode} into {@code dst}.
+     */
+    public static void putHeader(ByteBuffer dst, int opcode, int payloadLength) {
+        dst.put((byte) (0x80 | opcode));
+        if (payloadLength <= 125) {
+            dst.put((byte) payloadLength);
+        } else if (payloadLength <= 65535) {
+            dst.put((byte) 126);
+            dst.putShort((short) payloadLength);
+        } else {
+            dst.put((byte) 127);
+            dst.putLong(payloadLength);
+        }
+    }
+
+    /**
+     * Encodes a complete text frame once, so it can be written to many
+     * connections through {@link ByteBuffer#duplicate()}.
+     *
+     * @return a read-only direct buffer positioned at the start of the frame
+     */
+    public static ByteBuffer encodeSharedTextFrame(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocateDirect(headerLength(payload.length) + payload.length);
+        putHeader(frame, OPCODE_TEXT, payload.length);
+        frame.put(payload);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+}
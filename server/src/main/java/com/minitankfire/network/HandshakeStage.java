@@ -0,0 +1,489 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.minitankfire.game.GameRoom;
+import com.minitankfire.util.JfrEvents;
+
+/**
+ * Bounded stage between the acceptor and the game.
+ *
+ * Accepted connections wait here until their HTTP upgrade request has been
+ * read, parsed and answered. Request heads are read without a thread by the
+ * {@link HeadReader}, within the handshake timeout and a size limit, so a
+ * client trickling one byte at a time only ever costs a selector key. Once
+ * the head is in, the stage's own small thread pool and queue take over,
+ * with a hard deadline per connection from the moment a thread picks it up
+ * (a watchdog closes the socket). Only connections that complete the upgrade
+ * take a session slot and a client thread; when no slot is free the client
+ * gets a 503 instead of a half-working connection.
+ *
+ * Plain HTTP requests for the lobby summary are answered here as well, so
+ * a lobby page never needs a session slot. Upgrades on the spectator path
+ * are handed to the {@link SpectatorHub} with a spectator slot instead.
+ *
+ * With a static root configured, other plain GET/HEAD requests are served
+ * from it (the web client), and keep-alive connections wait for their next
+ * request in {@link IdleConnections} rather than on a stage thread.
+ *
+ * With a {@link TlsContext}, a connection that opens with a TLS client
+ * hello is handshaken on a stage thread first (under its own deadline),
+ * then goes back to the head reader, and everything after that, HTTP or
+ * WebSocket, runs through its {@link TlsChannel}.
+ * Connections that start in plain HTTP are still served, so ws:// and
+ * wss:// share the port.
+ */
+public class HandshakeStage {
+    private final GameRoom gameRoom;
+    private final ExecutorService clientPool;
+    private final OutboundScheduler outboundScheduler;
+    private final InboundLimits inboundLimits;
+    private final LinkMonitor linkMonitor;
+    private final TlsContext tlsContext; // null without TLS
+    private final LobbyEndpoint lobbyEndpoint;
+    private final StaticFiles staticFiles; // null when not serving the client
+    private final IdleConnections idleConnections; // null without keep-alive
+    private final HeadReader headReader;
+    private final long sendTimeoutMs;
+    private final SpectatorHub spectatorHub;
+    private final Semaphore sessionSlots;
+    private final int maxSessions;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService watchdog;
+    private final long timeoutMs;
+
+    // Counters for monitoring
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedServerFull = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong lobbyRequests = new AtomicLong();
+    private final AtomicLong staticRequests = new AtomicLong();
+    private final AtomicLong spectatorsAccepted = new AtomicLong();
+
+    /**
+     * @param timeoutMs      time a client gets to send its request head, and
+     *                       separately a stage thread gets to answer it
+     * @param maxPending     limit on connections sending their request head at the same time
+     * @param staticRoot     directory served over plain HTTP, or null
+     * @param keepAliveMs    how long an HTTP connection may wait for its next request; 0 closes after each
+     * @param maxIdle        limit on keep-alive connections waiting at the same time
+     * @param sendTimeoutMs  deadline for writing one static file
+     * @param tlsContext     TLS settings for wss:// and https://, or null for plain connections only
+     */
+    public HandshakeStage(GameRoom gameRoom, ExecutorService clientPool, OutboundScheduler outboundScheduler,
+            InboundLimits inboundLimits, LinkMonitor linkMonitor, TlsContext tlsContext, SpectatorHub spectatorHub, int maxSessions, int threads, int queueSize, long timeoutMs, int maxHeaderBytes,
+            int maxPending, Path staticRoot, long keepAliveMs, int maxIdle, long sendTimeoutMs) throws IOException {
+        this.gameRoom = gameRoom;
+        this.clientPool = clientPool;
+        this.outboundScheduler = outboundScheduler;
+        this.inboundLimits = inboundLimits;
+        this.linkMonitor = linkMonitor;
+        this.tlsContext = tlsContext;
+        this.lobbyEndpoint = new LobbyEndpoint(gameRoom);
+        this.staticFiles = staticRoot != null ? new StaticFiles(staticRoot) : null;
+        this.idleConnections = staticRoot != null && keepAliveMs > 0
+                ? new IdleConnections(keepAliveMs, maxIdle, this::resubmit) : null;
+        this.headReader = new HeadReader(timeoutMs, maxPending, maxHeaderBytes, tlsContext != null,
+                new HeadReader.Handler() {
+                    @Override
+                    public void onHead(SocketChannel channel, TlsChannel tls, ByteBuffer buf, int headEnd,
+                            boolean reused) {
+                        long readyAt = System.nanoTime();
+                        execute(channel, tls, () -> handle(channel, tls, buf, headEnd, reused, readyAt));
+                    }
+
+                    @Override
+                    public void onClientHello(SocketChannel channel, ByteBuffer hello) {
+                        execute(channel, null, () -> handshakeTls(channel, hello));
+                    }
+                });
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.spectatorHub = spectatorHub;
+        this.sessionSlots = new Semaphore(maxSessions);
+        this.maxSessions = maxSessions;
+        this.timeoutMs = timeoutMs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "Handshake-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "HandshakeWatchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Takes a freshly accepted connection. Never blocks: if too many
+     * connections are still sending their request head, it is closed
+     * immediately.
+     */
+    public void submit(SocketChannel channel) {
+        readHead(channel, null, false);
+    }
+
+    /**
+     * Takes back a keep-alive connection whose next request is arriving.
+     *
+     * @param tls the connection's TLS session, or null for plain HTTP
+     */
+    private void resubmit(SocketChannel channel, TlsChannel tls) {
+        readHead(channel, tls, true);
+    }
+
+    private void readHead(SocketChannel channel, TlsChannel tls, boolean reused) {
+        if (!headReader.add(channel, tls, reused)) {
+            rejectedQueueFull.incrementAndGet();
+            closeQuietly(channel, tls);
+        }
+    }
+
+    private void execute(SocketChannel channel, TlsChannel tls, Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedQueueFull.incrementAndGet();
+            closeQuietly(channel, tls);
+        }
+    }
+
+    /**
+     * Runs the TLS handshake of a new connection, then sends it back to the
+     * head reader for its request.
+     */
+    private void handshakeTls(SocketChannel channel, ByteBuffer hello) {
+        ScheduledFuture<?> deadline = scheduleDeadline(channel, timeoutMs);
+        TlsChannel tls = null;
+        boolean handedOff = false;
+        try {
+            tls = tlsContext.open(channel, hello);
+            tls.handshake();
+            if (!deadline.cancel(false)) {
+                return; // Watchdog already closed the connection
+            }
+            handedOff = headReader.add(channel, tls, false);
+            if (!handedOff) {
+                rejectedQueueFull.incrementAndGet();
+            }
+        } catch (IOException e) {
+            // A watchdog close surfaces here as AsynchronousCloseException
+            if (!deadline.isDone()) {
+                failed.incrementAndGet();
+            }
+        } finally {
+            if (!handedOff) {
+                deadline.cancel(false);
+                closeQuietly(channel, tls);
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel, TlsChannel tls, ByteBuffer buf, int headEnd, boolean reused,
+            long readyAt) {
+        JfrEvents.Handshake event = JfrEvents.isEnabled() ? new JfrEvents.Handshake() : null;
+        if (event != null) {
+            event.begin();
+            event.queueNanos = System.nanoTime() - readyAt;
+            event.outcome = "failed";
+        }
+        try {
+            handleRequest(channel, tls, buf, headEnd, reused, event);
+        } finally {
+            if (event != null) {
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * @param tls     the connection's TLS session, or null
+     * @param buf     bytes read by the head reader, in write mode
+     * @param headEnd see {@link HeadReader.Handler#onHead}
+     * @param reused  true for a keep-alive connection's follow-up request
+     * @param event   handshake event to fill in, or null when not recording
+     */
+    private void handleRequest(SocketChannel channel, TlsChannel tls, ByteBuffer buf, int headEnd, boolean reused,
+            JfrEvents.Handshake event) {
+        // Time spent queued for a thread does not count; the head is already in
+        ScheduledFuture<?> deadline = scheduleDeadline(channel, timeoutMs);
+
+        boolean handedOff = false;
+        try {
+            ByteChannel io = tls != null ? tls : channel;
+            if (headEnd < 0) {
+                if (headEnd == -1 && reused && buf.position() == 0) {
+                    outcome(event, "keep_alive_closed"); // Client closed an idle connection
+                    return;
+                }
+                if (headEnd == -2) {
+                    writeResponse(io, "431 Request Header Fields Too Large");
+                }
+                failed.incrementAndGet();
+                return;
+            }
+
+            HttpRequest request = HttpRequest.parse(buf, headEnd);
+            if (request == null) {
+                writeResponse(io, "400 Bad Request");
+                failed.incrementAndGet();
+                return;
+            }
+            if (event != null) {
+                event.path = request.getPath();
+            }
+            if (!request.isWebSocketUpgrade() && LobbyEndpoint.matches(request)) {
+                if ("GET".equals(request.getMethod())) {
+                    writeFully(io, lobbyEndpoint.respond(request));
+                    lobbyRequests.incrementAndGet();
+                    outcome(event, "lobby");
+                } else {
+                    writeResponse(io, "405 Method Not Allowed");
+                    failed.incrementAndGet();
+                }
+                return;
+            }
+            if (!request.isWebSocketUpgrade() && staticFiles != null) {
+                handedOff = serveStatic(channel, tls, request, buf.position() == headEnd, deadline, event);
+                return;
+            }
+            if (!request.isWebSocketUpgrade()) {
+                writeResponse(io, "426 Upgrade Required");
+                failed.incrementAndGet();
+                return;
+            }
+
+            if (SpectatorHub.PATH.equals(request.getPath())) {
+                handedOff = handOffSpectator(channel, tls, request, buf, headEnd, deadline);
+                outcome(event, handedOff ? "spectator" : "spectator_rejected");
+                return;
+            }
+
+            if (!sessionSlots.tryAcquire()) {
+                writeResponse(io, "503 Service Unavailable");
+                rejectedServerFull.incrementAndGet();
+                outcome(event, "server_full");
+                return;
+            }
+
+            boolean slotHeld = true;
+            try {
+                // Bytes read past the head belong to the first WebSocket frames
+                buf.flip();
+                buf.position(headEnd);
+                WebSocketHandler webSocket = new WebSocketHandler(channel, tls, buf.slice());
+                if (!webSocket.performHandshake(request)) {
+                    writeResponse(io, "400 Bad Request");
+                    failed.incrementAndGet();
+                    return;
+                }
+                if (!deadline.cancel(false)) {
+                    return; // Watchdog already closed the connection
+                }
+
+                clientPool.execute(new ClientHandler(webSocket, gameRoom, outboundScheduler, inboundLimits,
+                        linkMonitor, sessionSlots::release));
+                slotHeld = false;
+                handedOff = true;
+                completed.incrementAndGet();
+                outcome(event, "player");
+            } finally {
+                if (slotHeld) {
+                    sessionSlots.release();
+                }
+            }
+        } catch (Exception e) {
+            // A watchdog close surfaces here as AsynchronousCloseException
+            if (!deadline.isDone()) {
+                failed.incrementAndGet();
+            } else if (!deadline.isCancelled()) {
+                outcome(event, "timed_out");
+            }
+        } finally {
+            if (!handedOff) {
+                deadline.cancel(false);
+                closeQuietly(channel, tls);
+            }
+        }
+    }
+
+    /**
+     * Answers a plain request from the static root, then parks the
+     * connection if it is kept alive.
+     *
+     * @param headOnly whether nothing past the request head was received;
+     *                 a pipelined request is not supported, so the
+     *                 connection closes after this response instead
+     * @return true if the idle connections now own the channel
+     */
+    private boolean serveStatic(SocketChannel channel, TlsChannel tls, HttpRequest request, boolean headOnly,
+            ScheduledFuture<?> deadline, JfrEvents.Handshake event) throws IOException {
+        GatheringByteChannel out = tls != null ? tls : channel;
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            writeResponse(out, "405 Method Not Allowed");
+            failed.incrementAndGet();
+            return false;
+        }
+        // Files take longer to write than a handshake answer; the head was read in time
+        if (!deadline.cancel(false)) {
+            return false; // Watchdog already closed the connection
+        }
+        ScheduledFuture<?> sendDeadline = scheduleDeadline(channel, sendTimeoutMs);
+        try {
+            // A TLS connection can only wait on the selector if no records are buffered
+            boolean keepAlive = idleConnections != null && headOnly && request.isKeepAlive() &&
+                    (tls == null || !tls.hasBufferedInput());
+            boolean found = staticFiles.respond(out, request, keepAlive);
+            staticRequests.incrementAndGet();
+            outcome(event, found ? "static" : "not_found");
+            return keepAlive && sendDeadline.cancel(false) && idleConnections.park(channel, tls);
+        } catch (IOException e) {
+            if (sendDeadline.isDone()) {
+                outcome(event, "timed_out");
+            } else {
+                failed.incrementAndGet();
+            }
+            throw e;
+        } finally {
+            sendDeadline.cancel(false);
+        }
+    }
+
+    private ScheduledFuture<?> scheduleDeadline(SocketChannel channel, long delayMs) {
+        return watchdog.schedule(() -> {
+            timedOut.incrementAndGet();
+            closeQuietly(channel);
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void outcome(JfrEvents.Handshake event, String outcome) {
+        if (event != null) {
+            event.outcome = outcome;
+        }
+    }
+
+    /**
+     * Upgrades a spectator connection and gives it to the spectator hub.
+     *
+     * @return true if the hub now owns the channel
+     */
+    private boolean handOffSpectator(SocketChannel channel, TlsChannel tls, HttpRequest request, ByteBuffer buf,
+            int headEnd, ScheduledFuture<?> deadline) throws Exception {
+        ByteChannel io = tls != null ? tls : channel;
+        if (!spectatorHub.tryReserve()) {
+            writeResponse(io, "503 Service Unavailable");
+            rejectedServerFull.incrementAndGet();
+            return false;
+        }
+        boolean slotHeld = true;
+        try {
+            if (!WebSocketHandler.writeUpgradeResponse(io, request)) {
+                writeResponse(io, "400 Bad Request");
+                failed.incrementAndGet();
+                return false;
+            }
+            if (!deadline.cancel(false)) {
+                return false; // Watchdog already closed the connection
+            }
+            buf.flip();
+            buf.position(headEnd);
+            spectatorHub.add(channel, tls, buf.slice());
+            slotHeld = false;
+            spectatorsAccepted.incrementAndGet();
+            return true;
+        } finally {
+            if (slotHeld) {
+                spectatorHub.release();
+            }
+        }
+    }
+
+    private void writeResponse(WritableByteChannel channel, String status) throws IOException {
+        String response = "HTTP/1.1 " + status + "\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+        writeFully(channel, ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+    }
+
+    /**
+     * Closes a connection this stage still owns, returning its TLS buffers.
+     */
+    private static void closeQuietly(SocketChannel channel, TlsChannel tls) {
+        if (tls != null) {
+            try {
+                tls.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+            tls.release();
+        } else {
+            closeQuietly(channel);
+        }
+    }
+
+    public int getActiveSessions() {
+        return maxSessions - sessionSlots.availablePermits();
+    }
+
+    public long getCompleted() { return completed.get(); }
+    public long getRejectedQueueFull() { return rejectedQueueFull.get(); }
+    public long getRejectedServerFull() { return rejectedServerFull.get(); }
+    public long getFailed() { return failed.get(); }
+    public long getTimedOut() { return timedOut.get() + headReader.getTimedOut(); }
+    public int getPendingHeads() { return headReader.getPendingCount(); }
+    public long getLobbyRequests() { return lobbyRequests.get(); }
+    public InboundLimits getInboundLimits() { return inboundLimits; }
+    public LinkMonitor getLinkMonitor() { return linkMonitor; }
+    public TlsContext getTlsContext() { return tlsContext; }
+    public long getStaticRequests() { return staticRequests.get(); }
+    public int getIdleConnections() { return idleConnections != null ? idleConnections.getIdleCount() : 0; }
+    public long getSpectatorsAccepted() { return spectatorsAccepted.get(); }
+
+    public void shutdown() {
+        headReader.shutdown();
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+        if (idleConnections != null) {
+            idleConnections.shutdown();
+        }
+    }
+}
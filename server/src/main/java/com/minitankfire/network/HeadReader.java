@@ -0,0 +1,289 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.minitankfire.util.Log;
+
+/**
+ * Reads HTTP request heads for the handshake stage without holding a thread.
+ *
+ * New connections, keep-alive connections whose next request is arriving
+ * and TLS connections fresh from their handshake wait on one shared
+ * selector while the request head comes in, however slowly. A stage thread
+ * only gets the connection once the head is complete (or too large, or the
+ * client went away), so a client trickling one byte at a time costs a
+ * buffer and a selector key, not a thread. Heads not complete by the
+ * deadline are closed, and so are new connections beyond the limit.
+ *
+ * With TLS enabled, the first bytes of a new connection are checked for a
+ * TLS client hello. Such a connection goes to a stage thread for the TLS
+ * handshake and then comes back here for its head.
+ */
+class HeadReader implements Runnable {
+
+    /**
+     * Receives connections leaving the reader, in blocking mode again.
+     */
+    interface Handler {
+        /**
+         * @param buf     everything read so far, in write mode
+         * @param headEnd offset just past the head, -1 if the connection
+         *                closed or failed first, -2 if the head exceeds the
+         *                size limit
+         */
+        void onHead(SocketChannel channel, TlsChannel tls, ByteBuffer buf, int headEnd, boolean reused);
+
+        /**
+         * @param hello the bytes read so far (the start of a TLS client
+         *              hello), in read mode
+         */
+        void onClientHello(SocketChannel channel, ByteBuffer hello);
+    }
+
+    private final Selector selector;
+    private final Queue<Pending> added = new ConcurrentLinkedQueue<>();
+    private final Handler handler;
+    private final long timeoutNanos;
+    private final int maxPending;
+    private final int maxHeaderBytes;
+    private final boolean sniffTls;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private static final class Pending {
+        final SocketChannel channel;
+        final TlsChannel tls; // null for plain HTTP (or not known yet)
+        final boolean reused;
+        final ByteBuffer buf;
+        final long deadline;
+        boolean sniff; // The first read may be a TLS client hello
+        boolean clientHello;
+        int scanned;
+        int headEnd = -1;
+
+        Pending(SocketChannel channel, TlsChannel tls, boolean reused, boolean sniff, int maxHeaderBytes,
+                long deadline) {
+            this.channel = channel;
+            this.tls = tls;
+            this.reused = reused;
+            this.sniff = sniff;
+            this.buf = ByteBuffer.allocate(maxHeaderBytes);
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * @param timeoutMs  time a connection gets to send its whole request head
+     * @param maxPending limit on connections waiting for their head at the same time
+     * @param sniffTls   whether new connections may open with a TLS client hello
+     */
+    HeadReader(long timeoutMs, int maxPending, int maxHeaderBytes, boolean sniffTls, Handler handler)
+            throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.maxPending = maxPending;
+        this.maxHeaderBytes = maxHeaderBytes;
+        this.sniffTls = sniffTls;
+        this.thread = new Thread(this, "HeadReader");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @param tls    the connection's TLS session, or null
+     * @param reused true for a keep-alive connection's follow-up request
+     * @return false if too many heads are pending already; the caller still
+     *         owns the channel then
+     */
+    boolean add(SocketChannel channel, TlsChannel tls, boolean reused) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+        boolean sniff = sniffTls && tls == null && !reused;
+        added.add(new Pending(channel, tls, reused, sniff, maxHeaderBytes, System.nanoTime() + timeoutNanos));
+        selector.wakeup();
+        return true;
+    }
+
+    int getPendingCount() {
+        return pending.get();
+    }
+
+    long getTimedOut() {
+        return timedOut.get();
+    }
+
+    @Override
+    public void run() {
+        List<Pending> done = new ArrayList<>();
+        long checkMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 4);
+        try {
+            while (running) {
+                selector.select(checkMs);
+                registerAdded(done);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable() && readAvailable((Pending) key.attachment())) {
+                        key.cancel();
+                        done.add((Pending) key.attachment());
+                    }
+                }
+                expire();
+
+                if (!done.isEmpty()) {
+                    selector.selectNow(); // Deregisters the cancelled keys so the channels can block again
+                    for (Pending connection : done) {
+                        pending.decrementAndGet();
+                        handOff(connection);
+                    }
+                    done.clear();
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                Log.error("HANDSHAKE_ERROR", e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly((Pending) key.attachment());
+            }
+            Pending connection;
+            while ((connection = added.poll()) != null) {
+                closeQuietly(connection);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+        }
+    }
+
+    /**
+     * Registers new connections. Each is read once right away: a keep-alive
+     * request has already started arriving, and a TLS session may hold
+     * records the selector will not report.
+     */
+    private void registerAdded(List<Pending> done) {
+        Pending connection;
+        while ((connection = added.poll()) != null) {
+            try {
+                connection.channel.configureBlocking(false);
+                SelectionKey key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+                if (readAvailable(connection)) {
+                    key.cancel();
+                    done.add(connection);
+                }
+            } catch (IOException e) {
+                pending.decrementAndGet();
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Reads whatever has arrived.
+     *
+     * @return true if the connection is done here: head complete, too
+     *         large, closed, or a TLS client hello
+     */
+    private static boolean readAvailable(Pending connection) {
+        ByteChannel io = connection.tls != null ? connection.tls : connection.channel;
+        ByteBuffer buf = connection.buf;
+        try {
+            while (true) {
+                if (!buf.hasRemaining()) {
+                    connection.headEnd = -2;
+                    return true;
+                }
+                int n = io.read(buf);
+                if (n < 0) {
+                    return true;
+                }
+                if (n == 0) {
+                    return false;
+                }
+                if (connection.sniff) {
+                    connection.sniff = false;
+                    if (TlsContext.isClientHello(buf, 0)) {
+                        connection.clientHello = true;
+                        return true;
+                    }
+                }
+                int headEnd = HttpRequest.findHeadEnd(buf, connection.scanned - 3, buf.position());
+                if (headEnd >= 0) {
+                    connection.headEnd = headEnd;
+                    return true;
+                }
+                connection.scanned = buf.position();
+            }
+        } catch (IOException e) {
+            return true; // Handed off with headEnd -1, like a closed connection
+        }
+    }
+
+    private void handOff(Pending connection) {
+        try {
+            connection.channel.configureBlocking(true);
+        } catch (IOException e) {
+            closeQuietly(connection);
+            return;
+        }
+        if (connection.clientHello) {
+            connection.buf.flip();
+            handler.onClientHello(connection.channel, connection.buf);
+        } else {
+            handler.onHead(connection.channel, connection.tls, connection.buf, connection.headEnd,
+                    connection.reused);
+        }
+    }
+
+    private void expire() {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            Pending connection = (Pending) key.attachment();
+            if (key.isValid() && now - connection.deadline > 0) {
+                key.cancel();
+                pending.decrementAndGet();
+                timedOut.incrementAndGet();
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private static void closeQuietly(Pending connection) {
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+        if (connection.tls != null) {
+            connection.tls.release();
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,159 @@
+package com.minitankfire.network;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parsed HTTP/1.1 request head (request line + headers).
+ * The parser works directly on the received bytes - no readers, no regexes -
+ * and rejects anything malformed instead of trying to recover.
+ */
+public class HttpRequest {
+    private static final int MAX_HEADERS = 64;
+
+    private final String method;
+    private final String target;
+    private final String version;
+    private final Map<String, String> headers;
+
+    private HttpRequest(String method, String target, String version, Map<String, String> headers) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = headers;
+    }
+
+    /**
+     * Finds the end of the request head (the byte after the blank line) in
+     * {@code buf[0, limit)}, starting the scan at {@code from}.
+     *
+     * @return the offset just past "\r\n\r\n", or -1 if not yet received
+     */
+    public static int findHeadEnd(ByteBuffer buf, int from, int limit) {
+        for (int i = Math.max(0, from); i + 3 < limit; i++) {
+            if (buf.get(i) == '\r' && buf.get(i + 1) == '\n' &&
+                    buf.get(i + 2) == '\r' && buf.get(i + 3) == '\n') {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the request head stored in {@code buf[0, headEnd)}.
+     *
+     * @return the request, or null if the head is malformed
+     */
+    public static HttpRequest parse(ByteBuffer buf, int headEnd) {
+        int lineEnd = indexOfCrlf(buf, 0, headEnd);
+        if (lineEnd <= 0) {
+            return null;
+        }
+
+        // Request line: METHOD SP target SP version
+        int sp1 = indexOf(buf, (byte) ' ', 0, lineEnd);
+        int sp2 = sp1 < 0 ? -1 : indexOf(buf, (byte) ' ', sp1 + 1, lineEnd);
+        if (sp1 <= 0 || sp2 <= sp1 + 1 || sp2 == lineEnd - 1) {
+            return null;
+        }
+        String method = ascii(buf, 0, sp1);
+        String target = ascii(buf, sp1 + 1, sp2);
+        String version = ascii(buf, sp2 + 1, lineEnd);
+        if (!version.startsWith("HTTP/1.")) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        int pos = lineEnd + 2;
+        while (pos < headEnd - 2) {
+            int end = indexOfCrlf(buf, pos, headEnd);
+            if (end < 0 || headers.size() >= MAX_HEADERS) {
+                return null;
+            }
+            int colon = indexOf(buf, (byte) ':', pos, end);
+            if (colon <= pos) {
+                return null;
+            }
+            int valueStart = colon + 1;
+            int valueEnd = end;
+            while (valueStart < valueEnd && isWhitespace(buf.get(valueStart))) {
+                valueStart++;
+            }
+            while (valueEnd > valueStart && isWhitespace(buf.get(valueEnd - 1))) {
+                valueEnd--;
+            }
+            headers.put(ascii(buf, pos, colon).toLowerCase(), ascii(buf, valueStart, valueEnd));
+            pos = end + 2;
+        }
+
+        return new HttpRequest(method, target, version, headers);
+    }
+
+    private static int indexOfCrlf(ByteBuffer buf, int from, int limit) {
+        for (int i = from; i + 1 < limit; i++) {
+            if (buf.get(i) == '\r' && buf.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buf, byte b, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buf.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static String ascii(ByteBuffer buf, int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++) {
+            chars[i - from] = (char) (buf.get(i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    public String getMethod() { return method; }
+    public String getTarget() { return target; }
+    public String getVersion() { return version; }
+
+    /**
+     * Request target without the query string.
+     */
+    public String getPath() {
+        int q = target.indexOf('?');
+        return q < 0 ? target : target.substring(0, q);
+    }
+
+    /**
+     * @param name lower-case header name
+     */
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Whether the client wants to send more requests on this connection
+     * (the default from HTTP/1.1 on)
+     */
+    public boolean isKeepAlive() {
+        String connection = headers.get("connection");
+        String value = connection == null ? "" : connection.toLowerCase();
+        return version.equals("HTTP/1.0") ? value.contains("keep-alive") : !value.contains("close");
+    }
+
+    public boolean isWebSocketUpgrade() {
+        String upgrade = headers.get("upgrade");
+        String connection = headers.get("connection");
+        return "GET".equals(method) &&
+                upgrade != null && upgrade.equalsIgnoreCase("websocket") &&
+                connection != null && connection.toLowerCase().contains("upgrade");
+    }
+}
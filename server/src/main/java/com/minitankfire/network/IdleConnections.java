@@ -0,0 +1,177 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import com.minitankfire.util.Log;
+
+/**
+ * Keep-alive HTTP connections between requests.
+ *
+ * An idle connection does not hold a handshake thread: it waits on one
+ * shared selector until its next request starts arriving, and is then
+ * switched back to blocking mode and handed to the handshake stage like a
+ * new connection. Connections idle for longer than the timeout, or beyond
+ * the limit, are closed. A TLS connection keeps its session while parked.
+ */
+class IdleConnections implements Runnable {
+    private final Selector selector;
+    private final Queue<Parked> parked = new ConcurrentLinkedQueue<>();
+    private final BiConsumer<SocketChannel, TlsChannel> onReadable;
+    private final long idleNanos;
+    private final int maxIdle;
+    private final AtomicInteger idle = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private static final class Parked {
+        final SocketChannel channel;
+        final TlsChannel tls; // null for plain HTTP
+        long deadline;
+
+        Parked(SocketChannel channel, TlsChannel tls) {
+            this.channel = channel;
+            this.tls = tls;
+        }
+    }
+
+    /**
+     * @param onReadable receives each connection (in blocking mode again)
+     *                   and its TLS session, if any, once its next request
+     *                   starts arriving
+     */
+    IdleConnections(long idleTimeoutMs, int maxIdle, BiConsumer<SocketChannel, TlsChannel> onReadable) throws IOException {
+        this.selector = Selector.open();
+        this.onReadable = onReadable;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.maxIdle = maxIdle;
+        this.thread = new Thread(this, "HttpKeepAlive");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return false if too many connections are idle already; the caller
+     *         still owns the channel then
+     */
+    boolean park(SocketChannel channel, TlsChannel tls) {
+        if (idle.incrementAndGet() > maxIdle) {
+            idle.decrementAndGet();
+            return false;
+        }
+        parked.add(new Parked(channel, tls));
+        selector.wakeup();
+        return true;
+    }
+
+    int getIdleCount() {
+        return idle.get();
+    }
+
+    @Override
+    public void run() {
+        List<Parked> ready = new ArrayList<>();
+        long checkMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleNanos) / 4);
+        try {
+            while (running) {
+                selector.select(checkMs);
+                registerParked();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        key.cancel();
+                        ready.add((Parked) key.attachment());
+                    }
+                }
+                expireIdle();
+
+                if (!ready.isEmpty()) {
+                    selector.selectNow(); // Deregisters the cancelled keys so the channels can block again
+                    for (Parked connection : ready) {
+                        idle.decrementAndGet();
+                        try {
+                            connection.channel.configureBlocking(true);
+                            onReadable.accept(connection.channel, connection.tls);
+                        } catch (IOException e) {
+                            closeQuietly(connection);
+                        }
+                    }
+                    ready.clear();
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                Log.error("KEEP_ALIVE_ERROR", e.getMessage());
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly((Parked) key.attachment());
+            }
+            Parked connection;
+            while ((connection = parked.poll()) != null) {
+                closeQuietly(connection);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+        }
+    }
+
+    private void registerParked() {
+        Parked connection;
+        long deadline = System.nanoTime() + idleNanos;
+        while ((connection = parked.poll()) != null) {
+            connection.deadline = deadline;
+            try {
+                connection.channel.configureBlocking(false);
+                connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                idle.decrementAndGet();
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private void expireIdle() {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            Parked connection = (Parked) key.attachment();
+            if (key.isValid() && now - connection.deadline > 0) {
+                key.cancel();
+                idle.decrementAndGet();
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private static void closeQuietly(Parked connection) {
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+        if (connection.tls != null) {
+            connection.tls.release();
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
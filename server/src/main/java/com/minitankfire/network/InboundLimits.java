@@ -0,0 +1,136 @@
+package com.minitankfire.network;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import com.minitankfire.util.Log;
+
+/**
+ * Token-bucket rates for the messages a client may send.
+ *
+ * Each connection gets its own {@link Budget} with one bucket per kind of
+ * message; a message that finds its bucket empty is dropped before it
+ * reaches the room. Rates are per second with a burst allowance, set well
+ * above what the web client sends so only misbehaving clients hit them.
+ * Drops are counted per kind for the admin stats.
+ */
+public class InboundLimits {
+    public enum Kind {
+        INPUT, FIRE, CHAT, VOICE, PING, CONTROL;
+
+        /**
+         * @return the kind of a message type, or null for unknown types
+         */
+        static Kind of(String type) {
+            switch (type) {
+                case "input": return INPUT;
+                case "fire": return FIRE;
+                case "chat": return CHAT;
+                case "voice-offer":
+                case "voice-answer":
+                case "voice-ice": return VOICE;
+                case "ping": return PING;
+                case "lobby_info":
+                case "join":
+                case "resume": return CONTROL;
+                default: return null;
+            }
+        }
+    }
+
+    private final double[] ratePerSecond = new double[Kind.values().length];
+    private final double[] burst = new double[Kind.values().length];
+    private final AtomicLongArray rejected = new AtomicLongArray(Kind.values().length);
+
+    private InboundLimits() {
+    }
+
+    /**
+     * Parses limits in the form "input:24:8,fire:10:5,..." (kind, messages
+     * per second, burst). Kinds that are not listed are not limited.
+     */
+    public static InboundLimits parse(String spec) {
+        InboundLimits limits = new InboundLimits();
+        Arrays.fill(limits.ratePerSecond, Double.POSITIVE_INFINITY);
+        for (String part : spec.split(",")) {
+            String[] fields = part.trim().split(":");
+            if (fields.length == 3) {
+                try {
+                    Kind kind = Kind.valueOf(fields[0].trim().toUpperCase());
+                    limits.ratePerSecond[kind.ordinal()] = Math.max(0.1, Double.parseDouble(fields[1].trim()));
+                    limits.burst[kind.ordinal()] = Math.max(1, Double.parseDouble(fields[2].trim()));
+                } catch (IllegalArgumentException e) {
+                    Log.warn("CONFIG", "Ignoring inbound limit '" + part + "'");
+                }
+            } else if (!part.trim().isEmpty()) {
+                Log.warn("CONFIG", "Ignoring inbound limit '" + part + "'");
+            }
+        }
+        return limits;
+    }
+
+    public Budget newBudget() {
+        return newBudget(System.nanoTime());
+    }
+
+    /**
+     * @param now {@link System#nanoTime()} time the buckets start full at
+     */
+    Budget newBudget(long now) {
+        return new Budget(now);
+    }
+
+    public long getRejected(Kind kind) {
+        return rejected.get(kind.ordinal());
+    }
+
+    public String rejectedJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Kind kind : Kind.values()) {
+            if (kind.ordinal() > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(kind.name().toLowerCase()).append("\":").append(rejected.get(kind.ordinal()));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The buckets of one connection. Only its reader thread uses them.
+     */
+    public final class Budget {
+        private final double[] tokens = burst.clone();
+        private final long[] refilledAt = new long[Kind.values().length];
+
+        private Budget(long now) {
+            Arrays.fill(refilledAt, now);
+        }
+
+        /**
+         * Takes a token for one message of the given kind.
+         *
+         * @return false if the message is over its rate and must be dropped
+         */
+        boolean tryAcquire(Kind kind) {
+            return tryAcquire(kind, System.nanoTime());
+        }
+
+        /**
+         * @param now {@link System#nanoTime()} time of the message; never
+         *            earlier than the previous call's
+         */
+        boolean tryAcquire(Kind kind, long now) {
+            int k = kind.ordinal();
+            if (ratePerSecond[k] == Double.POSITIVE_INFINITY) {
+                return true;
+            }
+            tokens[k] = Math.min(burst[k], tokens[k] + (now - refilledAt[k]) * ratePerSecond[k] / 1e9);
+            refilledAt[k] = now;
+            if (tokens[k] >= 1) {
+                tokens[k] -= 1;
+                return true;
+            }
+            rejected.incrementAndGet(k);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.minitankfire.network;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Probes every game connection on a fixed interval.
+ *
+ * Each round sends a WebSocket ping frame per connection (with its next
+ * write, like any other frame) and closes the rate interval of its
+ * {@link LinkStats}. Browsers answer pings by themselves, so this measures
+ * the link without help from the page. A ping that gets no answer is
+ * repeated after a few intervals; a connection that is behind on writes is
+ * not pinged until it catches up. The monitor also ranks connections for
+ * the admin listing of the worst ones.
+ *
+ * Game sockets stay in blocking mode (their reader thread blocks on them),
+ * so a peer that stops reading blocks whichever writer thread is sending to
+ * it. Each round therefore also drops connections whose write has been
+ * blocked longer than the send timeout; closing the channel ends the write.
+ */
+public class LinkMonitor {
+    private static final int PING_TIMEOUT_INTERVALS = 5;
+    private static final long DEFAULT_ROUND_MS = 1000;
+
+    public enum Order {
+        RTT(LinkStats::getEffectiveRttMillis),
+        JITTER(LinkStats::getJitterMillis),
+        STALL(LinkStats::getStallPermille),
+        OUT(LinkStats::getOutBytesPerSecond),
+        IN(LinkStats::getInBytesPerSecond);
+
+        private final ToDoubleFunction<LinkStats> key;
+
+        Order(ToDoubleFunction<LinkStats> key) {
+            this.key = key;
+        }
+    }
+
+    private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+    private final boolean probing;
+    private final long pingTimeoutNanos;
+    private final long sendTimeoutNanos;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param intervalMs    time between pings; 0 turns probing off (bytes and
+     *                      stalls are still counted, and send timeouts are
+     *                      still checked once a second)
+     * @param sendTimeoutMs how long one write may stay blocked before the
+     *                      connection is dropped
+     */
+    public LinkMonitor(long intervalMs, long sendTimeoutMs) {
+        this.probing = intervalMs > 0;
+        this.pingTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs * PING_TIMEOUT_INTERVALS);
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sendTimeoutMs));
+        long roundMs = probing ? intervalMs : DEFAULT_ROUND_MS;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LinkMonitor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.scheduleAtFixedRate(this::probe, roundMs, roundMs, TimeUnit.MILLISECONDS);
+    }
+
+    void register(ClientHandler client) {
+        clients.add(client);
+    }
+
+    void unregister(ClientHandler client) {
+        clients.remove(client);
+    }
+
+    private void probe() {
+        long now = System.nanoTime();
+        for (ClientHandler client : clients) {
+            client.enforceSendTimeout(now, sendTimeoutNanos);
+            if (probing) {
+                client.getLinkStats().sample(now);
+                client.ping(pingTimeoutNanos);
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return clients.size();
+    }
+
+    /**
+     * @return the {@code limit} connections ranking highest by {@code order},
+     *         worst first, as a JSON array
+     */
+    public String worstJson(Order order, int limit) {
+        // Keys are read once; the stats keep changing while we sort
+        List<Map.Entry<ClientHandler, Double>> ranked = new ArrayList<>();
+        for (ClientHandler client : clients) {
+            ranked.add(new AbstractMap.SimpleImmutableEntry<>(client,
+                    order.key.applyAsDouble(client.getLinkStats())));
+        }
+        ranked.sort(Map.Entry.<ClientHandler, Double>comparingByValue(Comparator.reverseOrder()));
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < Math.min(limit, ranked.size()); i++) {
+            ClientHandler client = ranked.get(i).getKey();
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"playerId\":\"").append(client.getPlayerId())
+                    .append("\",\"remote\":\"").append(client.getRemoteAddress())
+                    .append("\",\"link\":").append(client.getLinkStats().toJson()).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,168 @@
+package com.minitankfire.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the server knows about one connection's link: round-trip time and
+ * jitter from WebSocket ping frames, bytes in each direction, and how long
+ * writes stalled on a full socket buffer.
+ *
+ * RTT is smoothed the way TCP does it (RFC 6298): the estimate moves by
+ * 1/8 of each sample and the jitter, the mean deviation, by 1/4. Rates and
+ * the stall share are per {@link LinkMonitor} interval.
+ *
+ * Each field has a single writer (the connection's reader thread for RTT
+ * and bytes in, whichever writer holds the connection for bytes out and
+ * stalls, the monitor for the rates); anyone may read them.
+ */
+public class LinkStats {
+    private volatile long pingSentNanos; // Also the ping's payload; 0 when none is outstanding
+    private volatile long lastRttMicros = -1;
+    private volatile long smoothedRttMicros = -1;
+    private volatile long jitterMicros;
+    private volatile long minRttMicros = Long.MAX_VALUE;
+    private volatile long pongs;
+
+    private volatile long bytesIn;
+    private volatile long bytesOut;
+    private volatile long stallNanos;
+
+    // Per monitor interval
+    private long sampledAtNanos = System.nanoTime();
+    private long sampledIn;
+    private long sampledOut;
+    private long sampledStall;
+    private volatile long inBytesPerSecond;
+    private volatile long outBytesPerSecond;
+    private volatile int stallPermille;
+
+    /**
+     * @return true if the last ping is still unanswered and younger than
+     *         {@code timeoutNanos}
+     */
+    boolean isPingOutstanding(long now, long timeoutNanos) {
+        long outstanding = pingSentNanos;
+        return outstanding != 0 && now - outstanding < timeoutNanos;
+    }
+
+    /**
+     * @return the payload for a new ping, or 0 if the last one is still
+     *         unanswered and younger than {@code timeoutNanos}
+     */
+    long startPing(long now, long timeoutNanos) {
+        if (isPingOutstanding(now, timeoutNanos)) {
+            return 0;
+        }
+        pingSentNanos = now;
+        return now;
+    }
+
+    /**
+     * Takes the RTT sample of a pong if it answers the outstanding ping;
+     * unsolicited or stale pongs are ignored.
+     */
+    void onPong(long payload, long now) {
+        if (payload == 0 || payload != pingSentNanos) {
+            return;
+        }
+        pingSentNanos = 0;
+        long rtt = TimeUnit.NANOSECONDS.toMicros(now - payload);
+        lastRttMicros = rtt;
+        minRttMicros = Math.min(minRttMicros, rtt);
+        if (smoothedRttMicros < 0) {
+            smoothedRttMicros = rtt;
+            jitterMicros = rtt / 2;
+        } else {
+            jitterMicros += (Math.abs(smoothedRttMicros - rtt) - jitterMicros) / 4;
+            smoothedRttMicros += (rtt - smoothedRttMicros) / 8;
+        }
+        pongs++;
+    }
+
+    void setBytesIn(long bytes) {
+        bytesIn = bytes;
+    }
+
+    void addBytesOut(long bytes) {
+        bytesOut += bytes;
+    }
+
+    void addStall(long nanos) {
+        stallNanos += nanos;
+    }
+
+    /**
+     * Closes a monitor interval: computes the rates since the previous one.
+     */
+    void sample(long now) {
+        long elapsed = now - sampledAtNanos;
+        if (elapsed <= 0) {
+            return;
+        }
+        long in = bytesIn;
+        long out = bytesOut;
+        long stall = stallNanos;
+        inBytesPerSecond = (in - sampledIn) * 1_000_000_000L / elapsed;
+        outBytesPerSecond = (out - sampledOut) * 1_000_000_000L / elapsed;
+        stallPermille = (int) Math.min(1000, (stall - sampledStall) * 1000 / elapsed);
+        sampledAtNanos = now;
+        sampledIn = in;
+        sampledOut = out;
+        sampledStall = stall;
+    }
+
+    /**
+     * @return smoothed RTT in milliseconds, or -1 before the first pong
+     */
+    public double getRttMillis() {
+        long rtt = smoothedRttMicros;
+        return rtt < 0 ? -1 : rtt / 1000.0;
+    }
+
+    /**
+     * The RTT to plan with: the smoothed estimate, or how long the current
+     * ping has been unanswered if that is longer (a link that stopped
+     * answering is at least that slow).
+     *
+     * @return milliseconds, or -1 if nothing is known yet
+     */
+    public double getEffectiveRttMillis() {
+        long sent = pingSentNanos;
+        double waiting = sent == 0 ? -1 : (System.nanoTime() - sent) / 1e6;
+        return Math.max(getRttMillis(), waiting);
+    }
+
+    public double getJitterMillis() {
+        return smoothedRttMicros < 0 ? 0 : jitterMicros / 1000.0;
+    }
+
+    public double getMinRttMillis() {
+        long min = minRttMicros;
+        return min == Long.MAX_VALUE ? -1 : min / 1000.0;
+    }
+
+    public double getLastRttMillis() {
+        long rtt = lastRttMicros;
+        return rtt < 0 ? -1 : rtt / 1000.0;
+    }
+
+    public long getBytesIn() { return bytesIn; }
+    public long getBytesOut() { return bytesOut; }
+    public long getStallMillis() { return TimeUnit.NANOSECONDS.toMillis(stallNanos); }
+    public long getInBytesPerSecond() { return inBytesPerSecond; }
+    public long getOutBytesPerSecond() { return outBytesPerSecond; }
+
+    /**
+     * @return share of the last interval spent blocked in writes, 0..1000
+     */
+    public int getStallPermille() { return stallPermille; }
+
+    public String toJson() {
+        return String.format(java.util.Locale.ROOT,
+                "{\"rttMs\":%.1f,\"effectiveRttMs\":%.1f,\"minRttMs\":%.1f,\"lastRttMs\":%.1f,\"jitterMs\":%.1f," +
+                "\"pongs\":%d,\"bytesIn\":%d,\"bytesOut\":%d,\"inBytesPerSec\":%d,\"outBytesPerSec\":%d," +
+                "\"stallMs\":%d,\"stallPermille\":%d}",
+                getRttMillis(), getEffectiveRttMillis(), getMinRttMillis(), getLastRttMillis(), getJitterMillis(),
+                pongs, bytesIn, bytesOut, inBytesPerSecond, outBytesPerSecond, getStallMillis(), stallPermille);
+    }
+}
@@ -0,0 +1,68 @@
+package com.minitankfire.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import com.minitankfire.game.GameRoom;
+import com.minitankfire.game.ScoreIndex;
+
+/**
+ * Plain HTTP {@code GET /lobby}: the lobby summary without a WebSocket.
+ *
+ * The full response (head and body) is encoded once per lobby version and
+ * reused for every request until the scores or membership change. Clients
+ * that send the current ETag in If-None-Match get an empty 304.
+ */
+class LobbyEndpoint {
+    static final String PATH = "/lobby";
+
+    private static final class Encoded {
+        final ScoreIndex.Snapshot snapshot;
+        final byte[] ok;
+        final byte[] notModified;
+
+        Encoded(ScoreIndex.Snapshot snapshot) {
+            this.snapshot = snapshot;
+            String headers = "ETag: " + snapshot.getEtag() + "\r\n" +
+                    "Cache-Control: no-cache\r\n" +
+                    "Access-Control-Allow-Origin: *\r\n" +
+                    "Connection: close\r\n";
+            byte[] head = ("HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: application/json; charset=utf-8\r\n" +
+                    "Content-Length: " + snapshot.getBody().length + "\r\n" +
+                    headers + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            this.ok = new byte[head.length + snapshot.getBody().length];
+            System.arraycopy(head, 0, ok, 0, head.length);
+            System.arraycopy(snapshot.getBody(), 0, ok, head.length, snapshot.getBody().length);
+            this.notModified = ("HTTP/1.1 304 Not Modified\r\n" + headers + "\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final GameRoom gameRoom;
+    private volatile Encoded cached;
+
+    LobbyEndpoint(GameRoom gameRoom) {
+        this.gameRoom = gameRoom;
+    }
+
+    static boolean matches(HttpRequest request) {
+        return PATH.equals(request.getPath());
+    }
+
+    /**
+     * @return the complete response for the request, ready to write
+     */
+    ByteBuffer respond(HttpRequest request) {
+        ScoreIndex.Snapshot snapshot = gameRoom.getLobbySnapshot();
+        Encoded encoded = cached;
+        if (encoded == null || encoded.snapshot != snapshot) {
+            encoded = new Encoded(snapshot);
+            cached = encoded;
+        }
+        String ifNoneMatch = request.getHeader("if-none-match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(snapshot.getEtag())) {
+            return ByteBuffer.wrap(encoded.notModified);
+        }
+        return ByteBuffer.wrap(encoded.ok);
+    }
+}
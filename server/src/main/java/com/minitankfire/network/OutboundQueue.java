@@ -0,0 +1,193 @@
+package com.minitankfire.network;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-connection outbound queue split into priority lanes.
+ *
+ * - STATE: latest-only; a newer snapshot replaces one not yet sent
+ * - EVENTS: reliable and in order; overflowing it means the client cannot keep up
+ * - VOICE: WebRTC signaling, bounded, oldest dropped first
+ * - CHAT: best effort, bounded, oldest dropped first
+ *
+ * Producers may offer from any thread. {@link #drain} is called by one
+ * writer at a time and shares a byte allowance between the lanes by weight
+ * (deficit round robin), so a chat flood or an ICE burst can only take its
+ * share and never delays the snapshot a player needs to aim.
+ */
+public class OutboundQueue {
+
+    public enum Lane {
+        STATE, EVENTS, VOICE, CHAT
+    }
+
+    private static final Lane[] LANES = Lane.values();
+
+    private final AtomicReference<String> state = new AtomicReference<>();
+    private final Queue<String> events = new ConcurrentLinkedQueue<>();
+    private final Queue<String> voice = new ConcurrentLinkedQueue<>();
+    private final Queue<String> chat = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger eventCount = new AtomicInteger();
+    private final AtomicInteger voiceCount = new AtomicInteger();
+    private final AtomicInteger chatCount = new AtomicInteger();
+
+    private final int[] weights;
+    private final int maxEvents;
+    private final int maxVoice;
+    private final int maxChat;
+
+    // Unused share carried over per lane (writer thread only)
+    private final int[] deficit = new int[LANES.length];
+
+    /**
+     * @param weights relative bandwidth share per lane, indexed by {@link Lane#ordinal()}
+     */
+    public OutboundQueue(int[] weights, int maxEvents, int maxVoice, int maxChat) {
+        this.weights = weights.clone();
+        this.maxEvents = maxEvents;
+        this.maxVoice = maxVoice;
+        this.maxChat = maxChat;
+    }
+
+    /**
+     * Queues a message on a lane.
+     *
+     * @return false if the reliable lane is full and the connection should be dropped
+     */
+    public boolean offer(Lane lane, String message) {
+        switch (lane) {
+            case STATE:
+                state.set(message);
+                return true;
+            case EVENTS:
+                if (eventCount.incrementAndGet() > maxEvents) {
+                    eventCount.decrementAndGet();
+                    return false;
+                }
+                events.add(message);
+                return true;
+            case VOICE:
+                offerBounded(voice, voiceCount, maxVoice, message);
+                return true;
+            case CHAT:
+            default:
+                offerBounded(chat, chatCount, maxChat, message);
+                return true;
+        }
+    }
+
+    private static void offerBounded(Queue<String> queue, AtomicInteger count, int max, String message) {
+        queue.add(message);
+        if (count.incrementAndGet() > max && queue.poll() != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    public boolean isEmpty() {
+        return state.get() == null && events.isEmpty() && voice.isEmpty() && chat.isEmpty();
+    }
+
+    /**
+     * Moves messages into {@code out} in send order while the allowance
+     * lasts. Each non-empty lane first gets its weighted share of the
+     * allowance (plus what it could not use last time); whatever is left is
+     * then handed out in priority order. The pending snapshot is always
+     * taken when {@code forceState} is set, even if it exceeds the allowance.
+     *
+     * @return bytes (approximated by characters) moved into {@code out}
+     */
+    public int drain(int allowance, boolean forceState, List<String> out) {
+        int used = 0;
+
+        if (forceState) {
+            String snapshot = state.getAndSet(null);
+            if (snapshot != null) {
+                out.add(snapshot);
+                used += snapshot.length();
+            }
+        }
+
+        int activeWeight = 0;
+        for (Lane lane : LANES) {
+            if (hasPending(lane)) {
+                activeWeight += weights[lane.ordinal()];
+            } else {
+                deficit[lane.ordinal()] = 0;
+            }
+        }
+
+        // Weighted pass
+        int shareable = Math.max(0, allowance - used);
+        if (activeWeight > 0) {
+            for (Lane lane : LANES) {
+                if (!hasPending(lane)) {
+                    continue;
+                }
+                int i = lane.ordinal();
+                deficit[i] += (int) ((long) shareable * weights[i] / activeWeight);
+                int sent = take(lane, deficit[i], out);
+                deficit[i] -= sent;
+                used += sent;
+                if (!hasPending(lane)) {
+                    deficit[i] = 0;
+                }
+            }
+        }
+
+        // Work-conserving pass: leftover allowance goes out by priority
+        for (Lane lane : LANES) {
+            int left = allowance - used;
+            if (left <= 0) {
+                break;
+            }
+            used += take(lane, left, out);
+        }
+        return used;
+    }
+
+    private boolean hasPending(Lane lane) {
+        switch (lane) {
+            case STATE:
+                return state.get() != null;
+            case EVENTS:
+                return !events.isEmpty();
+            case VOICE:
+                return !voice.isEmpty();
+            case CHAT:
+            default:
+                return !chat.isEmpty();
+        }
+    }
+
+    private int take(Lane lane, int budget, List<String> out) {
+        if (lane == Lane.STATE) {
+            String snapshot = state.get();
+            if (snapshot == null || snapshot.length() > budget || !state.compareAndSet(snapshot, null)) {
+                return 0;
+            }
+            out.add(snapshot);
+            return snapshot.length();
+        }
+
+        Queue<String> queue = lane == Lane.EVENTS ? events : lane == Lane.VOICE ? voice : chat;
+        AtomicInteger count = lane == Lane.EVENTS ? eventCount : lane == Lane.VOICE ? voiceCount : chatCount;
+        int sent = 0;
+        String next;
+        while ((next = queue.peek()) != null && sent + next.length() <= budget) {
+            // Producers may evict the head of a bounded lane concurrently, so
+            // send whatever poll() returns rather than the peeked message
+            String polled = queue.poll();
+            if (polled == null) {
+                break;
+            }
+            count.decrementAndGet();
+            out.add(polled);
+            sent += polled.length();
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,74 @@
+package com.minitankfire.network;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.minitankfire.util.Log;
+
+/**
+ * Shared writer pool and settings for per-connection outbound queues.
+ *
+ * Socket writes happen on these threads instead of on the game loop or on
+ * other clients' reader threads, so one slow connection cannot stall a
+ * tick or a broadcast.
+ */
+public class OutboundScheduler {
+    private final ExecutorService writers;
+    private final int budgetBytesPerTick;
+    private final int[] laneWeights;
+    private final int maxQueuedEvents;
+    private final int maxQueuedVoice;
+    private final int maxQueuedChat;
+
+    public OutboundScheduler(int writerThreads, int budgetBytesPerTick, int[] laneWeights,
+            int maxQueuedEvents, int maxQueuedVoice, int maxQueuedChat) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread t = new Thread(r, "Writer-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.budgetBytesPerTick = budgetBytesPerTick;
+        this.laneWeights = laneWeights.clone();
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.maxQueuedVoice = maxQueuedVoice;
+        this.maxQueuedChat = maxQueuedChat;
+    }
+
+    /**
+     * Parses lane weights in the form "state:8,events:4,voice:2,chat:1".
+     * Lanes that are not listed get weight 1.
+     */
+    public static int[] parseLaneWeights(String spec) {
+        int[] weights = new int[OutboundQueue.Lane.values().length];
+        java.util.Arrays.fill(weights, 1);
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length == 2) {
+                try {
+                    OutboundQueue.Lane lane = OutboundQueue.Lane.valueOf(kv[0].trim().toUpperCase());
+                    weights[lane.ordinal()] = Math.max(1, Integer.parseInt(kv[1].trim()));
+                } catch (IllegalArgumentException e) {
+                    Log.warn("CONFIG", "Ignoring lane weight '" + part + "'");
+                }
+            }
+        }
+        return weights;
+    }
+
+    public OutboundQueue newQueue() {
+        return new OutboundQueue(laneWeights, maxQueuedEvents, maxQueuedVoice, maxQueuedChat);
+    }
+
+    public int getBudgetBytesPerTick() {
+        return budgetBytesPerTick;
+    }
+
+    void execute(Runnable task) {
+        writers.execute(task);
+    }
+
+    public void shutdown() {
+        writers.shutdownNow();
+    }
+}
@@ -0,0 +1,65 @@
+package com.minitankfire.network;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signed tokens that let a player whose connection dropped take over its
+ * tank again from a new connection.
+ *
+ * A token is the player id plus an HMAC-SHA256 of it under a key generated
+ * at startup, so it cannot be forged or moved to another player, and tokens
+ * from an earlier server run are rejected. Tokens do not expire by
+ * themselves: the room only accepts one while the player is still in the
+ * game, i.e. connected or within the grace window after a drop.
+ */
+public class ResumeTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public ResumeTokens() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    public String issue(String playerId) {
+        return playerId + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(playerId));
+    }
+
+    /**
+     * @return the player id the token was issued for, or null if it is
+     *         malformed or not signed by this server
+     */
+    public String verify(String token) {
+        int dot = token.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String playerId = token.substring(0, dot);
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return MessageDigest.isEqual(signature, sign(playerId)) ? playerId : null;
+    }
+
+    private byte[] sign(String playerId) {
+        try {
+            // Mac instances are not thread-safe, and tokens are rare enough to make one per call
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(playerId.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
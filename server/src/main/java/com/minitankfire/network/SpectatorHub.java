@@ -0,0 +1,414 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import com.minitankfire.util.Log;
+
+/**
+ * Read-only WebSocket sessions that watch the match.
+ *
+ * Spectators never become players: they are not in the room's player or
+ * client maps and never take a client thread. The room encodes one snapshot
+ * frame per send interval (shared with the players' update when both are
+ * due) and hands it to a few branch threads. Each branch owns a slice of the
+ * spectators on its own selector and writes that same read-only frame to
+ * every socket, so the cost per frame is one encode plus one write per
+ * viewer. A viewer still busy with the previous frame skips the new one
+ * rather than queueing it.
+ *
+ * Frames can be held back by a fixed delay (a ring of encoded frames), e.g.
+ * for streams that must not give live positions away.
+ *
+ * A wss:// viewer still shares the encoded frame, but it is encrypted per
+ * connection through the viewer's {@link TlsChannel}.
+ */
+public class SpectatorHub {
+    public static final String PATH = "/spectate";
+
+    // Spectators only send close (and maybe ping/pong) frames
+    private static final int INBOUND_BUFFER_BYTES = 256;
+
+    private final int maxSpectators;
+    private final int sendIntervalTicks;
+    private final Branch[] branches;
+    private final AtomicInteger spectators = new AtomicInteger();
+    private final AtomicInteger nextBranch = new AtomicInteger();
+
+    // Delay line of encoded frames (publishing thread only)
+    private final ByteBuffer[] delayRing;
+    private int ringHead;
+    private int ringFilled;
+    private long lastPublishTick = -1;
+
+    // Sent once to every new spectator before the first snapshot (the map)
+    private volatile ByteBuffer introFrame;
+
+    // Counters for monitoring
+    private final AtomicLong framesPublished = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+
+    /**
+     * @param branchThreads selector threads sharing the spectators
+     * @param delayTicks    how far the feed lags behind the game, rounded
+     *                      down to whole send intervals
+     */
+    public SpectatorHub(int maxSpectators, int branchThreads, int sendIntervalTicks, int delayTicks)
+            throws IOException {
+        this.maxSpectators = maxSpectators;
+        this.sendIntervalTicks = Math.max(1, sendIntervalTicks);
+        this.delayRing = new ByteBuffer[Math.max(0, delayTicks) / this.sendIntervalTicks + 1];
+        this.branches = new Branch[Math.max(1, branchThreads)];
+        for (int i = 0; i < branches.length; i++) {
+            branches[i] = new Branch();
+            Thread t = new Thread(branches[i], "Spectate-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Claims a spectator slot before the upgrade is answered.
+     *
+     * @return false if the spectator limit is reached
+     */
+    public boolean tryReserve() {
+        while (true) {
+            int current = spectators.get();
+            if (current >= maxSpectators) {
+                return false;
+            }
+            if (spectators.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        spectators.decrementAndGet();
+    }
+
+    /**
+     * Takes over an upgraded connection whose slot was reserved with
+     * {@link #tryReserve()}.
+     *
+     * @param tls      the connection's TLS session, or null if it is plain
+     * @param leftover bytes already read past the HTTP request head
+     */
+    public void add(SocketChannel channel, TlsChannel tls, ByteBuffer leftover) throws IOException {
+        channel.configureBlocking(false);
+        Branch branch = branches[Math.floorMod(nextBranch.getAndIncrement(), branches.length)];
+        branch.register(new Session(channel, tls, leftover));
+    }
+
+    public void setIntroMessage(String message) {
+        this.introFrame = FrameEncoder.encodeSharedTextFrame(message);
+    }
+
+    /**
+     * Whether the room should encode a frame for spectators on this tick.
+     */
+    public boolean wantsFrame(long tick) {
+        return spectators.get() > 0 && tick % sendIntervalTicks == 0;
+    }
+
+    /**
+     * Encodes the snapshot once and fans the (possibly delayed) frame out
+     * to every branch. Called by the room's snapshot encoder thread.
+     */
+    public void publish(long tick, String message) {
+        if (lastPublishTick >= 0 && tick - lastPublishTick > sendIntervalTicks) {
+            // The feed was idle (no spectators); don't replay stale frames
+            java.util.Arrays.fill(delayRing, null);
+            ringFilled = 0;
+        }
+        lastPublishTick = tick;
+
+        delayRing[ringHead] = FrameEncoder.encodeSharedTextFrame(message);
+        ringHead = (ringHead + 1) % delayRing.length;
+        if (ringFilled < delayRing.length) {
+            ringFilled++;
+            if (ringFilled < delayRing.length) {
+                return; // Still filling the delay line
+            }
+        }
+        ByteBuffer frame = delayRing[ringHead]; // Oldest entry
+        for (Branch branch : branches) {
+            branch.offer(frame);
+        }
+        framesPublished.incrementAndGet();
+    }
+
+    public int getSpectatorCount() { return spectators.get(); }
+    public long getFramesPublished() { return framesPublished.get(); }
+    public long getFramesSkipped() { return framesSkipped.get(); }
+
+    public void shutdown() {
+        for (Branch branch : branches) {
+            branch.stop();
+        }
+    }
+
+    /**
+     * One selector thread and the spectators it owns.
+     */
+    private final class Branch implements Runnable {
+        private final Selector selector;
+        private final Queue<Session> registrations = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<ByteBuffer> nextFrame = new AtomicReference<>();
+        private final Set<Session> sessions = new HashSet<>();
+        private volatile boolean running = true;
+
+        Branch() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(Session session) {
+            registrations.add(session);
+            selector.wakeup();
+        }
+
+        void offer(ByteBuffer frame) {
+            nextFrame.set(frame); // A frame this branch has not started yet is replaced
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    registerPending();
+
+                    ByteBuffer frame = nextFrame.getAndSet(null);
+                    if (frame != null) {
+                        fanOut(frame);
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Session session = (Session) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            session.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.write();
+                        }
+                        if (session.closed) {
+                            sessions.remove(session);
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    Log.error("SPECTATE_ERROR", e.getMessage());
+                }
+            } finally {
+                for (Session session : sessions) {
+                    session.close();
+                }
+                sessions.clear();
+                Session pending;
+                while ((pending = registrations.poll()) != null) {
+                    pending.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Ignore errors during close
+                }
+            }
+        }
+
+        private void registerPending() {
+            Session session;
+            while ((session = registrations.poll()) != null) {
+                try {
+                    session.key = session.channel.register(selector, SelectionKey.OP_READ, session);
+                    sessions.add(session);
+                    ByteBuffer intro = introFrame;
+                    if (intro != null) {
+                        session.startFrame(intro);
+                    }
+                    session.parseInbound();
+                    if (!session.closed && session.tls != null && session.tls.hasBufferedInput()) {
+                        session.read();
+                    }
+                    if (session.closed) {
+                        sessions.remove(session);
+                    }
+                } catch (IOException e) {
+                    session.close();
+                }
+            }
+        }
+
+        private void fanOut(ByteBuffer frame) {
+            Iterator<Session> it = sessions.iterator();
+            while (it.hasNext()) {
+                Session session = it.next();
+                session.startFrame(frame);
+                if (session.closed) {
+                    it.remove();
+                }
+            }
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * One spectator connection. Only touched by its branch thread.
+     */
+    private final class Session {
+        final SocketChannel channel;
+        final TlsChannel tls; // null for a plain connection
+        final ByteChannel io; // The channel itself, or its TLS session
+        final ByteBuffer inbound = ByteBuffer.allocate(INBOUND_BUFFER_BYTES);
+        SelectionKey key;
+        ByteBuffer pending; // Unwritten rest of the current shared frame (or its unsent records)
+        boolean closed;
+
+        Session(SocketChannel channel, TlsChannel tls, ByteBuffer leftover) {
+            this.channel = channel;
+            this.tls = tls;
+            this.io = tls != null ? tls : channel;
+            if (leftover.remaining() > inbound.remaining()) {
+                leftover.limit(leftover.position() + inbound.remaining());
+            }
+            inbound.put(leftover);
+        }
+
+        void startFrame(ByteBuffer frame) {
+            if (pending != null) {
+                framesSkipped.incrementAndGet(); // Still writing the previous frame
+                return;
+            }
+            pending = frame.duplicate();
+            write();
+        }
+
+        void write() {
+            if (pending == null) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            try {
+                io.write(pending);
+                if (pending.hasRemaining() || (tls != null && !tls.flush())) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } else {
+                    pending = null;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void read() {
+            int n;
+            do {
+                try {
+                    n = io.read(inbound);
+                    if (n < 0) {
+                        close();
+                        return;
+                    }
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+                parseInbound();
+                // Records already buffered by TLS would not wake the selector again
+            } while (tls != null && n > 0 && !closed);
+        }
+
+        /**
+         * Consumes complete frames from the inbound buffer. Spectators are
+         * read-only, so anything but a close frame is ignored, and frames too
+         * large for a control frame end the session.
+         */
+        void parseInbound() {
+            inbound.flip();
+            try {
+                while (inbound.remaining() >= 2) {
+                    int start = inbound.position();
+                    int b1 = inbound.get(start + 1) & 0xFF;
+                    int length = b1 & 0x7F;
+                    if ((b1 & 0x80) == 0 || length > 125) {
+                        sendClose(length > 125 ? FrameDecoder.ProtocolException.MESSAGE_TOO_BIG
+                                : FrameDecoder.ProtocolException.PROTOCOL_ERROR);
+                        return;
+                    }
+                    if (inbound.remaining() < 6 + length) {
+                        break;
+                    }
+                    int opcode = inbound.get(start) & 0x0F;
+                    inbound.position(start + 6 + length);
+                    if (opcode == FrameEncoder.OPCODE_CLOSE) {
+                        sendClose(1000);
+                        return;
+                    }
+                }
+            } finally {
+                inbound.compact();
+            }
+        }
+
+        /**
+         * Best-effort close frame; skipped if it would interleave with a
+         * partially written snapshot.
+         */
+        private void sendClose(int code) {
+            if (pending == null) {
+                ByteBuffer frame = ByteBuffer.allocate(4);
+                FrameEncoder.putHeader(frame, FrameEncoder.OPCODE_CLOSE, 2);
+                frame.putShort((short) code);
+                frame.flip();
+                try {
+                    io.write(frame);
+                } catch (IOException e) {
+                    // Closing anyway
+                }
+            }
+            close();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                io.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+            if (tls != null) {
+                tls.release();
+            }
+            release();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.minitankfire.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Plain HTTP {@code GET}/{@code HEAD} for the web client's files, so the
+ * game port serves the page as well as the WebSocket.
+ *
+ * File bodies go straight from the page cache to the socket with
+ * {@link FileChannel#transferTo} (sendfile on Linux); text files are also
+ * kept gzipped in memory, compressed once per file version, for clients
+ * that accept it. Each file has an ETag per variant, so a browser
+ * revalidating its cache gets an empty 304. A file changed on disk is
+ * picked up on the next request (one stat per request). Over TLS the
+ * body has to pass through the encrypting channel, so files are copied in
+ * record-sized chunks instead.
+ */
+class StaticFiles {
+    // Larger text files are sent uncompressed rather than held in memory
+    private static final long MAX_GZIP_SOURCE_BYTES = 1 << 20;
+    // Four full TLS records per copy
+    private static final int COPY_CHUNK_BYTES = 4 * 16384;
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("js", "text/javascript; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("mp3", "audio/mpeg");
+        CONTENT_TYPES.put("wav", "audio/wav");
+        CONTENT_TYPES.put("ogg", "audio/ogg");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+    }
+
+    private static final class Entry {
+        final Path file;
+        final long size;
+        final long modified;
+        final String contentType;
+        final String etag;
+        final byte[] gzip; // null if not compressible or not smaller
+        final String gzipEtag;
+
+        Entry(Path file, BasicFileAttributes attrs, String contentType) throws IOException {
+            this.file = file;
+            this.size = attrs.size();
+            this.modified = attrs.lastModifiedTime().toMillis();
+            this.contentType = contentType;
+            String version = Long.toHexString(size) + "-" + Long.toHexString(modified);
+            this.etag = "\"" + version + "\"";
+            this.gzip = isCompressible(contentType) && size <= MAX_GZIP_SOURCE_BYTES ? compress(file, size) : null;
+            this.gzipEtag = "\"" + version + "-gz\"";
+        }
+
+        boolean isCurrent(BasicFileAttributes attrs) {
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == modified;
+        }
+    }
+
+    private final Path root;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param root directory served at {@code /}, e.g. the {@code client} folder
+     */
+    StaticFiles(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Writes the response for a GET or HEAD request.
+     *
+     * @param keepAlive whether the connection stays open for another request
+     * @return false if no such file (a 404 was sent)
+     */
+    boolean respond(GatheringByteChannel channel, HttpRequest request, boolean keepAlive) throws IOException {
+        Entry entry = lookup(request.getPath());
+        String connection = keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n";
+        if (entry == null) {
+            writeHead(channel, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n" + connection + "\r\n", null);
+            return false;
+        }
+
+        boolean gzip = entry.gzip != null && acceptsGzip(request.getHeader("accept-encoding"));
+        String etag = gzip ? entry.gzipEtag : entry.etag;
+        String headers = "ETag: " + etag + "\r\n" +
+                "Cache-Control: no-cache\r\n" + // Revalidate every time; unchanged files cost a 304
+                "Vary: Accept-Encoding\r\n" +
+                connection;
+        String ifNoneMatch = request.getHeader("if-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            writeHead(channel, "HTTP/1.1 304 Not Modified\r\n" + headers + "\r\n", null);
+            return true;
+        }
+
+        long length = gzip ? entry.gzip.length : entry.size;
+        String head = "HTTP/1.1 200 OK\r\n" +
+                "Content-Type: " + entry.contentType + "\r\n" +
+                "Content-Length: " + length + "\r\n" +
+                (gzip ? "Content-Encoding: gzip\r\n" : "") +
+                headers + "\r\n";
+        boolean body = "GET".equals(request.getMethod());
+        if (gzip) {
+            writeHead(channel, head, body ? ByteBuffer.wrap(entry.gzip) : null);
+        } else {
+            writeHead(channel, head, null);
+            if (body) {
+                transferFile(channel, entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cached entry for a request path, or null if it does not
+     *         name a regular file under the root
+     */
+    private Entry lookup(String path) throws IOException {
+        Path file = resolve(path);
+        if (file == null) {
+            return null;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            cache.remove(path);
+            return null;
+        }
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+        Entry entry = cache.get(path);
+        if (entry == null || !entry.isCurrent(attrs)) {
+            // Two threads may both rebuild a changed file; either result is valid
+            entry = new Entry(file, attrs, contentType(file));
+            cache.put(path, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Maps a request path to a file under the root. Rejects anything that
+     * could leave it (dot segments, backslashes) or names a hidden file;
+     * the client's file names never need percent-encoding.
+     */
+    private Path resolve(String path) {
+        if (!path.startsWith("/") || path.indexOf('\\') >= 0 || path.indexOf('%') >= 0 || path.indexOf('\0') >= 0) {
+            return null;
+        }
+        String relative = path.endsWith("/") ? path.substring(1) + "index.html" : path.substring(1);
+        for (String segment : relative.split("/")) {
+            if (segment.isEmpty() || segment.startsWith(".")) {
+                return null;
+            }
+        }
+        Path file = root.resolve(relative).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    private static void transferFile(GatheringByteChannel channel, Entry entry) throws IOException {
+        try (FileChannel file = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+            if (!(channel instanceof SocketChannel)) {
+                copyFile(file, channel, entry);
+                return;
+            }
+            long position = 0;
+            while (position < entry.size) {
+                long sent = file.transferTo(position, entry.size - position, channel);
+                if (sent <= 0) {
+                    // Truncated since the head was sent; the length is wrong now
+                    throw new IOException("File changed while sending: " + entry.file);
+                }
+                position += sent;
+            }
+        }
+    }
+
+    private static void copyFile(FileChannel file, GatheringByteChannel channel, Entry entry) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(entry.size, COPY_CHUNK_BYTES));
+        long position = 0;
+        while (position < entry.size) {
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), entry.size - position));
+            int read = file.read(chunk, position);
+            if (read <= 0) {
+                throw new IOException("File changed while sending: " + entry.file);
+            }
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+            position += read;
+        }
+    }
+
+    private static void writeHead(GatheringByteChannel channel, String head, ByteBuffer body) throws IOException {
+        ByteBuffer headBuf = ByteBuffer.wrap(head.getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer[] buffers = body != null ? new ByteBuffer[] { headBuf, body } : new ByteBuffer[] { headBuf };
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            if (params[0].trim().equalsIgnoreCase("gzip")) {
+                return params.length < 2 || !params[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase());
+        return type != null ? type : "application/octet-stream";
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/json") ||
+                contentType.startsWith("image/svg+xml");
+    }
+
+    private static byte[] compress(Path file, long size) throws IOException {
+        byte[] raw = Files.readAllBytes(file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) size / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        }
+        // Tiny files can grow; those are sent as they are
+        return out.size() < raw.length ? out.toByteArray() : null;
+    }
+}
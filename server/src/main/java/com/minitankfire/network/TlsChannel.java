@@ -0,0 +1,348 @@
+package com.minitankfire.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+/**
+ * A TLS connection on top of a {@link SocketChannel}, driven by an
+ * {@link SSLEngine}.
+ *
+ * Reads and writes carry plaintext, so the WebSocket and HTTP code above
+ * does not know whether the socket is encrypted. Works in both modes of
+ * the socket: in blocking mode (handshake stage, game connections) writes
+ * go out completely; in non-blocking mode (spectators, keep-alive parking)
+ * a read may return 0 and encrypted bytes the socket did not take stay
+ * buffered until {@link #flush()}.
+ *
+ * One reader and one writer may use the channel at the same time, as a
+ * game connection's reader thread and the writer pool do. The record
+ * buffers are borrowed from the {@link TlsContext}'s pools for the life of
+ * the connection and returned by {@link #release()}.
+ */
+public class TlsChannel implements ByteChannel, GatheringByteChannel {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final TlsContext context;
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+    private ByteBuffer netIn;  // Received records, write mode
+    private ByteBuffer appIn;  // Decrypted bytes not yet read, read mode
+    private ByteBuffer netOut; // Encrypted bytes not yet sent, read mode
+    private boolean inboundDone;
+    private volatile boolean released;
+
+    /**
+     * @param received bytes already read from the socket (the start of the
+     *                 client hello), consumed before reading it again
+     */
+    TlsChannel(SocketChannel channel, SSLEngine engine, TlsContext context, ByteBuffer received) {
+        this.channel = channel;
+        this.engine = engine;
+        this.context = context;
+        this.netIn = context.acquireNetIn();
+        this.appIn = context.acquireAppIn();
+        this.netOut = context.acquireNetOut();
+        this.appIn.flip();
+        this.netOut.flip();
+        if (received.remaining() > netIn.remaining()) {
+            received.limit(received.position() + netIn.remaining());
+        }
+        this.netIn.put(received);
+    }
+
+    /**
+     * Runs the TLS handshake. The socket must be in blocking mode.
+     *
+     * @return true if the client resumed an earlier session
+     */
+    public boolean handshake() throws IOException {
+        try {
+            return runHandshake();
+        } catch (IOException e) {
+            context.recordFailedHandshake();
+            throw e;
+        }
+    }
+
+    private boolean runHandshake() throws IOException {
+        long startedMs = System.currentTimeMillis();
+        synchronized (readLock) {
+            synchronized (writeLock) {
+                engine.beginHandshake();
+                while (true) {
+                    switch (engine.getHandshakeStatus()) {
+                        case NEED_TASK:
+                            runTasks();
+                            break;
+                        case NEED_WRAP:
+                            wrap(EMPTY);
+                            flushFully();
+                            break;
+                        case NEED_UNWRAP:
+                        case NEED_UNWRAP_AGAIN:
+                            if (unwrap().getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && fill() < 0) {
+                                throw new EOFException("Connection closed during TLS handshake");
+                            }
+                            if (engine.isInboundDone()) {
+                                throw new EOFException("Connection closed during TLS handshake");
+                            }
+                            break;
+                        default:
+                            flushFully();
+                            // A resumed session keeps the creation time of the one it resumes
+                            boolean resumed = engine.getSession().getCreationTime() < startedMs;
+                            context.recordHandshake(resumed);
+                            return resumed;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        synchronized (readLock) {
+            checkOpen();
+            while (true) {
+                if (appIn.hasRemaining()) {
+                    int n = Math.min(appIn.remaining(), dst.remaining());
+                    ByteBuffer slice = appIn.duplicate();
+                    slice.limit(slice.position() + n);
+                    dst.put(slice);
+                    appIn.position(appIn.position() + n);
+                    return n;
+                }
+                if (inboundDone) {
+                    return -1;
+                }
+                SSLEngineResult result = unwrap();
+                switch (result.getStatus()) {
+                    case CLOSED:
+                        inboundDone = true;
+                        break;
+                    case BUFFER_UNDERFLOW:
+                        int n = fill();
+                        if (n < 0) {
+                            inboundDone = true;
+                        } else if (n == 0) {
+                            return 0; // Non-blocking and nothing more yet
+                        }
+                        break;
+                    case BUFFER_OVERFLOW:
+                        throw new SSLException("Record larger than the application buffer");
+                    default:
+                        // Post-handshake messages (tickets, key updates) may need an answer
+                        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+                        if (status == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                            runTasks();
+                        } else if (status == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                            synchronized (writeLock) {
+                                wrap(EMPTY);
+                                flush();
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[] { src }, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Encrypts as much of the buffers as fits in the record buffer (several
+     * records per socket write) and sends it. In blocking mode this repeats
+     * until everything is sent; in non-blocking mode it stops once the
+     * socket is full.
+     *
+     * @return plaintext bytes consumed
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            checkOpen();
+            long consumed = 0;
+            while (flush()) {
+                if (!hasRemaining(srcs, offset, length)) {
+                    break;
+                }
+                netOut.compact();
+                try {
+                    while (netOut.remaining() >= context.getPacketSize() && hasRemaining(srcs, offset, length)) {
+                        SSLEngineResult result = engine.wrap(srcs, offset, length, netOut);
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new ClosedChannelException();
+                        }
+                        consumed += result.bytesConsumed();
+                    }
+                } finally {
+                    netOut.flip();
+                }
+            }
+            return consumed;
+        }
+    }
+
+    /**
+     * Sends buffered encrypted bytes.
+     *
+     * @return true once nothing is left to send
+     */
+    public boolean flush() throws IOException {
+        synchronized (writeLock) {
+            while (netOut.hasRemaining()) {
+                if (channel.write(netOut) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return true if bytes have been received that no read has returned
+     *         yet; such a connection cannot wait on a selector for more
+     */
+    boolean hasBufferedInput() {
+        synchronized (readLock) {
+            return appIn.hasRemaining() || netIn.position() > 0;
+        }
+    }
+
+    public SocketChannel getSocketChannel() {
+        return channel;
+    }
+
+    public String getProtocol() {
+        return engine.getSession().getProtocol();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Sends close_notify (best effort) and closes the socket. The buffers
+     * stay with the channel until {@link #release()}, as another thread may
+     * still be inside a read.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            synchronized (writeLock) {
+                if (!released && channel.isOpen() && !engine.isOutboundDone()) {
+                    engine.closeOutbound();
+                    wrap(EMPTY);
+                    flush();
+                }
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the record buffers to the pools. Only call once the channel
+     * is closed and no thread uses it any more.
+     */
+    public void release() {
+        synchronized (readLock) {
+            synchronized (writeLock) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                context.releaseNetIn(netIn);
+                context.releaseAppIn(appIn);
+                context.releaseNetOut(netOut);
+                netIn = null;
+                appIn = null;
+                netOut = null;
+            }
+        }
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if (released) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Decrypts the next buffered record into the application buffer.
+     */
+    private SSLEngineResult unwrap() throws SSLException {
+        netIn.flip();
+        appIn.compact();
+        try {
+            return engine.unwrap(netIn, appIn);
+        } finally {
+            netIn.compact();
+            appIn.flip();
+        }
+    }
+
+    /**
+     * Reads more records from the socket.
+     *
+     * @return bytes read, 0 if none are available (non-blocking), -1 on EOF
+     */
+    private int fill() throws IOException {
+        if (!netIn.hasRemaining()) {
+            throw new SSLException("TLS record larger than the network buffer");
+        }
+        return channel.read(netIn);
+    }
+
+    private void wrap(ByteBuffer src) throws SSLException {
+        netOut.compact();
+        try {
+            engine.wrap(src, netOut);
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    private void flushFully() throws IOException {
+        while (!flush()) {
+            Thread.onSpinWait(); // Only reached if the socket is non-blocking; the handshake never is
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] srcs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (srcs[i].hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package com.minitankfire.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * Server-side TLS for the game port: the key material, the session cache
+ * and the record buffer pools shared by all {@link TlsChannel}s.
+ *
+ * Reconnecting clients skip the certificate exchange by resuming their
+ * earlier session: TLS 1.3 clients present a session ticket (stateless
+ * when the JDK supports it, otherwise looked up in the server cache),
+ * TLS 1.2 clients a cached session id. Both are bounded by the session
+ * timeout, and the cache by its size.
+ */
+public class TlsContext {
+    private final SSLContext sslContext;
+    private final String[] protocols;
+    private final int packetSize;
+    private final BufferPool netInBuffers;
+    private final BufferPool appInBuffers;
+    private final BufferPool netOutBuffers;
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+    private final AtomicLong failedHandshakes = new AtomicLong();
+
+    private TlsContext(SSLContext sslContext, String[] protocols, int maxPooled) {
+        this.sslContext = sslContext;
+        this.protocols = protocols;
+        SSLSession session = newEngine().getSession();
+        this.packetSize = session.getPacketBufferSize();
+        this.netInBuffers = new BufferPool(packetSize, maxPooled);
+        this.appInBuffers = new BufferPool(session.getApplicationBufferSize(), maxPooled);
+        // Room for several records, so a large batch goes out in one socket write
+        this.netOutBuffers = new BufferPool(packetSize * 4, maxPooled);
+    }
+
+    /**
+     * Loads the server certificate and key from a PKCS12 (or JKS) key store.
+     *
+     * @param protocols          enabled protocols, most preferred first (e.g. TLSv1.3, TLSv1.2)
+     * @param sessionCacheSize   sessions kept for resumption; 0 = unlimited
+     * @param sessionTimeoutSecs how long a session can be resumed
+     * @param sessionTickets     whether TLS 1.3 resumption uses stateless tickets
+     * @param maxPooled          idle record buffers kept per pool
+     */
+    public static TlsContext load(Path keyStore, char[] password, String[] protocols, int sessionCacheSize,
+            int sessionTimeoutSecs, boolean sessionTickets, int maxPooled) throws IOException, GeneralSecurityException {
+        // Read once when the JDK's TLS configuration initializes (JDK 13+; ignored by older ones)
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(sessionTickets));
+
+        KeyStore store = KeyStore.getInstance(keyStore.toString().endsWith(".jks") ? "JKS" : "PKCS12");
+        try (InputStream input = Files.newInputStream(keyStore)) {
+            store.load(input, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(store, password);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), null, null);
+        SSLSessionContext sessions = sslContext.getServerSessionContext();
+        sessions.setSessionCacheSize(sessionCacheSize);
+        sessions.setSessionTimeout(sessionTimeoutSecs);
+
+        String[] supported = sslContext.getSupportedSSLParameters().getProtocols();
+        String[] enabled = Arrays.stream(protocols)
+                .map(String::trim)
+                .filter(p -> Arrays.asList(supported).contains(p))
+                .toArray(String[]::new);
+        if (enabled.length == 0) {
+            throw new GeneralSecurityException("None of the protocols " + Arrays.toString(protocols) + " is supported");
+        }
+        return new TlsContext(sslContext, enabled, maxPooled);
+    }
+
+    /**
+     * @return a server-mode engine with the configured protocols
+     */
+    public SSLEngine newEngine() {
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setEnabledProtocols(protocols);
+        return engine;
+    }
+
+    /**
+     * Wraps an accepted connection; the caller runs the handshake.
+     *
+     * @param received bytes already read from the socket
+     */
+    public TlsChannel open(SocketChannel channel, ByteBuffer received) {
+        return new TlsChannel(channel, newEngine(), this, received);
+    }
+
+    /**
+     * Whether the bytes a connection starts with are a TLS handshake record
+     * rather than an HTTP request line.
+     */
+    static boolean isClientHello(ByteBuffer buf, int start) {
+        return buf.get(start) == 0x16;
+    }
+
+    void recordHandshake(boolean resumed) {
+        (resumed ? resumedHandshakes : fullHandshakes).incrementAndGet();
+    }
+
+    void recordFailedHandshake() {
+        failedHandshakes.incrementAndGet();
+    }
+
+    int getPacketSize() { return packetSize; }
+
+    ByteBuffer acquireNetIn() { return netInBuffers.acquire(); }
+    ByteBuffer acquireAppIn() { return appInBuffers.acquire(); }
+    ByteBuffer acquireNetOut() { return netOutBuffers.acquire(); }
+    void releaseNetIn(ByteBuffer buffer) { netInBuffers.release(buffer); }
+    void releaseAppIn(ByteBuffer buffer) { appInBuffers.release(buffer); }
+    void releaseNetOut(ByteBuffer buffer) { netOutBuffers.release(buffer); }
+
+    public String[] getProtocols() { return protocols.clone(); }
+    public SSLSessionContext getSessionContext() { return sslContext.getServerSessionContext(); }
+    public long getFullHandshakes() { return fullHandshakes.get(); }
+    public long getResumedHandshakes() { return resumedHandshakes.get(); }
+    public long getFailedHandshakes() { return failedHandshakes.get(); }
+
+    public String statsJson() {
+        return "{\"protocols\":\"" + String.join(",", protocols) + "\"" +
+                ",\"fullHandshakes\":" + fullHandshakes.get() +
+                ",\"resumedHandshakes\":" + resumedHandshakes.get() +
+                ",\"failedHandshakes\":" + failedHandshakes.get() + "}";
+    }
+}
@@ -2,12 +2,24 @@ package com.minitankfire.network;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import com.minitankfire.util.JfrEvents;
+import com.minitankfire.util.Log;
 
 /**
  * WebSocket protocol handler (RFC 6455).
@@ -15,13 +27,28 @@ import java.util.Properties;
  * Pure Java implementation - no external dependencies.
  */
 public class WebSocketHandler {
+    private SocketChannel channel;
+    private TlsChannel tls; // null for a plain connection
+    private GatheringByteChannel out; // The channel itself, or its TLS session
     private Socket socket;
-    private InputStream input;
-    private OutputStream output;
-    private boolean connected;
+    private FrameDecoder decoder;
+    private ByteBuffer readBuffer;
+    private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer[] frameSlices = new ByteBuffer[16]; // One per frame in the current write
+    private volatile boolean connected;
+    private volatile long writeStartedAt; // nanoTime of the write in progress, 0 while idle
     private String clientId;
+    private final LinkStats link = new LinkStats();
+
+    // Writes into a socket buffer with room (and TLS encryption) take microseconds
+    private static final long STALL_THRESHOLD_NANOS = 2_000_000;
 
     private static String WEBSOCKET_GUID;
+    private static int MAX_MESSAGE_BYTES;
+    private static BufferPool READ_BUFFERS;
+    private static BufferPool WRITE_BUFFERS;
 
     static {
         loadConfig();
@@ -32,78 +59,77 @@ public class WebSocketHandler {
         try (InputStream input = WebSocketHandler.class.getClassLoader().getResourceAsStream("config.properties")) {
             if (input != null) {
                 props.load(input);
-                WEBSOCKET_GUID = props.getProperty("websocket.guid", "258EAFA5-E914-47DA-95CA-C5AB0DC85B11");
-            } else {
-                WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
             }
         } catch (IOException e) {
-            System.err.println("[CONFIG] Error loading websocket.guid: " + e.getMessage());
-            WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+            Log.warn("CONFIG", "Error loading websocket settings: " + e.getMessage());
         }
+        WEBSOCKET_GUID = props.getProperty("websocket.guid", "258EAFA5-E914-47DA-95CA-C5AB0DC85B11");
+        MAX_MESSAGE_BYTES = Integer.parseInt(props.getProperty("websocket.maxMessageBytes", "65536"));
+        READ_BUFFERS = new BufferPool(
+                Integer.parseInt(props.getProperty("websocket.readBufferBytes", "16384")),
+                Integer.parseInt(props.getProperty("server.maxClients", "100")));
+        // Write buffers are only borrowed for one write, so one per writer thread is enough
+        WRITE_BUFFERS = new BufferPool(
+                Integer.parseInt(props.getProperty("websocket.writeBufferBytes", "65536")),
+                Integer.parseInt(props.getProperty("net.writerThreads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))));
     }
 
-    public WebSocketHandler(Socket socket) throws IOException {
-        this.socket = socket;
-        this.input = socket.getInputStream();
-        this.output = socket.getOutputStream();
+    /**
+     * @param channel  connected channel in blocking mode
+     * @param tls      the connection's TLS session, or null if it is plain;
+     *                 the handler owns it from here on
+     * @param leftover bytes already read past the HTTP request head (may be
+     *                 empty); they are consumed before reading the socket
+     */
+    public WebSocketHandler(SocketChannel channel, TlsChannel tls, ByteBuffer leftover) throws IOException {
+        this.channel = channel;
+        this.tls = tls;
+        this.out = tls != null ? tls : channel;
+        this.socket = channel.socket();
+        this.readBuffer = READ_BUFFERS.acquire();
+        ByteChannel in = tls != null ? tls : channel;
+        this.decoder = new FrameDecoder(in, readBuffer, MAX_MESSAGE_BYTES, new ControlFrames());
+        this.decoder.preload(leftover);
         this.connected = true;
         this.clientId = java.util.UUID.randomUUID().toString();
     }
 
     /**
-     * Performs WebSocket handshake according to RFC 6455.
-     * Validates upgrade request and sends appropriate response.
+     * Completes the WebSocket handshake according to RFC 6455.
+     * The request head has already been read and parsed by the handshake stage.
+     *
+     * @return false if the upgrade request is invalid (nothing is sent)
      */
-    public boolean performHandshake() throws Exception {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
-
-        // Read HTTP request
-        String line = reader.readLine();
-        if (line == null || !line.contains("GET")) {
-            System.err.println("[HANDSHAKE] Invalid request line: " + line);
-            return false;
-        }
-
-        // Parse headers
-        Map<String, String> headers = new HashMap<>();
-        while ((line = reader.readLine()) != null && !line.isEmpty()) {
-            int colonPos = line.indexOf(':');
-            if (colonPos > 0) {
-                String key = line.substring(0, colonPos).trim();
-                String value = line.substring(colonPos + 1).trim();
-                headers.put(key.toLowerCase(), value);
-            }
-        }
-
-        // Debug: print received headers
-        System.out.println("[HANDSHAKE] Received headers:");
-        headers.forEach((k, v) -> System.out.println("  " + k + ": " + v));
-
-        // Verify WebSocket upgrade request
-        String upgrade = headers.get("upgrade");
-        String connection = headers.get("connection");
-        String key = headers.get("sec-websocket-key");
-
-        System.out.println("[HANDSHAKE] upgrade=" + upgrade + ", connection=" + connection + ", key=" + (key != null ? "present" : "null"));
+    public boolean performHandshake(HttpRequest request) throws Exception {
+        return writeUpgradeResponse(out, request);
+    }
 
-        if (upgrade == null || !upgrade.equalsIgnoreCase("websocket") ||
-                connection == null || !connection.toLowerCase().contains("upgrade") ||
-                key == null) {
-            System.err.println("[HANDSHAKE] Validation failed - Missing or invalid headers");
+    /**
+     * Answers an upgrade request with 101 Switching Protocols.
+     * Shared by game connections and read-only spectator sessions.
+     *
+     * @return false if the upgrade request is invalid (nothing is sent)
+     */
+    static boolean writeUpgradeResponse(WritableByteChannel channel, HttpRequest request) throws Exception {
+        String key = request.getHeader("sec-websocket-key");
+        if (!request.isWebSocketUpgrade() || key == null) {
             return false;
         }
 
         // Generate accept key (SHA-1 hash + Base64 encoding)
         String acceptKey = generateAcceptKey(key);
 
-        // Send handshake response
-        PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
-        writer.print("HTTP/1.1 101 Switching Protocols\r\n");
-        writer.print("Upgrade: websocket\r\n");
-        writer.print("Connection: Upgrade\r\n");
-        writer.print("Sec-WebSocket-Accept: " + acceptKey + "\r\n");
-        writer.print("\r\n");
-        writer.flush();
+        // Send handshake response in a single write
+        String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + acceptKey + "\r\n" +
+                "\r\n";
+        ByteBuffer buf = ByteBuffer.wrap(response.getBytes(StandardCharsets.US_ASCII));
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
 
         return true;
     }
@@ -111,7 +137,7 @@ public class WebSocketHandler {
     /**
      * Generates WebSocket accept key using SHA-1 and Base64
      */
-    private String generateAcceptKey(String key) throws Exception {
+    private static String generateAcceptKey(String key) throws Exception {
         String combined = key + WEBSOCKET_GUID;
         MessageDigest md = MessageDigest.getInstance("SHA-1");
         byte[] hash = md.digest(combined.getBytes(StandardCharsets.UTF_8));
@@ -119,148 +145,291 @@ public class WebSocketHandler {
     }
 
     /**
-     * Reads a WebSocket frame and decodes the message.
-     * Handles different frame types (text, ping, close, etc.).
+     * Reads the next complete text message.
+     * Control frames are answered inside the decoder; protocol violations
+     * and oversized messages close the connection with the matching status.
+     *
+     * @return the message, or null once the connection is closed
      */
     public String readMessage() throws IOException {
         if (!connected)
             return null;
 
-        // Read first byte (FIN, RSV, opcode)
-        int firstByte = input.read();
-        if (firstByte == -1) {
-            connected = false;
-            return null;
-        }
-
-        // Parse frame header (FIN flag not currently used, but part of protocol)
-        int opcode = firstByte & 0x0F;
-
-        // Handle close frame
-        if (opcode == 0x8) {
+        try {
+            String message = decoder.readMessage();
+            link.setBytesIn(decoder.getBytesRead());
+            if (message == null) {
+                connected = false;
+            }
+            return message;
+        } catch (FrameDecoder.ProtocolException e) {
+            Log.warn("PROTOCOL", clientId.substring(0, 8) + ": " + e.getMessage());
+            JfrEvents.parseFailure(clientId, "protocol", e.getCloseCode() + " " + e.getMessage());
+            sendClose(e.getCloseCode());
             connected = false;
             return null;
         }
+    }
 
-        // Handle ping frame
-        if (opcode == 0x9) {
-            sendPong();
-            return readMessage(); // Continue reading next frame
+    /**
+     * Answers control frames as the decoder encounters them.
+     */
+    private class ControlFrames implements FrameDecoder.ControlHandler {
+        @Override
+        public void onPing(ByteBuffer payload) throws IOException {
+            sendControl(0x8A, payload); // FIN=1, opcode=10 (pong) echoing the ping payload
         }
 
-        // Only handle text frames (0x1)
-        if (opcode != 0x1) {
-            return readMessage(); // Skip other frame types
+        @Override
+        public void onPong(ByteBuffer payload) {
+            // Answers to our pings carry their send time; unsolicited pongs are ignored
+            if (payload.remaining() == Long.BYTES) {
+                link.onPong(payload.getLong(payload.position()), System.nanoTime());
+            }
         }
 
-        // Read second byte (MASK, payload length)
-        int secondByte = input.read();
-        if (secondByte == -1) {
+        @Override
+        public void onClose(int statusCode) throws IOException {
+            sendClose(1000);
             connected = false;
-            return null;
         }
+    }
+
+    /**
+     * Sends a WebSocket text frame.
+     */
+    public void sendMessage(String message) throws IOException {
+        sendMessages(Collections.singletonList(message));
+    }
 
-        boolean masked = (secondByte & 0x80) != 0;
-        long payloadLength = secondByte & 0x7F;
+    /**
+     * Sends text frames for all messages, in order, with as few syscalls as
+     * possible. Headers and payloads are encoded straight into a pooled
+     * direct buffer (no per-message byte arrays) and the frames go out in
+     * one gathering write. A batch larger than the buffer is written in
+     * buffer-sized pieces.
+     */
+    public synchronized void sendMessages(List<String> messages) throws IOException {
+        if (!connected || messages.isEmpty())
+            return;
 
-        // Read extended payload length if needed
-        if (payloadLength == 126) {
-            payloadLength = (input.read() << 8) | input.read();
-        } else if (payloadLength == 127) {
-            payloadLength = 0;
-            for (int i = 0; i < 8; i++) {
-                payloadLength = (payloadLength << 8) | input.read();
+        JfrEvents.SlowWrite event = JfrEvents.isEnabled() ? new JfrEvents.SlowWrite() : null;
+        if (event != null) {
+            event.begin();
+        }
+        ByteBuffer buffer = WRITE_BUFFERS.acquire();
+        long bytes = 0;
+        try {
+            int frames = 0;
+            for (String message : messages) {
+                if (!encodeFrame(buffer, message, frames)) {
+                    bytes += writeFrames(frames);
+                    frames = 0;
+                    buffer.clear();
+                    if (!encodeFrame(buffer, message, 0)) {
+                        bytes += writeLargeFrame(message);
+                        continue;
+                    }
+                }
+                frames++;
+            }
+            bytes += writeFrames(frames);
+        } finally {
+            WRITE_BUFFERS.release(buffer);
+            // Only committed above the event's threshold (5 ms by default)
+            if (event != null && event.shouldCommit()) {
+                event.client = clientId;
+                event.messages = messages.size();
+                event.bytes = bytes;
+                event.commit();
             }
         }
+    }
 
-        // Read masking key
-        byte[] maskingKey = new byte[4];
-        if (masked) {
-            input.read(maskingKey);
+    /**
+     * Appends one text frame to {@code buffer} and records it as slice
+     * {@code index}. Room for the largest header is reserved in front of the
+     * payload; the actual header is written right before the payload once
+     * its length is known.
+     *
+     * @return false if the frame does not fit (buffer left unchanged)
+     */
+    private boolean encodeFrame(ByteBuffer buffer, String message, int index) {
+        int headerSlot = buffer.position();
+        if (buffer.remaining() <= FrameEncoder.MAX_HEADER_BYTES) {
+            return false;
+        }
+        int payloadStart = headerSlot + FrameEncoder.MAX_HEADER_BYTES;
+        buffer.position(payloadStart);
+        utf8.reset();
+        CoderResult result = utf8.encode(CharBuffer.wrap(message), buffer, true);
+        if (!result.isOverflow()) {
+            result = utf8.flush(buffer);
+        }
+        if (result.isOverflow()) {
+            buffer.position(headerSlot);
+            return false;
         }
 
-        // Read payload data
-        byte[] payload = new byte[(int) payloadLength];
-        int totalRead = 0;
-        while (totalRead < payloadLength) {
-            int read = input.read(payload, totalRead, (int) payloadLength - totalRead);
-            if (read == -1) {
-                connected = false;
-                return null;
-            }
-            totalRead += read;
+        int payloadEnd = buffer.position();
+        int length = payloadEnd - payloadStart;
+        int frameStart = payloadStart - FrameEncoder.headerLength(length);
+        buffer.position(frameStart);
+        FrameEncoder.putHeader(buffer, FrameEncoder.OPCODE_TEXT, length);
+
+        ByteBuffer frame = buffer.duplicate();
+        frame.limit(payloadEnd).position(frameStart);
+        if (index == frameSlices.length) {
+            frameSlices = Arrays.copyOf(frameSlices, index * 2);
         }
+        frameSlices[index] = frame;
+        buffer.position(payloadEnd);
+        return true;
+    }
 
-        // Unmask payload
-        if (masked) {
-            for (int i = 0; i < payload.length; i++) {
-                payload[i] ^= maskingKey[i % 4];
-            }
+    private long writeFrames(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        try {
+            return writeFully(frameSlices, count);
+        } finally {
+            Arrays.fill(frameSlices, 0, count, null);
         }
+    }
 
-        return new String(payload, StandardCharsets.UTF_8);
+    /**
+     * Rare path for a message larger than a write buffer.
+     */
+    private long writeLargeFrame(String message) throws IOException {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(FrameEncoder.MAX_HEADER_BYTES);
+        FrameEncoder.putHeader(header, FrameEncoder.OPCODE_TEXT, payload.length);
+        header.flip();
+        return writeFully(new ByteBuffer[] { header, ByteBuffer.wrap(payload) }, 2);
     }
 
     /**
-     * Sends a WebSocket text frame.
-     * Constructs frame header and encodes payload.
+     * Writes everything, blocking while the socket buffer is full. A write
+     * that takes longer than copying into a socket buffer with room can
+     * ({@link #STALL_THRESHOLD_NANOS}) counts as a send stall.
+     *
+     * @return bytes written
      */
-    public synchronized void sendMessage(String message) throws IOException {
+    private long writeFully(ByteBuffer[] buffers, int count) throws IOException {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += buffers[i].remaining();
+        }
+        long startedAt = System.nanoTime();
+        writeStartedAt = startedAt;
+        long remaining = total;
+        try {
+            while (remaining > 0) {
+                remaining -= out.write(buffers, 0, count);
+            }
+        } finally {
+            writeStartedAt = 0;
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        if (elapsed > STALL_THRESHOLD_NANOS) {
+            link.addStall(elapsed);
+        }
+        link.addBytesOut(total);
+        return total;
+    }
+
+    /**
+     * Sends a close frame with a status code (once)
+     */
+    private synchronized void sendClose(int statusCode) {
         if (!connected)
             return;
+        try {
+            ByteBuffer payload = ByteBuffer.allocate(2);
+            payload.putShort((short) statusCode).flip();
+            sendControl(0x88, payload); // FIN=1, opcode=8 (close)
+        } catch (IOException e) {
+            // Peer already gone
+        }
+    }
 
-        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+    private synchronized void sendControl(int firstByte, ByteBuffer payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(2 + payload.remaining()); // Control payloads are at most 125 bytes
+        frame.put((byte) firstByte);
+        frame.put((byte) payload.remaining());
+        frame.put(payload);
+        frame.flip();
+        writeFully(new ByteBuffer[] { frame }, 1);
+    }
 
-        // First byte: FIN=1, RSV=0, opcode=1 (text frame)
-        output.write(0x81);
-
-        // Second byte: MASK=0, payload length
-        if (payload.length <= 125) {
-            output.write(payload.length);
-        } else if (payload.length <= 65535) {
-            output.write(126);
-            output.write((payload.length >> 8) & 0xFF);
-            output.write(payload.length & 0xFF);
-        } else {
-            output.write(127);
-            for (int i = 7; i >= 0; i--) {
-                output.write((payload.length >> (i * 8)) & 0xFF);
-            }
+    /**
+     * Sends a ping frame carrying its send time, unless the previous ping
+     * is still unanswered and younger than {@code timeoutNanos}.
+     */
+    public synchronized void sendPing(long timeoutNanos) throws IOException {
+        if (!connected) {
+            return;
+        }
+        long payload = link.startPing(System.nanoTime(), timeoutNanos);
+        if (payload != 0) {
+            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+            buf.putLong(payload).flip();
+            sendControl(0x89, buf); // FIN=1, opcode=9 (ping)
         }
-
-        // Payload data
-        output.write(payload);
-        output.flush();
     }
 
     /**
-     * Sends a pong frame in response to ping
+     * Closes the channel from another thread without waiting for anything.
+     * No close frame is sent: a write may be blocked on this peer right now,
+     * so the channel is closed under it and that write fails. The reader
+     * then fails too and releases the connection through {@link #close()}.
      */
-    private void sendPong() throws IOException {
-        output.write(0x8A); // FIN=1, opcode=10 (pong)
-        output.write(0x00); // No payload
-        output.flush();
+    public void shutdown() {
+        connected = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
     }
 
     /**
-     * Sends a close frame
+     * Sends a close frame and releases the connection
      */
     public void close() {
+        sendClose(1000);
+        connected = false;
         try {
-            if (connected) {
-                output.write(0x88); // FIN=1, opcode=8 (close)
-                output.write(0x00); // No payload
-                output.flush();
-                connected = false;
-            }
-            socket.close();
+            out.close(); // Sends close_notify first on a TLS connection
         } catch (IOException e) {
             // Ignore errors during close
         }
+        releaseReadBuffer();
+    }
+
+    private synchronized void releaseReadBuffer() {
+        // Only safe once the reader has stopped; close() runs from the reader's cleanup
+        if (readBuffer != null) {
+            READ_BUFFERS.release(readBuffer);
+            readBuffer = null;
+        }
+        if (tls != null) {
+            tls.release();
+        }
+    }
+
+    /**
+     * @return true if a write has been blocked for longer than
+     *         {@code timeoutNanos}, i.e. the peer stopped reading
+     */
+    public boolean isWriteOverdue(long now, long timeoutNanos) {
+        long startedAt = writeStartedAt;
+        return startedAt != 0 && now - startedAt > timeoutNanos;
     }
 
     public boolean isConnected() {
-        return connected && !socket.isClosed();
+        return connected && channel.isOpen();
     }
 
     public String getClientId() {
@@ -270,4 +439,8 @@ public class WebSocketHandler {
     public Socket getSocket() {
         return socket;
     }
+
+    public LinkStats getLinkStats() {
+        return link;
+    }
 }
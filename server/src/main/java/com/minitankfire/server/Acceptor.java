@@ -0,0 +1,99 @@
+package com.minitankfire.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import com.minitankfire.network.HandshakeStage;
+import com.minitankfire.util.Log;
+
+/**
+ * Dedicated accept loop for one listening socket.
+ *
+ * The acceptor does nothing but accept, set socket options and hand the
+ * connection to the handshake stage, so it keeps draining the kernel's
+ * accept queue even while hundreds of clients reconnect at once. Several
+ * acceptors can share one port through SO_REUSEPORT, letting the kernel
+ * spread incoming connections across them.
+ */
+public class Acceptor implements Runnable {
+    private final ServerSocketChannel serverChannel;
+    private final HandshakeStage handshakeStage;
+    private volatile boolean running = true;
+
+    private Acceptor(ServerSocketChannel serverChannel, HandshakeStage handshakeStage) {
+        this.serverChannel = serverChannel;
+        this.handshakeStage = handshakeStage;
+    }
+
+    /**
+     * Opens a blocking listener on the given port.
+     *
+     * @param reusePort bind with SO_REUSEPORT so other acceptors can share the port
+     */
+    public static Acceptor open(int port, int backlog, boolean reusePort, HandshakeStage handshakeStage)
+            throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port), backlog);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Acceptor(channel, handshakeStage);
+    }
+
+    /**
+     * Whether this platform lets several listeners bind the same port.
+     */
+    public static boolean isReusePortSupported() {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                SocketChannel client = serverChannel.accept();
+                try {
+                    client.setOption(StandardSocketOptions.TCP_NODELAY, true); // Disable Nagle's algorithm for real-time game
+                } catch (IOException e) {
+                    client.close();
+                    continue;
+                }
+                handshakeStage.submit(client);
+            } catch (IOException e) {
+                if (running) {
+                    Log.error("ERROR", "Accept failed: " + e.getMessage());
+                    pauseAfterFailure(); // e.g. out of file descriptors - don't spin
+                }
+            }
+        }
+    }
+
+    private static void pauseAfterFailure() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.minitankfire.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.minitankfire.game.GameRoom;
+import com.minitankfire.game.GameSettings;
+import com.minitankfire.network.HandshakeStage;
+import com.minitankfire.network.HttpRequest;
+import com.minitankfire.network.LinkMonitor;
+import com.minitankfire.network.SpectatorHub;
+import com.minitankfire.util.Log;
+
+/**
+ * Operator endpoint for tuning a running server.
+ *
+ * Listens on its own port (loopback by default) and serves a few JSON
+ * routes, one request per connection:
+ * <pre>
+ *   GET  /rooms/main/settings              current settings
+ *   POST /rooms/main/settings?name=value   change settings, applied at the next tick
+ *   GET  /rooms/main/stats                 tick timings, update sizes and connection counters
+ *   GET  /rooms/main/connections?by=rtt&limit=10
+ *                                          worst connections by rtt, jitter, stall, out or in
+ * </pre>
+ * Every request must carry the configured token, either as
+ * {@code Authorization: Bearer <token>} or {@code X-Admin-Token}. Without a
+ * token the endpoint is not started at all. Connections are served one at a
+ * time, so a request that does not arrive within the read timeout is
+ * dropped rather than holding up the next one.
+ */
+public class AdminServer implements Runnable {
+    private static final String ROOMS_PREFIX = "/rooms/";
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int APPLY_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 2000;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector readSelector; // Waits for request bytes with a deadline
+    private final byte[] token;
+    private final Map<String, GameRoom> rooms;
+    private final HandshakeStage handshakeStage;
+    private final SpectatorHub spectatorHub;
+    private volatile boolean running = true;
+
+    private AdminServer(ServerSocketChannel serverChannel, Selector readSelector, String token, GameRoom gameRoom,
+            HandshakeStage handshakeStage, SpectatorHub spectatorHub) {
+        this.serverChannel = serverChannel;
+        this.readSelector = readSelector;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.rooms = Collections.singletonMap("main", gameRoom);
+        this.handshakeStage = handshakeStage;
+        this.spectatorHub = spectatorHub;
+    }
+
+    /**
+     * Opens the admin listener.
+     *
+     * @param bindAddress address to listen on, e.g. 127.0.0.1
+     */
+    public static AdminServer open(String bindAddress, int port, String token, GameRoom gameRoom,
+            HandshakeStage handshakeStage, SpectatorHub spectatorHub) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(bindAddress, port));
+            return new AdminServer(channel, Selector.open(), token, gameRoom, handshakeStage, spectatorHub);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try (SocketChannel client = serverChannel.accept()) {
+                handle(client);
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    Log.error("ADMIN_ERROR", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        int headEnd = readHead(channel, buf);
+        if (headEnd < 0) {
+            return;
+        }
+        HttpRequest request = HttpRequest.parse(buf, headEnd);
+        if (request == null) {
+            respond(channel, "400 Bad Request", error("Malformed request"));
+            return;
+        }
+        if (!isAuthorized(request)) {
+            respond(channel, "401 Unauthorized", error("Missing or wrong admin token"));
+            return;
+        }
+
+        String path = request.getPath();
+        GameRoom room = null;
+        String resource = null;
+        if (path.startsWith(ROOMS_PREFIX)) {
+            int slash = path.indexOf('/', ROOMS_PREFIX.length());
+            if (slash > 0) {
+                room = rooms.get(path.substring(ROOMS_PREFIX.length(), slash));
+                resource = path.substring(slash + 1);
+            }
+        }
+        if (room == null) {
+            respond(channel, "404 Not Found", error("Unknown room or resource"));
+            return;
+        }
+
+        String method = request.getMethod();
+        if ("settings".equals(resource) && "GET".equals(method)) {
+            respond(channel, "200 OK", room.getSettings().toJson());
+        } else if ("settings".equals(resource) && "POST".equals(method)) {
+            updateSettings(channel, room, request);
+        } else if ("stats".equals(resource) && "GET".equals(method)) {
+            respond(channel, "200 OK", stats(room));
+        } else if ("connections".equals(resource) && "GET".equals(method)) {
+            connections(channel, request);
+        } else if ("settings".equals(resource) || "stats".equals(resource) || "connections".equals(resource)) {
+            respond(channel, "405 Method Not Allowed", error("Method not allowed"));
+        } else {
+            respond(channel, "404 Not Found", error("Unknown room or resource"));
+        }
+    }
+
+    /**
+     * Reads the request head, waiting at most {@link #READ_TIMEOUT_MS} for
+     * it. Leaves the channel in blocking mode for the response.
+     *
+     * @return offset just past the head, or -1 if the client closed, sent
+     *         too much or ran out of time
+     */
+    private int readHead(SocketChannel channel, ByteBuffer buf) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT_MS);
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(readSelector, SelectionKey.OP_READ);
+        try {
+            int scanned = 0;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf);
+                if (n < 0) {
+                    return -1;
+                }
+                if (n > 0) {
+                    int headEnd = HttpRequest.findHeadEnd(buf, scanned - 3, buf.position());
+                    if (headEnd >= 0) {
+                        return headEnd;
+                    }
+                    scanned = buf.position();
+                    continue;
+                }
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    Log.warn("ADMIN", "Request not received within " + READ_TIMEOUT_MS + " ms");
+                    return -1;
+                }
+                readSelector.select(remainingMs);
+                readSelector.selectedKeys().clear();
+            }
+            return -1;
+        } finally {
+            key.cancel();
+            readSelector.selectNow(); // Deregisters the key so the channel can block again
+            channel.configureBlocking(true);
+        }
+    }
+
+    private boolean isAuthorized(HttpRequest request) {
+        String presented = request.getHeader("x-admin-token");
+        String authorization = request.getHeader("authorization");
+        if (presented == null && authorization != null && authorization.startsWith("Bearer ")) {
+            presented = authorization.substring("Bearer ".length()).trim();
+        }
+        // Constant-time comparison so the token can't be guessed byte by byte
+        return presented != null && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void updateSettings(SocketChannel channel, GameRoom room, HttpRequest request) throws IOException {
+        Map<String, String> changes;
+        try {
+            changes = parseQuery(request.getTarget());
+        } catch (IllegalArgumentException e) {
+            respond(channel, "400 Bad Request", error("Malformed query string"));
+            return;
+        }
+        if (changes.isEmpty()) {
+            respond(channel, "400 Bad Request", error("No settings given, e.g. ?tickMs=33"));
+            return;
+        }
+        try {
+            GameSettings applied = room.updateSettings(changes).get(APPLY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            Log.info("ADMIN", "Settings changed: " + changes);
+            respond(channel, "200 OK", "{\"settings\":" + applied.toJson() + "}");
+        } catch (ExecutionException e) {
+            respond(channel, "400 Bad Request", error(e.getCause().getMessage()));
+        } catch (TimeoutException e) {
+            respond(channel, "503 Service Unavailable", error("Game loop did not apply the change in time"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void connections(SocketChannel channel, HttpRequest request) throws IOException {
+        LinkMonitor.Order order;
+        int limit;
+        try {
+            Map<String, String> params = parseQuery(request.getTarget());
+            order = LinkMonitor.Order.valueOf(params.getOrDefault("by", "rtt").toUpperCase());
+            limit = Math.max(1, Integer.parseInt(params.getOrDefault("limit", "10")));
+        } catch (IllegalArgumentException e) {
+            respond(channel, "400 Bad Request", error("Expected ?by=rtt|jitter|stall|out|in&limit=N"));
+            return;
+        }
+        LinkMonitor monitor = handshakeStage.getLinkMonitor();
+        respond(channel, "200 OK", "{\"connected\":" + monitor.getConnectionCount() +
+                ",\"by\":\"" + order.name().toLowerCase() + "\"" +
+                ",\"worst\":" + monitor.worstJson(order, limit) + "}");
+    }
+
+    private String stats(GameRoom room) {
+        return "{\"room\":" + room.drainStatsJson() +
+                ",\"settings\":" + room.getSettings().toJson() +
+                ",\"handshake\":{\"completed\":" + handshakeStage.getCompleted() +
+                ",\"rejectedQueueFull\":" + handshakeStage.getRejectedQueueFull() +
+                ",\"rejectedServerFull\":" + handshakeStage.getRejectedServerFull() +
+                ",\"failed\":" + handshakeStage.getFailed() +
+                ",\"timedOut\":" + handshakeStage.getTimedOut() +
+                ",\"lobbyRequests\":" + handshakeStage.getLobbyRequests() +
+                ",\"staticRequests\":" + handshakeStage.getStaticRequests() +
+                ",\"idleConnections\":" + handshakeStage.getIdleConnections() +
+                ",\"pendingHeads\":" + handshakeStage.getPendingHeads() +
+                ",\"spectatorsAccepted\":" + handshakeStage.getSpectatorsAccepted() +
+                ",\"activeSessions\":" + handshakeStage.getActiveSessions() + "}" +
+                ",\"load\":" + (room.getLoadGovernor() != null ? room.getLoadGovernor().toJson() : "null") +
+                ",\"inboundRejected\":" + handshakeStage.getInboundLimits().rejectedJson() +
+                ",\"tls\":" + (handshakeStage.getTlsContext() != null ? handshakeStage.getTlsContext().statsJson() : "null") +
+                ",\"spectators\":{\"connected\":" + spectatorHub.getSpectatorCount() +
+                ",\"framesPublished\":" + spectatorHub.getFramesPublished() +
+                ",\"framesSkipped\":" + spectatorHub.getFramesSkipped() + "}}";
+    }
+
+    private static Map<String, String> parseQuery(String target) {
+        Map<String, String> params = new LinkedHashMap<>();
+        int q = target.indexOf('?');
+        if (q < 0) {
+            return params;
+        }
+        for (String pair : target.substring(q + 1).split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException(pair);
+            }
+            params.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+        }
+        return params;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 is always supported
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static void respond(SocketChannel channel, String status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("HTTP/1.1 " + status + "\r\n" +
+                "Content-Type: application/json; charset=utf-8\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                "Cache-Control: no-store\r\n" +
+                "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer[] buffers = { ByteBuffer.wrap(head), ByteBuffer.wrap(body) };
+        while (buffers[1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+            readSelector.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+    }
+}
@@ -1,36 +1,105 @@
 package com.minitankfire.server;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import com.minitankfire.game.EncodeStage;
 import com.minitankfire.game.GameRoom;
-import com.minitankfire.network.ClientHandler;
+import com.minitankfire.game.GameSettings;
+import com.minitankfire.game.LoadGovernor;
+import com.minitankfire.game.TileMap;
+import com.minitankfire.network.HandshakeStage;
+import com.minitankfire.network.InboundLimits;
+import com.minitankfire.network.LinkMonitor;
+import com.minitankfire.network.OutboundScheduler;
+import com.minitankfire.network.ResumeTokens;
+import com.minitankfire.network.SpectatorHub;
+import com.minitankfire.network.TlsContext;
+import com.minitankfire.util.JfrEvents;
+import com.minitankfire.util.Log;
 
 /**
  * Tank Game Server - Main server entry point.
  * 
  * Manages:
- * - TCP ServerSocket listening for WebSocket connections
+ * - Acceptor threads listening for WebSocket connections
+ * - Bounded handshake stage for HTTP upgrades
  * - Thread pool for concurrent client handling
  * - Game room initialization and lifecycle
+ * - Optional admin endpoint for live tuning
  * 
  * Pure Java implementation using only core APIs:
- * - java.net.ServerSocket (TCP server)
- * - java.net.Socket (client connections)
+ * - java.nio.channels.ServerSocketChannel (TCP server)
+ * - java.nio.channels.SocketChannel (client connections)
  * - java.util.concurrent (threading)
  */
 public class GameServer {
     private static int DEFAULT_PORT;
     private static int MAX_CLIENTS;
     private static int DEFAULT_WINNING_SCORE;
+    private static int ACCEPTORS;
+    private static int ACCEPT_BACKLOG;
+    private static int HANDSHAKE_THREADS;
+    private static int HANDSHAKE_QUEUE_SIZE;
+    private static int HANDSHAKE_TIMEOUT_MS;
+    private static int HANDSHAKE_MAX_HEADER_BYTES;
+    private static int HANDSHAKE_MAX_PENDING;
+    private static String HTTP_STATIC_DIR;
+    private static int HTTP_KEEP_ALIVE_MS;
+    private static int HTTP_MAX_IDLE_CONNECTIONS;
+    private static int HTTP_SEND_TIMEOUT_MS;
+    private static boolean TLS_ENABLED;
+    private static String TLS_KEY_STORE;
+    private static String TLS_KEY_STORE_PASSWORD;
+    private static String[] TLS_PROTOCOLS;
+    private static int TLS_SESSION_CACHE_SIZE;
+    private static int TLS_SESSION_TIMEOUT_SECONDS;
+    private static boolean TLS_SESSION_TICKETS;
+    private static int WRITER_THREADS;
+    private static int ENCODE_THREADS;
+    private static int SEND_BUDGET_BYTES_PER_TICK;
+    private static int[] LANE_WEIGHTS;
+    private static String INBOUND_LIMITS;
+    private static int PING_INTERVAL_MS;
+    private static int NET_SEND_TIMEOUT_MS;
+    private static int MAX_QUEUED_EVENTS;
+    private static int MAX_QUEUED_VOICE;
+    private static int MAX_QUEUED_CHAT;
+    private static int MAX_SPECTATORS;
+    private static int SPECTATE_THREADS;
+    private static int SPECTATE_SEND_INTERVAL_TICKS;
+    private static int SPECTATE_DELAY_TICKS;
+    private static GameSettings DEFAULT_SETTINGS;
+    private static boolean LOAD_ENABLED;
+    private static int LOAD_WINDOW_MS;
+    private static double LOAD_TICK_HIGH;
+    private static double LOAD_TICK_LOW;
+    private static double LOAD_BACKLOG_HIGH;
+    private static double LOAD_BACKLOG_LOW;
+    private static double LOAD_HEAP_HIGH;
+    private static double LOAD_HEAP_LOW;
+    private static int LOAD_UP_WINDOWS;
+    private static int LOAD_DOWN_WINDOWS;
+    private static int LOAD_AOI_RADIUS;
+    private static int LOAD_MAX_BULLETS_PER_PLAYER;
+    private static String MAP_NAME;
+    private static int ADMIN_PORT;
+    private static String ADMIN_BIND;
+    private static String ADMIN_TOKEN;
+    private static boolean JFR_EVENTS;
+    private static boolean JFR_RECORD;
+    private static String JFR_FILE;
+    private static int JFR_MAX_AGE_SECONDS;
 
     static {
         loadConfig();
@@ -41,24 +110,138 @@ public class GameServer {
         try (InputStream input = GameServer.class.getClassLoader().getResourceAsStream("config.properties")) {
             if (input != null) {
                 props.load(input);
-                DEFAULT_PORT = Integer.parseInt(props.getProperty("server.port", "8080"));
-                MAX_CLIENTS = Integer.parseInt(props.getProperty("server.maxClients", "100"));
-                DEFAULT_WINNING_SCORE = Integer.parseInt(props.getProperty("game.winningScore", "10"));
-            } else {
-                // Fallback to defaults if config not found
-                DEFAULT_PORT = 8080;
-                MAX_CLIENTS = 100;
-                DEFAULT_WINNING_SCORE = 10;
             }
         } catch (IOException e) {
-            System.err.println("[CONFIG] Error loading config.properties: " + e.getMessage());
-            DEFAULT_PORT = 8080;
-            MAX_CLIENTS = 100;
-            DEFAULT_WINNING_SCORE = 10;
+            Log.warn("CONFIG", "Error loading config.properties: " + e.getMessage());
         }
+        // Missing keys (or a missing file) fall back to the defaults below
+        DEFAULT_PORT = Integer.parseInt(props.getProperty("server.port", "8080"));
+        MAX_CLIENTS = Integer.parseInt(props.getProperty("server.maxClients", "100"));
+        DEFAULT_WINNING_SCORE = Integer.parseInt(props.getProperty("game.winningScore", "10"));
+        ACCEPTORS = Integer.parseInt(props.getProperty("server.acceptors", "1"));
+        ACCEPT_BACKLOG = Integer.parseInt(props.getProperty("server.acceptBacklog", "1024"));
+        HANDSHAKE_THREADS = Integer.parseInt(props.getProperty("handshake.threads", "4"));
+        HANDSHAKE_QUEUE_SIZE = Integer.parseInt(props.getProperty("handshake.queueSize", "512"));
+        HANDSHAKE_TIMEOUT_MS = Integer.parseInt(props.getProperty("handshake.timeoutMs", "5000"));
+        HANDSHAKE_MAX_HEADER_BYTES = Integer.parseInt(props.getProperty("handshake.maxHeaderBytes", "8192"));
+        HANDSHAKE_MAX_PENDING = Integer.parseInt(props.getProperty("handshake.maxPending", "1024"));
+        HTTP_STATIC_DIR = props.getProperty("http.staticDir", "../client").trim();
+        HTTP_KEEP_ALIVE_MS = Integer.parseInt(props.getProperty("http.keepAliveMs", "5000"));
+        HTTP_MAX_IDLE_CONNECTIONS = Integer.parseInt(props.getProperty("http.maxIdleConnections", "256"));
+        HTTP_SEND_TIMEOUT_MS = Integer.parseInt(props.getProperty("http.sendTimeoutMs", "30000"));
+        TLS_ENABLED = Boolean.parseBoolean(props.getProperty("tls.enabled", "false"));
+        TLS_KEY_STORE = props.getProperty("tls.keyStore", "minitankfire.p12").trim();
+        TLS_KEY_STORE_PASSWORD = props.getProperty("tls.keyStorePassword", "changeit");
+        TLS_PROTOCOLS = props.getProperty("tls.protocols", "TLSv1.3,TLSv1.2").split(",");
+        TLS_SESSION_CACHE_SIZE = Integer.parseInt(props.getProperty("tls.sessionCacheSize", "10000"));
+        TLS_SESSION_TIMEOUT_SECONDS = Integer.parseInt(props.getProperty("tls.sessionTimeoutSeconds", "86400"));
+        TLS_SESSION_TICKETS = Boolean.parseBoolean(props.getProperty("tls.sessionTickets", "true"));
+        WRITER_THREADS = Integer.parseInt(props.getProperty("net.writerThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        ENCODE_THREADS = Integer.parseInt(props.getProperty("net.encodeThreads",
+                String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+        SEND_BUDGET_BYTES_PER_TICK = Integer.parseInt(props.getProperty("net.sendBudgetBytesPerTick", "65536"));
+        LANE_WEIGHTS = OutboundScheduler.parseLaneWeights(
+                props.getProperty("net.laneWeights", "state:8,events:4,voice:2,chat:1"));
+        INBOUND_LIMITS = props.getProperty("net.inboundLimits",
+                "input:24:8,fire:10:5,chat:2:5,voice:50:100,ping:2:4,control:2:5");
+        PING_INTERVAL_MS = Integer.parseInt(props.getProperty("net.pingIntervalMs", "1000"));
+        NET_SEND_TIMEOUT_MS = Integer.parseInt(props.getProperty("net.sendTimeoutMs", "5000"));
+        MAX_QUEUED_EVENTS = Integer.parseInt(props.getProperty("net.maxQueuedEvents", "1024"));
+        MAX_QUEUED_VOICE = Integer.parseInt(props.getProperty("net.maxQueuedVoice", "256"));
+        MAX_QUEUED_CHAT = Integer.parseInt(props.getProperty("net.maxQueuedChat", "32"));
+        MAX_SPECTATORS = Integer.parseInt(props.getProperty("spectate.maxSpectators", "2000"));
+        SPECTATE_THREADS = Integer.parseInt(props.getProperty("spectate.threads", "2"));
+        SPECTATE_SEND_INTERVAL_TICKS = Integer.parseInt(props.getProperty("spectate.sendIntervalTicks", "2"));
+        SPECTATE_DELAY_TICKS = Integer.parseInt(props.getProperty("spectate.delayTicks", "0"));
+        DEFAULT_SETTINGS = GameSettings.fromProperties(props);
+        LOAD_ENABLED = Boolean.parseBoolean(props.getProperty("load.enabled", "true"));
+        LOAD_WINDOW_MS = Integer.parseInt(props.getProperty("load.windowMs", "1000"));
+        LOAD_TICK_HIGH = Double.parseDouble(props.getProperty("load.tickHigh", "0.8"));
+        LOAD_TICK_LOW = Double.parseDouble(props.getProperty("load.tickLow", "0.5"));
+        LOAD_BACKLOG_HIGH = Double.parseDouble(props.getProperty("load.backlogHigh", "0.25"));
+        LOAD_BACKLOG_LOW = Double.parseDouble(props.getProperty("load.backlogLow", "0.05"));
+        LOAD_HEAP_HIGH = Double.parseDouble(props.getProperty("load.heapHigh", "0.9"));
+        LOAD_HEAP_LOW = Double.parseDouble(props.getProperty("load.heapLow", "0.75"));
+        LOAD_UP_WINDOWS = Integer.parseInt(props.getProperty("load.upWindows", "2"));
+        LOAD_DOWN_WINDOWS = Integer.parseInt(props.getProperty("load.downWindows", "5"));
+        LOAD_AOI_RADIUS = Integer.parseInt(props.getProperty("load.aoiRadius", "800"));
+        LOAD_MAX_BULLETS_PER_PLAYER = Integer.parseInt(props.getProperty("load.maxBulletsPerPlayer", "3"));
+        ADMIN_PORT = Integer.parseInt(props.getProperty("admin.port", "8081"));
+        ADMIN_BIND = props.getProperty("admin.bind", "127.0.0.1");
+        ADMIN_TOKEN = props.getProperty("admin.token", "").trim();
+        JFR_EVENTS = Boolean.parseBoolean(props.getProperty("jfr.events", "false"));
+        JFR_RECORD = Boolean.parseBoolean(props.getProperty("jfr.record", "false"));
+        JFR_FILE = props.getProperty("jfr.file", "minitankfire.jfr");
+        JFR_MAX_AGE_SECONDS = Integer.parseInt(props.getProperty("jfr.maxAgeSeconds", "600"));
+        MAP_NAME = props.getProperty("map.name", "arena").trim();
     }
 
-    private ServerSocket serverSocket;
+    /**
+     * Loads the configured map; without one, or if it cannot be read, the
+     * room is an open arena.
+     */
+    private static TileMap loadMap() {
+        if (MAP_NAME.isEmpty()) {
+            return TileMap.EMPTY;
+        }
+        try {
+            TileMap map = TileMap.load(MAP_NAME);
+            Log.info("MAP", "Loaded '" + MAP_NAME + "': " + map.getCols() + "x" + map.getRows() + " tiles of " +
+                    map.getTileSize() + " px, " + map.getSpawnPointCount() + " spawn points");
+            return map;
+        } catch (IOException | NumberFormatException e) {
+            Log.error("MAP", "Could not load map '" + MAP_NAME + "', using an open arena: " + e.getMessage());
+            return TileMap.EMPTY;
+        }
+    }
+
+    /**
+     * The web client directory to serve over plain HTTP, or null if none is
+     * configured or it does not exist (e.g. the server runs elsewhere).
+     */
+    private static Path staticRoot() {
+        if (HTTP_STATIC_DIR.isEmpty()) {
+            return null;
+        }
+        Path root = Paths.get(HTTP_STATIC_DIR).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            Log.warn("HTTP", "Static directory " + root + " not found, not serving the client");
+            return null;
+        }
+        Log.info("HTTP", "Serving the client from " + root);
+        return root;
+    }
+
+    /**
+     * Loads the TLS key store if TLS is enabled. Without a usable one the
+     * server runs plain only, so the error is logged rather than fatal.
+     */
+    private static TlsContext tlsContext() {
+        if (!TLS_ENABLED) {
+            return null;
+        }
+        try {
+            TlsContext tls = TlsContext.load(Paths.get(TLS_KEY_STORE), TLS_KEY_STORE_PASSWORD.toCharArray(),
+                    TLS_PROTOCOLS, TLS_SESSION_CACHE_SIZE, TLS_SESSION_TIMEOUT_SECONDS, TLS_SESSION_TICKETS,
+                    MAX_CLIENTS);
+            Log.info("TLS", "Enabled (" + String.join(", ", tls.getProtocols()) + ") with " +
+                    Paths.get(TLS_KEY_STORE).toAbsolutePath().normalize());
+            return tls;
+        } catch (IOException | GeneralSecurityException e) {
+            Log.error("TLS", "Could not load key store " + TLS_KEY_STORE + ", accepting plain connections only: " +
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private final List<Acceptor> acceptors = new ArrayList<>();
+    private HandshakeStage handshakeStage;
+    private OutboundScheduler outboundScheduler;
+    private LinkMonitor linkMonitor;
+    private SpectatorHub spectatorHub;
+    private EncodeStage encodeStage;
+    private AdminServer adminServer;
     private ExecutorService clientThreadPool;
     private GameRoom gameRoom;
     private volatile boolean running;
@@ -66,21 +249,88 @@ public class GameServer {
 
     public void setWinningScore(int winningScore) {
         this.winningScore = winningScore;
-        System.out.println("[CONFIG] Winning score set to: " + winningScore);
+        Log.info("CONFIG", "Winning score set to: " + winningScore);
         if (this.gameRoom != null) {
             this.gameRoom.setWinningScore(winningScore);
         }
     }
 
     public GameServer(int port) throws IOException {
-        this.serverSocket = new ServerSocket(port);
+        JfrEvents.configure(JFR_EVENTS, JFR_RECORD, JFR_FILE, JFR_MAX_AGE_SECONDS);
         this.clientThreadPool = Executors.newFixedThreadPool(MAX_CLIENTS);
-        this.gameRoom = new GameRoom();
+        this.gameRoom = new GameRoom(DEFAULT_SETTINGS, loadMap());
+        this.encodeStage = new EncodeStage(ENCODE_THREADS);
+        this.gameRoom.setEncodeStage(encodeStage);
+        this.gameRoom.setResumeTokens(new ResumeTokens());
+        if (LOAD_ENABLED) {
+            this.gameRoom.setLoadGovernor(new LoadGovernor(LOAD_WINDOW_MS, LOAD_TICK_HIGH, LOAD_TICK_LOW,
+                    LOAD_BACKLOG_HIGH, LOAD_BACKLOG_LOW, LOAD_HEAP_HIGH, LOAD_HEAP_LOW, LOAD_UP_WINDOWS,
+                    LOAD_DOWN_WINDOWS, LOAD_AOI_RADIUS, LOAD_MAX_BULLETS_PER_PLAYER));
+        }
+        this.gameRoom.start();
+        this.outboundScheduler = new OutboundScheduler(WRITER_THREADS, SEND_BUDGET_BYTES_PER_TICK, LANE_WEIGHTS,
+                MAX_QUEUED_EVENTS, MAX_QUEUED_VOICE, MAX_QUEUED_CHAT);
+        this.linkMonitor = new LinkMonitor(PING_INTERVAL_MS, NET_SEND_TIMEOUT_MS);
+        this.spectatorHub = new SpectatorHub(MAX_SPECTATORS, SPECTATE_THREADS, SPECTATE_SEND_INTERVAL_TICKS,
+                SPECTATE_DELAY_TICKS);
+        this.spectatorHub.setIntroMessage(gameRoom.getTileMap().getMessage());
+        this.gameRoom.setSpectatorHub(spectatorHub);
+        this.handshakeStage = new HandshakeStage(gameRoom, clientThreadPool, outboundScheduler,
+                InboundLimits.parse(INBOUND_LIMITS), linkMonitor, tlsContext(), spectatorHub,
+                MAX_CLIENTS, HANDSHAKE_THREADS, HANDSHAKE_QUEUE_SIZE, HANDSHAKE_TIMEOUT_MS, HANDSHAKE_MAX_HEADER_BYTES,
+                HANDSHAKE_MAX_PENDING, staticRoot(), HTTP_KEEP_ALIVE_MS, HTTP_MAX_IDLE_CONNECTIONS, HTTP_SEND_TIMEOUT_MS);
+        openAcceptors(port);
+        openAdmin();
         this.running = true;
 
         printBanner(port);
     }
 
+    /**
+     * Binds one listener per acceptor. More than one requires SO_REUSEPORT;
+     * without it the server falls back to a single acceptor.
+     */
+    private void openAcceptors(int port) throws IOException {
+        int count = Math.max(1, ACCEPTORS);
+        if (count > 1 && !Acceptor.isReusePortSupported()) {
+            Log.warn("CONFIG", "SO_REUSEPORT not supported, using a single acceptor");
+            count = 1;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                acceptors.add(Acceptor.open(port, ACCEPT_BACKLOG, count > 1, handshakeStage));
+            }
+        } catch (IOException e) {
+            acceptors.forEach(Acceptor::close);
+            handshakeStage.shutdown();
+            outboundScheduler.shutdown();
+            linkMonitor.shutdown();
+            spectatorHub.shutdown();
+            encodeStage.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the admin endpoint if a token is configured. Failing to bind it
+     * is not fatal; the game runs without live tuning.
+     */
+    private void openAdmin() {
+        if (ADMIN_TOKEN.isEmpty()) {
+            Log.info("ADMIN", "Disabled (no admin.token configured)");
+            return;
+        }
+        try {
+            adminServer = AdminServer.open(ADMIN_BIND, ADMIN_PORT, ADMIN_TOKEN, gameRoom, handshakeStage, spectatorHub);
+            Thread thread = new Thread(adminServer, "Admin");
+            thread.setDaemon(true);
+            thread.start();
+            Log.info("ADMIN", "Listening on " + ADMIN_BIND + ":" + ADMIN_PORT);
+        } catch (IOException e) {
+            Log.error("ADMIN_ERROR", "Could not bind " + ADMIN_BIND + ":" + ADMIN_PORT + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Prints welcome banner with server information
      */
@@ -96,49 +346,45 @@ public class GameServer {
             hostName = "localhost";
         }
         
-        System.out.println("╔════════════════════════════════════════════════════════════╗");
-        System.out.println("║      🎮 Tank Game Server - Pure Java Network Programming   ║");
-        System.out.println("╠════════════════════════════════════════════════════════════╣");
-        System.out.println("║  Architecture:                                             ║");
-        System.out.println("║  ✓ Multi-threaded Client Handling                          ║");
-        System.out.println("║  ✓ WebSocket Protocol (RFC 6455)                           ║");
-        System.out.println("║  ✓ Real-time Game Loop (20 FPS)                            ║");
-        System.out.println("║  ✓ Concurrent State Management                             ║");
-        System.out.println("╠════════════════════════════════════════════════════════════╣");
-        System.out.println("║  Server IP: " + hostAddress + String.format("%" + (50 - hostAddress.length()) + "s", "") + "║");
-        System.out.println("║  Server Name: " + hostName + String.format("%" + (46 - hostName.length()) + "s", "") + "║");
-        System.out.println("║  Port: " + String.format("%-52s", port) + "║");
-        System.out.println("║  WebSocket URI: ws://" + hostName + ":" + String.format("%-32s", port + "/game") + "║");
-        System.out.println("║  Max Clients: " + String.format("%-48s", MAX_CLIENTS) + "║");
-        System.out.println("╚════════════════════════════════════════════════════════════╝");
+        Log.plain("╔════════════════════════════════════════════════════════════╗");
+        Log.plain("║      🎮 Tank Game Server - Pure Java Network Programming   ║");
+        Log.plain("╠════════════════════════════════════════════════════════════╣");
+        Log.plain("║  Architecture:                                             ║");
+        Log.plain("║  ✓ Multi-threaded Client Handling                          ║");
+        Log.plain("║  ✓ WebSocket Protocol (RFC 6455)                           ║");
+        Log.plain("║  ✓ Real-time Game Loop (20 FPS)                            ║");
+        Log.plain("║  ✓ Concurrent State Management                             ║");
+        Log.plain("╠════════════════════════════════════════════════════════════╣");
+        Log.plain("║  Server IP: " + hostAddress + String.format("%" + (50 - hostAddress.length()) + "s", "") + "║");
+        Log.plain("║  Server Name: " + hostName + String.format("%" + (46 - hostName.length()) + "s", "") + "║");
+        Log.plain("║  Port: " + String.format("%-52s", port) + "║");
+        Log.plain("║  WebSocket URI: ws://" + hostName + ":" + String.format("%-32s", port + "/game") + "║");
+        if (handshakeStage.getTlsContext() != null) {
+            Log.plain("║  Secure URI: wss://" + hostName + ":" + String.format("%-34s", port + "/game") + "║");
+        }
+        Log.plain("║  Max Clients: " + String.format("%-48s", MAX_CLIENTS) + "║");
+        Log.plain("╚════════════════════════════════════════════════════════════╝");
     }
 
     /**
-     * Main server loop - accepts and handles client connections
+     * Starts the acceptor threads and blocks until they stop
      */
     public void start() {
-        System.out.println("\n[SERVER] Waiting for connections...\n");
-
-        while (running) {
-            try {
-                // Accept incoming connection (blocking call)
-                Socket clientSocket = serverSocket.accept();
-
-                // Configure socket options
-                clientSocket.setTcpNoDelay(true); // Disable Nagle's algorithm for real-time game
-                clientSocket.setSoTimeout(0); // No read timeout
+        Log.info("SERVER", "Waiting for connections (" + acceptors.size() + " acceptor(s))...");
 
-                String clientAddr = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
-                System.out.println("[ACCEPT] New client from: " + clientAddr);
-
-                // Create client handler and submit to thread pool
-                ClientHandler handler = new ClientHandler(clientSocket, gameRoom);
-                clientThreadPool.execute(handler);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < acceptors.size(); i++) {
+            Thread thread = new Thread(acceptors.get(i), "Acceptor-" + (i + 1));
+            thread.start();
+            threads.add(thread);
+        }
 
-            } catch (IOException e) {
-                if (running) {
-                    System.err.println("[ERROR] Accept failed: " + e.getMessage());
-                }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
@@ -147,29 +393,37 @@ public class GameServer {
      * Gracefully shuts down the server
      */
     public void shutdown() {
-        System.out.println("\n[SHUTDOWN] Server shutting down...");
+        Log.info("SHUTDOWN", "Server shutting down...");
         running = false;
 
         try {
             // Stop accepting new connections
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            acceptors.forEach(Acceptor::close);
+            handshakeStage.shutdown();
+            if (adminServer != null) {
+                adminServer.close();
             }
 
             // Stop game room
             gameRoom.stop();
 
+            outboundScheduler.shutdown();
+            linkMonitor.shutdown();
+            spectatorHub.shutdown();
+            encodeStage.shutdown();
+
             // Shutdown thread pool gracefully
             clientThreadPool.shutdown();
             if (!clientThreadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-                System.out.println("[SHUTDOWN] Force terminating remaining threads...");
+                Log.info("SHUTDOWN", "Force terminating remaining threads...");
                 clientThreadPool.shutdownNow();
             }
 
-            System.out.println("[SHUTDOWN] Server stopped successfully");
+            Log.info("SHUTDOWN", "Server stopped successfully");
         } catch (Exception e) {
-            System.err.println("[ERROR] Shutdown error: " + e.getMessage());
+            Log.error("ERROR", "Shutdown error: " + e.getMessage());
         }
+        Log.shutdown();
     }
 
     /**
@@ -183,34 +437,19 @@ public class GameServer {
             try {
                 port = Integer.parseInt(args[0]);
             } catch (NumberFormatException e) {
-                System.err.println("[ERROR] Invalid port, using default: " + DEFAULT_PORT);
+                Log.warn("ERROR", "Invalid port, using default: " + DEFAULT_PORT);
                 port = DEFAULT_PORT;
             }
         }
 
         int winningScore = DEFAULT_WINNING_SCORE;
 
-        // Winning score via second arg or prompt
+        // Winning score via second arg; change it later through the admin endpoint
         if (args.length > 1) {
             try {
                 winningScore = Integer.parseInt(args[1]);
             } catch (NumberFormatException e) {
-                System.err.println("[ERROR] Invalid winning score argument, using default: " + DEFAULT_WINNING_SCORE);
-            }
-        } else {
-            try {
-                System.out.print("Enter winning score (default " + DEFAULT_WINNING_SCORE + "): ");
-                BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
-                String line = br.readLine();
-                if (line != null && !line.trim().isEmpty()) {
-                    try {
-                        winningScore = Integer.parseInt(line.trim());
-                    } catch (NumberFormatException e) {
-                        System.err.println("[ERROR] Invalid number entered, using default: " + DEFAULT_WINNING_SCORE);
-                    }
-                }
-            } catch (IOException e) {
-                // ignore and proceed with default
+                Log.warn("ERROR", "Invalid winning score argument, using default: " + DEFAULT_WINNING_SCORE);
             }
         }
 
@@ -223,7 +462,7 @@ public class GameServer {
             // Add shutdown hook for graceful termination (Ctrl+C)
             final GameServer finalServer = server;
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                System.out.println("\n[SIGNAL] Received shutdown signal");
+                Log.info("SIGNAL", "Received shutdown signal");
                 finalServer.shutdown();
             }));
 
@@ -231,8 +470,8 @@ public class GameServer {
             server.start();
 
         } catch (IOException e) {
-            System.err.println("[FATAL] Failed to start server: " + e.getMessage());
-            e.printStackTrace();
+            Log.error("FATAL", "Failed to start server: " + e);
+            Log.shutdown();
             System.exit(1);
         }
     }
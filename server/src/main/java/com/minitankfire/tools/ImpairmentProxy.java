@@ -0,0 +1,514 @@
+package com.minitankfire.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.minitankfire.util.Log;
+
+/**
+ * Local TCP proxy that makes a link between clients (browser, bots) and the
+ * game server behave like a real network, for netcode tests and
+ * benchmark runs.
+ *
+ * The proxy reads the HTTP upgrade and then the WebSocket frames in both
+ * directions and delays, reorders or drops whole data frames according to
+ * a link profile: one-way delay with jitter, a bandwidth cap with a bounded
+ * queue (tail drop), frame loss and reordering. Control frames (close,
+ * ping, pong) and fragmented messages are only delayed, never dropped or
+ * reordered, so the connection stays valid. Connections that do not
+ * upgrade (static files, /lobby) are delayed as a byte stream.
+ *
+ * Loss can either drop a frame (the message is gone, like UDP) or stall it
+ * for a retransmission timeout with everything behind it waiting (what TCP
+ * does underneath a WebSocket).
+ *
+ * A script switches profiles over time and loops, e.g.
+ * {@code wifi:20,3g:20,outage:3}. Randomness is seeded, so a run can be
+ * repeated. Listens on the loopback interface only.
+ *
+ * Usage: ImpairmentProxy [listenPort] [targetHost:port] [script] [options]
+ * Options: --seed N, --loss-mode drop|stall, --duration seconds,
+ * --stats seconds (0 = only at exit)
+ */
+public class ImpairmentProxy {
+
+    /**
+     * Conditions of a link, one-way per direction.
+     */
+    static final class Profile {
+        final String name;
+        final int delayMs;
+        final int jitterMs;
+        final double loss;
+        final double reorder;
+        final long upBytesPerSecond;   // Client to server; 0 = unlimited
+        final long downBytesPerSecond; // Server to client
+        final int queueBytes;          // Frames that would queue beyond this are dropped
+
+        Profile(String name, int delayMs, int jitterMs, double loss, double reorder,
+                long upBytesPerSecond, long downBytesPerSecond, int queueBytes) {
+            this.name = name;
+            this.delayMs = delayMs;
+            this.jitterMs = jitterMs;
+            this.loss = loss;
+            this.reorder = reorder;
+            this.upBytesPerSecond = upBytesPerSecond;
+            this.downBytesPerSecond = downBytesPerSecond;
+            this.queueBytes = queueBytes;
+        }
+    }
+
+    static final Map<String, Profile> PROFILES = new LinkedHashMap<>();
+    static {
+        add(new Profile("none", 0, 0, 0, 0, 0, 0, Integer.MAX_VALUE));
+        add(new Profile("lan", 1, 0, 0, 0, 0, 0, Integer.MAX_VALUE));
+        add(new Profile("wifi", 4, 3, 0.002, 0, 2_500_000, 6_250_000, 1 << 20));
+        add(new Profile("dsl", 15, 3, 0.001, 0, 125_000, 2_000_000, 256 << 10));
+        add(new Profile("3g", 100, 40, 0.01, 0.005, 48_000, 250_000, 64 << 10));
+        add(new Profile("intercontinental", 90, 10, 0.005, 0.001, 12_500_000, 12_500_000, 1 << 20));
+        add(new Profile("lossy", 30, 15, 0.05, 0.01, 0, 0, Integer.MAX_VALUE));
+        add(new Profile("outage", 0, 0, 1.0, 0, 0, 0, Integer.MAX_VALUE));
+    }
+
+    private static void add(Profile profile) {
+        PROFILES.put(profile.name, profile);
+    }
+
+    /**
+     * Profiles with durations, played in a loop.
+     */
+    public static final class Script {
+        private final List<Profile> profiles = new ArrayList<>();
+        private final List<Long> durationsNanos = new ArrayList<>();
+        private final long cycleNanos;
+        private final long startNanos = System.nanoTime();
+
+        /**
+         * @param spec "profile[:seconds],..."; a single profile without a
+         *             duration applies for the whole run
+         */
+        public Script(String spec) {
+            long cycle = 0;
+            for (String part : spec.split(",")) {
+                String[] fields = part.trim().split(":");
+                Profile profile = PROFILES.get(fields[0].trim().toLowerCase());
+                if (profile == null) {
+                    throw new IllegalArgumentException("Unknown profile '" + fields[0] + "', known: " +
+                            PROFILES.keySet());
+                }
+                long seconds = fields.length > 1 ? Long.parseLong(fields[1].trim()) : 3600L * 24 * 365;
+                profiles.add(profile);
+                durationsNanos.add(TimeUnit.SECONDS.toNanos(Math.max(1, seconds)));
+                cycle += durationsNanos.get(durationsNanos.size() - 1);
+            }
+            this.cycleNanos = cycle;
+        }
+
+        Profile at(long nowNanos) {
+            long offset = (nowNanos - startNanos) % cycleNanos;
+            for (int i = 0; i < profiles.size(); i++) {
+                offset -= durationsNanos.get(i);
+                if (offset < 0) {
+                    return profiles.get(i);
+                }
+            }
+            return profiles.get(profiles.size() - 1);
+        }
+    }
+
+    /**
+     * A piece of the stream (HTTP head, frame or raw bytes) waiting for its
+     * delivery time. An empty chunk marks the end of the stream.
+     */
+    private static final class Chunk implements Delayed {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        final byte[] data;
+        final long deliverAtNanos;
+        final long seq = SEQUENCE.incrementAndGet();
+
+        Chunk(byte[] data, long deliverAtNanos) {
+            this.data = data;
+            this.deliverAtNanos = deliverAtNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deliverAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Chunk o = (Chunk) other;
+            int byTime = Long.compare(deliverAtNanos, o.deliverAtNanos);
+            return byTime != 0 ? byTime : Long.compare(seq, o.seq);
+        }
+    }
+
+    // Totals over all connections, for the stats line
+    private final AtomicLong framesForwarded = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesStalled = new AtomicLong();
+    private final AtomicLong framesReordered = new AtomicLong();
+    private final AtomicLong framesOverflowed = new AtomicLong();
+    private final AtomicLong bytesForwarded = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+
+    private final InetSocketAddress target;
+    private final Script script;
+    private final long seed;
+    private final boolean stallOnLoss;
+
+    public ImpairmentProxy(InetSocketAddress target, Script script, long seed, boolean stallOnLoss) {
+        this.target = target;
+        this.script = script;
+        this.seed = seed;
+        this.stallOnLoss = stallOnLoss;
+    }
+
+    /**
+     * One direction of a proxied connection: a reader thread that parses
+     * and schedules, and a writer thread that delivers when due.
+     */
+    private final class Link {
+        private final String name;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Socket inSocket;
+        private final Socket outSocket;
+        private final boolean upstream;
+        private final Random random;
+        private final DelayQueue<Chunk> queue = new DelayQueue<>();
+        private final AtomicLong queuedBytes = new AtomicLong();
+        private long linkFreeAtNanos;   // When the bandwidth cap lets the next byte out
+        private long lastDeliverAtNanos; // Keeps the stream in order unless reordering
+        private final Runnable onFinished;
+
+        /**
+         * @param onFinished called once when this direction has delivered
+         *                   everything (or failed)
+         */
+        Link(String name, Socket from, Socket to, boolean upstream, long seed, Runnable onFinished)
+                throws IOException {
+            this.name = name;
+            this.in = from.getInputStream();
+            this.out = to.getOutputStream();
+            this.inSocket = from;
+            this.outSocket = to;
+            this.upstream = upstream;
+            this.random = new Random(seed);
+            this.onFinished = onFinished;
+        }
+
+        void readLoop() {
+            try {
+                byte[] head = readHead();
+                if (head == null) {
+                    return;
+                }
+                schedule(head, false);
+                // The client sends frames only once the server has answered 101
+                boolean upgraded = upstream ? isUpgradeRequest(head)
+                        : new String(head, StandardCharsets.US_ASCII).startsWith("HTTP/1.1 101");
+                if (upgraded) {
+                    while (true) {
+                        readFrame();
+                    }
+                }
+                byte[] buf = new byte[16384];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    byte[] raw = new byte[n];
+                    System.arraycopy(buf, 0, raw, 0, n);
+                    schedule(raw, false);
+                }
+            } catch (IOException e) {
+                // Peer closed or reset; deliver what is queued, then end the stream
+            } finally {
+                queue.add(new Chunk(new byte[0], Math.max(lastDeliverAtNanos, System.nanoTime())));
+            }
+        }
+
+        void writeLoop() {
+            try {
+                while (true) {
+                    Chunk chunk = queue.take();
+                    if (chunk.data.length == 0) {
+                        // Half-close; the other direction may still be delivering
+                        outSocket.shutdownOutput();
+                        return;
+                    }
+                    queuedBytes.addAndGet(-chunk.data.length);
+                    out.write(chunk.data);
+                    out.flush();
+                    bytesForwarded.addAndGet(chunk.data.length);
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection gone: abort both directions
+                closeQuietly(inSocket);
+                closeQuietly(outSocket);
+            } finally {
+                onFinished.run();
+            }
+        }
+
+        /**
+         * Reads the HTTP request or response head, up to and including the
+         * blank line.
+         */
+        private byte[] readHead() throws IOException {
+            ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+            int matched = 0;
+            while (matched < 4) {
+                int b = in.read();
+                if (b < 0) {
+                    return head.size() > 0 ? head.toByteArray() : null;
+                }
+                head.write(b);
+                matched = (b == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (b == '\r' ? 1 : 0);
+                if (head.size() > 65536) {
+                    break; // Not HTTP; stream the rest as raw bytes
+                }
+            }
+            return head.toByteArray();
+        }
+
+        private void readFrame() throws IOException {
+            int b0 = readByte();
+            int b1 = readByte();
+            long length = b1 & 0x7F;
+            int extra = length == 126 ? 2 : (length == 127 ? 8 : 0);
+            byte[] ext = readFully(extra);
+            if (extra > 0) {
+                length = 0;
+                for (byte b : ext) {
+                    length = (length << 8) | (b & 0xFF);
+                }
+            }
+            int maskBytes = (b1 & 0x80) != 0 ? 4 : 0;
+            if (length > (16 << 20)) {
+                throw new IOException("Frame too large for the proxy: " + length);
+            }
+            byte[] rest = readFully(maskBytes + (int) length);
+
+            byte[] frame = new byte[2 + extra + rest.length];
+            frame[0] = (byte) b0;
+            frame[1] = (byte) b1;
+            System.arraycopy(ext, 0, frame, 2, extra);
+            System.arraycopy(rest, 0, frame, 2 + extra, rest.length);
+
+            int opcode = b0 & 0x0F;
+            boolean fin = (b0 & 0x80) != 0;
+            // Only complete data messages may be dropped or reordered
+            schedule(frame, fin && (opcode == 0x1 || opcode == 0x2));
+        }
+
+        private void schedule(byte[] data, boolean droppable) {
+            long now = System.nanoTime();
+            Profile profile = script.at(now);
+            long extraNanos = 0;
+            if (droppable && profile.loss > 0 && random.nextDouble() < profile.loss) {
+                if (!stallOnLoss || profile.loss >= 1.0) {
+                    framesDropped.incrementAndGet();
+                    return;
+                }
+                // A retransmission: this frame and everything behind it wait
+                extraNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(200, 3L * profile.delayMs));
+                framesStalled.incrementAndGet();
+            }
+            if (droppable && queuedBytes.get() + data.length > profile.queueBytes) {
+                framesOverflowed.incrementAndGet();
+                return;
+            }
+
+            long bandwidth = upstream ? profile.upBytesPerSecond : profile.downBytesPerSecond;
+            long serialNanos = bandwidth > 0 ? data.length * 1_000_000_000L / bandwidth : 0;
+            linkFreeAtNanos = Math.max(linkFreeAtNanos, now) + serialNanos;
+            long jitterMs = profile.jitterMs > 0 ? random.nextInt(2 * profile.jitterMs + 1) - profile.jitterMs : 0;
+            long deliverAt = linkFreeAtNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, profile.delayMs + jitterMs))
+                    + extraNanos;
+
+            if (droppable && profile.reorder > 0 && random.nextDouble() < profile.reorder) {
+                // Held back long enough for the next frames to overtake it
+                deliverAt = Math.max(deliverAt, lastDeliverAtNanos) +
+                        TimeUnit.MILLISECONDS.toNanos(20 + profile.delayMs / 2);
+                framesReordered.incrementAndGet();
+            } else {
+                deliverAt = Math.max(deliverAt, lastDeliverAtNanos);
+                lastDeliverAtNanos = deliverAt;
+            }
+            if (droppable) {
+                framesForwarded.incrementAndGet();
+            }
+            queuedBytes.addAndGet(data.length);
+            queue.add(new Chunk(data, deliverAt));
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private byte[] readFully(int n) throws IOException {
+            byte[] buf = new byte[n];
+            int read = 0;
+            while (read < n) {
+                int r = in.read(buf, read, n - read);
+                if (r < 0) {
+                    throw new EOFException();
+                }
+                read += r;
+            }
+            return buf;
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, name + "-read");
+            Thread writer = new Thread(this::writeLoop, name + "-write");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+    }
+
+    private static boolean isUpgradeRequest(byte[] head) {
+        String text = new String(head, StandardCharsets.US_ASCII).toLowerCase();
+        return text.contains("\r\nupgrade: websocket");
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the socket is
+     * closed.
+     */
+    public void serve(ServerSocket listener) throws IOException {
+        while (!listener.isClosed()) {
+            Socket client = listener.accept();
+            long id = connections.incrementAndGet();
+            try {
+                Socket server = new Socket();
+                server.connect(target, 5000);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                AtomicInteger open = new AtomicInteger(2);
+                Runnable finished = () -> {
+                    if (open.decrementAndGet() == 0) {
+                        closeQuietly(client);
+                        closeQuietly(server);
+                    }
+                };
+                Link up = new Link("Proxy-" + id + "-up", client, server, true, seed + id * 2, finished);
+                Link down = new Link("Proxy-" + id + "-down", server, client, false, seed + id * 2 + 1, finished);
+                up.start();
+                down.start();
+            } catch (IOException e) {
+                Log.warn("PROXY", "Could not reach " + target + ": " + e.getMessage());
+                closeQuietly(client);
+            }
+        }
+    }
+
+    public String statsLine() {
+        return "connections=" + connections.get() +
+                " frames=" + framesForwarded.get() +
+                " dropped=" + framesDropped.get() +
+                " stalled=" + framesStalled.get() +
+                " reordered=" + framesReordered.get() +
+                " overflowed=" + framesOverflowed.get() +
+                " bytes=" + bytesForwarded.get();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Ignore errors during close
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        boolean stallOnLoss = "stall".equals(options.getOrDefault("loss-mode", "drop"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "0"));
+        long statsSeconds = Long.parseLong(options.getOrDefault("stats", "10"));
+        int listenPort = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 9080;
+        String targetSpec = positional.size() > 1 ? positional.get(1) : "127.0.0.1:8080";
+        String scriptSpec = positional.size() > 2 ? positional.get(2) : "wifi";
+        int colon = targetSpec.lastIndexOf(':');
+        InetSocketAddress target = new InetSocketAddress(targetSpec.substring(0, colon),
+                Integer.parseInt(targetSpec.substring(colon + 1)));
+
+        ImpairmentProxy proxy = new ImpairmentProxy(target, new Script(scriptSpec), seed, stallOnLoss);
+        ServerSocket listener = new ServerSocket(listenPort, 128, InetAddress.getLoopbackAddress());
+        Log.info("PROXY", "127.0.0.1:" + listenPort + " -> " + target + " with '" + scriptSpec + "', loss " +
+                (stallOnLoss ? "stalls" : "drops") + " frames, seed " + seed);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Log.info("PROXY", "Totals: " + proxy.statsLine());
+            Log.shutdown();
+        }));
+        Thread stats = new Thread(() -> {
+            long started = System.nanoTime();
+            try {
+                while (true) {
+                    long sleepSeconds = statsSeconds > 0 ? statsSeconds : Long.MAX_VALUE / 2_000_000_000L;
+                    if (durationSeconds > 0) {
+                        long left = durationSeconds - TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+                        if (left <= 0) {
+                            closeQuietly(listener);
+                            return;
+                        }
+                        sleepSeconds = Math.min(sleepSeconds, left);
+                    }
+                    Thread.sleep(sleepSeconds * 1000);
+                    if (statsSeconds > 0) {
+                        Log.info("PROXY", proxy.statsLine());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Exiting
+            }
+        }, "ProxyStats");
+        stats.setDaemon(true);
+        stats.start();
+
+        try {
+            proxy.serve(listener);
+        } catch (IOException e) {
+            if (!listener.isClosed()) {
+                throw e;
+            }
+        }
+        // --duration elapsed; the shutdown hook prints the totals
+    }
+}
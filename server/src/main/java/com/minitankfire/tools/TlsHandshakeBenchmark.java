@@ -0,0 +1,285 @@
+package com.minitankfire.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import com.minitankfire.network.TlsChannel;
+import com.minitankfire.network.TlsContext;
+import com.minitankfire.util.Log;
+
+/**
+ * Measures how many TLS handshakes per second the game port's TLS layer
+ * completes, full versus resumed.
+ *
+ * The server side is the real {@link TlsContext}/{@link TlsChannel} code on
+ * a loopback socket; the clients are JDK {@link SSLSocket}s. A full
+ * handshake comes from a fresh client context with nothing cached, a
+ * resumed one from a shared context that presents the ticket or session id
+ * of an earlier connection, like a reconnecting player. Each connection
+ * reads one byte after the handshake, so TLS 1.3 tickets arrive before it
+ * closes. The server's own count of full and resumed handshakes is printed
+ * as a check that resumption really happened.
+ *
+ * Without --keystore, a self-signed certificate for localhost is generated
+ * with the JDK's keytool into a temporary directory.
+ *
+ * Usage: TlsHandshakeBenchmark [options]
+ * Options: --count N (handshakes per mode), --threads N (concurrent
+ * clients), --protocol TLSv1.3|TLSv1.2, --key ec|rsa,
+ * --keystore path --password pw
+ */
+public class TlsHandshakeBenchmark {
+    private static final String PASSWORD = "benchmark";
+
+    private final TlsContext tls;
+    private final TrustManager[] trust;
+    private final String protocol;
+    private final SSLSocketFactory resumingClients;
+    private final ServerSocketChannel listener;
+    private final ExecutorService serverPool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "BenchServer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    TlsHandshakeBenchmark(TlsContext tls, TrustManager[] trust, String protocol) throws Exception {
+        this.tls = tls;
+        this.trust = trust;
+        this.protocol = protocol;
+        this.resumingClients = clientContext().getSocketFactory();
+        this.listener = ServerSocketChannel.open();
+        this.listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        Thread acceptor = new Thread(this::accept, "BenchAcceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                SocketChannel channel = listener.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // As the game's acceptor does
+                serverPool.execute(() -> serve(channel));
+            }
+        } catch (IOException e) {
+            // Listener closed
+        }
+    }
+
+    /**
+     * Server side of one connection: handshake, one byte of data, then wait
+     * for the client to close.
+     */
+    private void serve(SocketChannel channel) {
+        TlsChannel connection = tls.open(channel, ByteBuffer.allocate(0));
+        try {
+            connection.handshake();
+            connection.write(ByteBuffer.wrap(new byte[] { 1 }));
+            ByteBuffer sink = ByteBuffer.allocate(64);
+            while (connection.read(sink) >= 0) {
+                sink.clear();
+            }
+        } catch (IOException e) {
+            // Client gone
+        } finally {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // Ignore errors during close
+            }
+            connection.release();
+        }
+    }
+
+    /**
+     * Runs one mode with {@code threads} clients in parallel.
+     *
+     * @return per-handshake latencies in nanoseconds, and the wall time as the last element
+     */
+    long[] run(int count, int threads, boolean resume) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int share = count / threads + (t < count % threads ? 1 : 0);
+            results.add(pool.submit(() -> connectMany(share, resume)));
+        }
+        long[] latencies = new long[count + 1];
+        int n = 0;
+        for (Future<long[]> result : results) {
+            long[] part = result.get();
+            System.arraycopy(part, 0, latencies, n, part.length);
+            n += part.length;
+        }
+        latencies[count] = System.nanoTime() - start;
+        pool.shutdown();
+        return latencies;
+    }
+
+    private long[] connectMany(int count, boolean resume) throws Exception {
+        long[] latencies = new long[count];
+        InetAddress host = InetAddress.getLoopbackAddress();
+        int port = ((InetSocketAddress) listener.getLocalAddress()).getPort();
+        if (resume) {
+            connect(resumingClients, host, port); // Makes sure a session is cached
+        }
+        for (int i = 0; i < count; i++) {
+            SSLSocketFactory clients = resume ? resumingClients : clientContext().getSocketFactory();
+            latencies[i] = connect(clients, host, port);
+        }
+        return latencies;
+    }
+
+    /**
+     * @return nanoseconds from connecting until the first byte after the handshake
+     */
+    private static long connect(SSLSocketFactory clients, InetAddress host, int port) throws IOException {
+        long start = System.nanoTime();
+        try (SSLSocket socket = (SSLSocket) clients.createSocket(host, port)) {
+            socket.setTcpNoDelay(true);
+            socket.startHandshake();
+            InputStream in = socket.getInputStream();
+            if (in.read() < 0) {
+                throw new IOException("Server closed before the first byte");
+            }
+            return System.nanoTime() - start;
+        }
+    }
+
+    private SSLContext clientContext() throws Exception {
+        SSLContext context = SSLContext.getInstance(protocol);
+        context.init(null, trust, null);
+        return context;
+    }
+
+    void close() throws IOException {
+        listener.close();
+        serverPool.shutdownNow();
+    }
+
+    private static String summary(String mode, long[] latencies, long full, long resumed) {
+        int count = latencies.length - 1;
+        double seconds = latencies[count] / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0) / 1e6;
+        return String.format("%-8s %8.0f handshakes/s  mean %6.2f ms  p50 %6.2f ms  p99 %6.2f ms  (server: %d full, %d resumed)",
+                mode, count / seconds, mean, sorted[count / 2] / 1e6, sorted[Math.min(count - 1, count * 99 / 100)] / 1e6,
+                full, resumed);
+    }
+
+    /**
+     * Creates a PKCS12 key store with a self-signed localhost certificate.
+     */
+    static Path generateKeyStore(Path dir, String keyAlgorithm) throws IOException, InterruptedException {
+        Path store = dir.resolve("benchmark.p12");
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        List<String> command = new ArrayList<>(Arrays.asList(keytool, "-genkeypair", "-alias", "localhost",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "7",
+                "-storetype", "PKCS12", "-keystore", store.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD));
+        if ("rsa".equalsIgnoreCase(keyAlgorithm)) {
+            command.addAll(Arrays.asList("-keyalg", "RSA", "-keysize", "2048"));
+        } else {
+            command.addAll(Arrays.asList("-keyalg", "EC", "-groupname", "secp256r1"));
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + output.trim());
+        }
+        return store;
+    }
+
+    /**
+     * Trust managers that accept the certificates in the key store.
+     */
+    static TrustManager[] trustKeyStore(Path keyStore, char[] password) throws Exception {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream input = Files.newInputStream(keyStore)) {
+            store.load(input, password);
+        }
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(store);
+        return trust.getTrustManagers();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].startsWith("--")) {
+                options.put(args[i].substring(2), args[i + 1]);
+            }
+        }
+        int count = Integer.parseInt(options.getOrDefault("count", "2000"));
+        int threads = Math.max(1, Integer.parseInt(options.getOrDefault("threads", "4")));
+        String protocol = options.getOrDefault("protocol", "TLSv1.3");
+        String key = options.getOrDefault("key", "ec");
+
+        Path tempDir = null;
+        Path keyStore;
+        char[] password;
+        if (options.containsKey("keystore")) {
+            keyStore = Paths.get(options.get("keystore"));
+            password = options.getOrDefault("password", "changeit").toCharArray();
+        } else {
+            tempDir = Files.createTempDirectory("tls-bench");
+            keyStore = generateKeyStore(tempDir, key);
+            password = PASSWORD.toCharArray();
+            key = key.toUpperCase() + " (generated)";
+        }
+
+        try {
+            TlsContext tls = TlsContext.load(keyStore, password, new String[] { protocol }, 0, 3600, true,
+                    threads * 2);
+            TlsHandshakeBenchmark benchmark = new TlsHandshakeBenchmark(tls, trustKeyStore(keyStore, password),
+                    protocol);
+            Log.info("TLS_BENCH", count + " handshakes per mode over loopback, " + threads + " client thread(s), " +
+                    String.join(",", tls.getProtocols()) + ", key " + key);
+
+            // Warm up both paths before measuring
+            benchmark.run(Math.min(count, 500), threads, false);
+            benchmark.run(Math.min(count, 500), threads, true);
+
+            for (boolean resume : new boolean[] { false, true }) {
+                long full = tls.getFullHandshakes();
+                long resumed = tls.getResumedHandshakes();
+                long[] latencies = benchmark.run(count, threads, resume);
+                Log.info("TLS_BENCH", summary(resume ? "resumed" : "full", latencies,
+                        tls.getFullHandshakes() - full, tls.getResumedHandshakes() - resumed));
+            }
+            if (tls.getFailedHandshakes() > 0) {
+                Log.warn("TLS_BENCH", tls.getFailedHandshakes() + " handshake(s) failed");
+            }
+            benchmark.close();
+        } finally {
+            if (tempDir != null) {
+                Files.deleteIfExists(tempDir.resolve("benchmark.p12"));
+                Files.deleteIfExists(tempDir);
+            }
+            Log.shutdown();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.minitankfire.util;
+
+/**
+ * Geometry helpers for collision detection.
+ * Uses only primitive math so it can run every tick without allocation.
+ */
+public class CollisionUtil {
+
+    private CollisionUtil() {
+    }
+
+    /**
+     * Sweeps the segment (x0,y0) -> (x1,y1) against a circle and returns the
+     * fraction of the segment at which it first touches the circle.
+     *
+     * @return a value in [0, 1] for a hit (0 if the segment starts inside the
+     *         circle), or -1 if the segment never touches it
+     */
+    public static double sweptCircleHit(double x0, double y0, double x1, double y1,
+            double cx, double cy, double radius) {
+        double fx = x0 - cx;
+        double fy = y0 - cy;
+        double c = fx * fx + fy * fy - radius * radius;
+        if (c <= 0) {
+            return 0; // Already overlapping at the start of the segment
+        }
+
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double a = dx * dx + dy * dy;
+        if (a == 0) {
+            return -1; // Stationary point outside the circle
+        }
+
+        double b = 2 * (fx * dx + fy * dy);
+        if (b >= 0) {
+            return -1; // Moving away from (or tangent to) the centre
+        }
+
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return -1;
+        }
+
+        double t = (-b - Math.sqrt(discriminant)) / (2 * a);
+        return t <= 1 ? t : -1;
+    }
+}
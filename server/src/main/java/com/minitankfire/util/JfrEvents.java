@@ -0,0 +1,212 @@
+package com.minitankfire.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the game server.
+ *
+ * The events are not registered unless {@code jfr.events=true}, so by
+ * default they cost nothing and never show up in recordings. Once
+ * registered they are recorded by any recording that enables them, e.g.
+ * one started with the bundled profile:
+ * <pre>
+ *   java -XX:StartFlightRecording:settings=minitankfire.jfc,filename=game.jfr ...
+ * </pre>
+ * or in-process with {@code jfr.record=true}. In a recording, tick phase
+ * events show which part of a tick took long, and slow write events show
+ * which client a stall belongs to.
+ */
+public final class JfrEvents {
+    public static final String PROFILE = "minitankfire.jfc";
+
+    private static volatile boolean enabled;
+
+    private JfrEvents() {
+    }
+
+    /**
+     * Registers the events and optionally starts a recording with the bundled
+     * profile that is dumped to {@code recordingFile} on exit.
+     */
+    public static synchronized void configure(boolean events, boolean record, String recordingFile,
+            int maxAgeSeconds) {
+        if (!events || !FlightRecorder.isAvailable()) {
+            return;
+        }
+        FlightRecorder.register(TickPhase.class);
+        FlightRecorder.register(Broadcast.class);
+        FlightRecorder.register(Handshake.class);
+        FlightRecorder.register(SlowWrite.class);
+        FlightRecorder.register(ParseFailure.class);
+        enabled = true;
+        Log.info("JFR", "Game events registered");
+
+        if (record) {
+            try (InputStream in = JfrEvents.class.getClassLoader().getResourceAsStream(PROFILE)) {
+                if (in == null) {
+                    Log.warn("JFR", "Profile " + PROFILE + " not found on the classpath");
+                    return;
+                }
+                Configuration profile;
+                try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    profile = Configuration.create(reader);
+                }
+                Recording recording = new Recording(profile);
+                recording.setName("minitankfire");
+                recording.setMaxAge(Duration.ofSeconds(maxAgeSeconds));
+                recording.setToDisk(true);
+                recording.setDumpOnExit(true);
+                recording.setDestination(Paths.get(recordingFile));
+                recording.start();
+                Log.info("JFR", "Recording to " + recordingFile + " (last " + maxAgeSeconds + " s, on exit)");
+            } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+                Log.warn("JFR", "Could not start recording: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether events are registered; callers skip building them otherwise.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    @Name("com.minitankfire.TickPhase")
+    @Label("Tick Phase")
+    @Category({ "Mini Tank Fire", "Game Loop" })
+    @Description("One phase of a game tick, with the entity counts after it")
+    @StackTrace(false)
+    @Registered(false)
+    public static final class TickPhase extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Phase")
+        public String phase;
+
+        @Label("Players")
+        public int players;
+
+        @Label("Bullets")
+        public int bullets;
+
+        @Label("Power-Ups")
+        public int powerUps;
+    }
+
+    @Name("com.minitankfire.Broadcast")
+    @Label("Broadcast")
+    @Category({ "Mini Tank Fire", "Network" })
+    @Description("A message encoded and queued for every client (and spectators)")
+    @StackTrace(false)
+    @Registered(false)
+    public static final class Broadcast extends Event {
+        @Label("Tick")
+        public long tick;
+
+        @Label("Kind")
+        public String kind;
+
+        @Label("Encoded Size")
+        @Description("Characters encoded, summed over all distinct frames")
+        @DataAmount
+        public long bytes;
+
+        @Label("Frames")
+        public int frames;
+
+        @Label("Recipients")
+        public int recipients;
+    }
+
+    @Name("com.minitankfire.Handshake")
+    @Label("Handshake")
+    @Category({ "Mini Tank Fire", "Network" })
+    @Description("Reading and answering one HTTP request or WebSocket upgrade")
+    @StackTrace(false)
+    @Registered(false)
+    public static final class Handshake extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Outcome")
+        public String outcome;
+
+        @Label("Queue Time")
+        @Description("Time between the complete request head and a stage thread taking it")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueNanos;
+    }
+
+    @Name("com.minitankfire.SlowWrite")
+    @Label("Slow WebSocket Write")
+    @Category({ "Mini Tank Fire", "Network" })
+    @Description("A batch of frames that took long to write to one client")
+    @Threshold("5 ms")
+    @StackTrace(false)
+    @Registered(false)
+    public static final class SlowWrite extends Event {
+        @Label("Client")
+        public String client;
+
+        @Label("Messages")
+        public int messages;
+
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("com.minitankfire.ParseFailure")
+    @Label("Message Parse Failure")
+    @Category({ "Mini Tank Fire", "Network" })
+    @Description("An inbound frame or message that could not be handled")
+    @Registered(false)
+    public static final class ParseFailure extends Event {
+        @Label("Client")
+        public String client;
+
+        @Label("Kind")
+        public String kind;
+
+        @Label("Detail")
+        public String detail;
+    }
+
+    /**
+     * Records a parse failure; the detail is cut to keep events small.
+     */
+    public static void parseFailure(String client, String kind, String detail) {
+        if (!enabled) {
+            return;
+        }
+        ParseFailure event = new ParseFailure();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.kind = kind;
+            event.detail = detail == null || detail.length() <= 200 ? detail : detail.substring(0, 200);
+            event.commit();
+        }
+    }
+}
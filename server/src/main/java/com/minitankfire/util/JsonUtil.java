@@ -3,7 +3,7 @@ package com.minitankfire.util;
 import java.util.*;
 import com.minitankfire.model.Player;
 import com.minitankfire.model.Bullet;
-import com.minitankfire.model.PowerUp;
+import com.minitankfire.game.WorldSnapshot;
 
 /**
  * JSON utility class for serializing/deserializing game objects.
@@ -49,73 +49,153 @@ public class JsonUtil {
     }
 
     /**
-     * Converts a Player object to JSON string
+     * Creates the per-tick update message: players and powerups as of the
+     * tick. Reads only the snapshot, so it can run while the next tick
+     * simulates.
+     *
+     * @param withBullets include every bullet's position (spectators, who
+     *                    do not simulate bullets); players get shot and
+     *                    despawn events instead
      */
-    public static String toJson(Player player) {
-        return String.format(
-                "{\"id\":\"%s\",\"name\":\"%s\",\"x\":%d,\"y\":%d,\"angle\":%d,\"score\":%d," +
-                        "\"health\":%d,\"alive\":%b,\"hasShield\":%b,\"speedBoost\":%b,\"doubleFire\":%b}",
-                player.getId(), escapeJson(player.getName()), player.getX(), player.getY(),
-                player.getAngle(), player.getScore(), player.getHealth(), player.isAlive(), player.hasShield(),
-                player.hasSpeedBoost(), player.hasDoubleFire());
-    }
-
-    /**
-     * Converts a Bullet object to JSON string
-     */
-    public static String toJson(Bullet bullet) {
-        return String.format(
-                "{\"id\":\"%s\",\"ownerId\":\"%s\",\"x\":%d,\"y\":%d,\"dx\":%d,\"dy\":%d}",
-                bullet.getId(), bullet.getOwnerId(), bullet.getX(), bullet.getY(),
-                bullet.getDx(), bullet.getDy());
-    }
-
-    /**
-     * Converts a PowerUp object to JSON string
-     */
-    public static String toJson(PowerUp powerUp) {
-        return String.format(
-                "{\"id\":\"%s\",\"type\":\"%s\",\"x\":%d,\"y\":%d}",
-                powerUp.getId(), powerUp.getType().name(), powerUp.getX(), powerUp.getY());
+    public static String createUpdateMessage(WorldSnapshot snapshot, boolean withBullets) {
+        StringBuilder sb = new StringBuilder(256 + snapshot.getPlayerCount() * 192 +
+                (withBullets ? snapshot.getBulletCount() * 80 : 0) + snapshot.getPowerUpCount() * 64);
+        appendUpdateMessage(sb, snapshot, -1, 0, withBullets);
+        return sb.toString();
     }
 
     /**
-     * Creates an update message with players, bullets, and powerups
+     * Appends the update message as seen by one viewer: with a positive
+     * radius only entities within it of the viewer's tank are included (the
+     * viewer itself always is). Appended field by field rather than through
+     * String.format.
+     *
+     * @param viewer      index of the viewer's player in the snapshot, or -1 for everything
+     * @param radius      area-of-interest radius, 0 for everything
+     * @param withBullets see {@link #createUpdateMessage(WorldSnapshot, boolean)}
      */
-    public static String createUpdateMessage(Collection<Player> players,
-            Collection<Bullet> bullets,
-            Collection<PowerUp> powerUps) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{\"type\":\"update\",\"players\":[");
-
+    public static void appendUpdateMessage(StringBuilder sb, WorldSnapshot snapshot, int viewer, int radius,
+            boolean withBullets) {
+        boolean filtered = viewer >= 0 && radius > 0;
+        long cx = filtered ? snapshot.getPlayerX(viewer) : 0;
+        long cy = filtered ? snapshot.getPlayerY(viewer) : 0;
+        long r2 = (long) radius * radius;
+
+        sb.append("{\"type\":\"update\",\"tick\":").append(snapshot.getTick()).append(",\"players\":[");
         boolean first = true;
-        for (Player player : players) {
+        for (int i = 0; i < snapshot.getPlayerCount(); i++) {
+            if (filtered && !within(snapshot.getPlayerX(i), snapshot.getPlayerY(i), cx, cy, r2))
+                continue;
             if (!first)
-                sb.append(",");
-            sb.append(toJson(player));
+                sb.append(',');
             first = false;
+            sb.append("{\"id\":\"").append(snapshot.getPlayerId(i))
+                    .append("\",\"name\":\"").append(escapeJson(snapshot.getPlayerName(i)))
+                    .append("\",\"x\":").append(snapshot.getPlayerX(i))
+                    .append(",\"y\":").append(snapshot.getPlayerY(i))
+                    .append(",\"angle\":").append(snapshot.getPlayerAngle(i))
+                    .append(",\"score\":").append(snapshot.getPlayerScore(i))
+                    .append(",\"health\":").append(snapshot.getPlayerHealth(i))
+                    .append(",\"alive\":").append(snapshot.hasPlayerFlag(i, WorldSnapshot.ALIVE))
+                    .append(",\"hasShield\":").append(snapshot.hasPlayerFlag(i, WorldSnapshot.SHIELD))
+                    .append(",\"speedBoost\":").append(snapshot.hasPlayerFlag(i, WorldSnapshot.SPEED_BOOST))
+                    .append(",\"doubleFire\":").append(snapshot.hasPlayerFlag(i, WorldSnapshot.DOUBLE_FIRE))
+                    .append(",\"seq\":").append(snapshot.getPlayerInputSeq(i))
+                    .append('}');
         }
 
-        sb.append("],\"bullets\":[");
-        first = true;
-        for (Bullet bullet : bullets) {
-            if (!first)
-                sb.append(",");
-            sb.append(toJson(bullet));
-            first = false;
+        if (withBullets) {
+            sb.append("],\"bullets\":[");
+            first = true;
+            for (int i = 0; i < snapshot.getBulletCount(); i++) {
+                if (filtered && !within(snapshot.getBulletX(i), snapshot.getBulletY(i), cx, cy, r2))
+                    continue;
+                if (!first)
+                    sb.append(',');
+                first = false;
+                sb.append("{\"id\":\"").append(snapshot.getBulletId(i))
+                        .append("\",\"ownerId\":\"").append(snapshot.getBulletOwner(i))
+                        .append("\",\"x\":").append(snapshot.getBulletX(i))
+                        .append(",\"y\":").append(snapshot.getBulletY(i))
+                        .append(",\"dx\":").append(snapshot.getBulletDx(i))
+                        .append(",\"dy\":").append(snapshot.getBulletDy(i))
+                        .append('}');
+            }
         }
 
         sb.append("],\"powerUps\":[");
         first = true;
-        for (PowerUp powerUp : powerUps) {
+        for (int i = 0; i < snapshot.getPowerUpCount(); i++) {
+            if (filtered && !within(snapshot.getPowerUpX(i), snapshot.getPowerUpY(i), cx, cy, r2))
+                continue;
             if (!first)
-                sb.append(",");
-            sb.append(toJson(powerUp));
+                sb.append(',');
             first = false;
+            sb.append("{\"id\":\"").append(snapshot.getPowerUpId(i))
+                    .append("\",\"type\":\"").append(snapshot.getPowerUpType(i))
+                    .append("\",\"x\":").append(snapshot.getPowerUpX(i))
+                    .append(",\"y\":").append(snapshot.getPowerUpY(i))
+                    .append('}');
         }
 
         sb.append("]}");
-        return sb.toString();
+    }
+
+    /**
+     * Creates the message carrying the events (already encoded JSON objects)
+     * that happened since the last update. Sent apart from the update, on
+     * the reliable lane, so the update itself can be replaced by a newer one.
+     */
+    public static String createEventsMessage(WorldSnapshot snapshot) {
+        List<String> events = snapshot.getEvents();
+        StringBuilder sb = new StringBuilder(64 + events.size() * 128);
+        sb.append("{\"type\":\"events\",\"tick\":").append(snapshot.getTick()).append(",\"events\":[");
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(events.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static boolean within(int x, int y, long cx, long cy, long r2) {
+        long dx = x - cx;
+        long dy = y - cy;
+        return dx * dx + dy * dy <= r2;
+    }
+
+    /**
+     * Creates the welcome message sent to a player on join: its id, what the
+     * client needs to predict its own movement (step sizes per tick and the
+     * area tanks can move in) and how to reconnect to the same tank
+     *
+     * @param resumeToken token for a "resume" message, or null if resuming is off
+     */
+    public static String createWelcomeMessage(String playerId, int tickMs, int speed, int boostSpeed,
+            int mapWidth, int mapHeight, int margin, String resumeToken, int resumeGraceMs) {
+        return String.format("{\"type\":\"welcome\",\"playerId\":\"%s\",\"tickMs\":%d,\"speed\":%d," +
+                "\"boostSpeed\":%d,\"mapWidth\":%d,\"mapHeight\":%d,\"margin\":%d,\"resumeToken\":%s," +
+                "\"resumeGraceMs\":%d}",
+                playerId, tickMs, speed, boostSpeed, mapWidth, mapHeight, margin,
+                resumeToken == null ? "null" : "\"" + resumeToken + "\"", resumeGraceMs);
+    }
+
+    /**
+     * Creates the answer to a resume that came too late (or had a bad token);
+     * the client joins as a new player instead
+     */
+    public static String createResumeFailedMessage() {
+        return "{\"type\":\"resume_failed\"}";
+    }
+
+    /**
+     * Creates the answer to a join the server turned away (e.g. while
+     * shedding load); nothing was created for the player
+     *
+     * @param retryAfterMs how long the client should wait before trying again
+     */
+    public static String createJoinRejectedMessage(String reason, int retryAfterMs) {
+        return "{\"type\":\"join_rejected\",\"reason\":\"" + reason + "\",\"retryAfterMs\":" + retryAfterMs + "}";
     }
 
     /**
@@ -141,6 +221,93 @@ public class JsonUtil {
                 playerId, x, y);
     }
 
+    /**
+     * Creates a damage event (hit that did not kill)
+     */
+    public static String createDamageEvent(String target, String shooter, int health) {
+        return String.format("{\"type\":\"damage\",\"target\":\"%s\",\"shooter\":\"%s\",\"health\":%d}",
+                target, shooter, health);
+    }
+
+    /**
+     * Creates a shot event: the one announcement of a bullet. Bullets fly
+     * in a straight line, so clients simulate it from here on; at tick t it
+     * is at (x + (t - tick) * dx, y + (t - tick) * dy) until its despawn
+     * event.
+     *
+     * @param tick the tick at whose end the bullet was at (x, y)
+     */
+    public static String createShotEvent(Bullet bullet, long tick) {
+        StringBuilder sb = new StringBuilder(128);
+        appendShot(sb, bullet, tick);
+        return sb.toString();
+    }
+
+    private static void appendShot(StringBuilder sb, Bullet bullet, long tick) {
+        sb.append("{\"type\":\"shot\",\"id\":\"").append(bullet.getId())
+                .append("\",\"ownerId\":\"").append(bullet.getOwnerId())
+                .append("\",\"x\":").append(bullet.getX())
+                .append(",\"y\":").append(bullet.getY())
+                .append(",\"dx\":").append(bullet.getDx())
+                .append(",\"dy\":").append(bullet.getDy())
+                .append(",\"tick\":").append(tick)
+                .append('}');
+    }
+
+    /**
+     * Creates the message that tells a client which bullets are in flight
+     * when it joins or resumes; it replaces whatever the client knew
+     *
+     * @param tick the tick at whose end the bullets are where they are now
+     */
+    public static String createBulletsMessage(Collection<Bullet> bullets, long tick) {
+        StringBuilder sb = new StringBuilder(32 + bullets.size() * 128);
+        sb.append("{\"type\":\"bullets\",\"bullets\":[");
+        boolean first = true;
+        for (Bullet bullet : bullets) {
+            if (!first)
+                sb.append(',');
+            first = false;
+            appendShot(sb, bullet, tick);
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Creates a despawn event: the bullet is gone
+     *
+     * @param impact true if it struck a tank or a wall at (x, y), false if
+     *               it expired or left the map
+     */
+    public static String createDespawnEvent(String bulletId, int x, int y, boolean impact) {
+        return "{\"type\":\"despawn\",\"id\":\"" + bulletId + "\",\"x\":" + x + ",\"y\":" + y +
+                ",\"impact\":" + impact + "}";
+    }
+
+    /**
+     * Creates a power-up pickup event
+     */
+    public static String createPickupEvent(String playerId, String powerUpType) {
+        return String.format("{\"type\":\"pickup\",\"playerId\":\"%s\",\"powerUpType\":\"%s\"}",
+                playerId, powerUpType);
+    }
+
+    /**
+     * Creates a join event
+     */
+    public static String createJoinEvent(String playerId, String name) {
+        return String.format("{\"type\":\"join\",\"playerId\":\"%s\",\"name\":\"%s\"}",
+                playerId, escapeJson(name));
+    }
+
+    /**
+     * Creates a leave event
+     */
+    public static String createLeaveEvent(String playerId, String name) {
+        return String.format("{\"type\":\"leave\",\"playerId\":\"%s\",\"name\":\"%s\"}",
+                playerId, escapeJson(name));
+    }
+
     /**
      * Parses a simple JSON string to extract key-value pairs
      * This is a simplified parser for the game's specific message format
@@ -219,54 +386,47 @@ public class JsonUtil {
 
     /**
      * Creates a game-over message containing the winner and a leaderboard summary
+     *
+     * @param ranked players already ordered by score, highest first
      */
-    public static String createGameOverMessage(String winnerId, String winnerName, Collection<Player> players) {
-        StringBuilder sb = new StringBuilder();
+    public static String createGameOverMessage(String winnerId, String winnerName, List<Player> ranked) {
+        StringBuilder sb = new StringBuilder(64 + ranked.size() * 32);
         sb.append("{\"type\":\"game_over\",");
-        sb.append(String.format("\"winnerId\":\"%s\",", winnerId));
-        sb.append(String.format("\"winnerName\":\"%s\",", escapeJson(winnerName)));
-
-        // Build leaderboard sorted by score desc
-        List<Player> list = new ArrayList<>(players);
-        list.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
-
-        sb.append("\"leaderboard\":[");
-        boolean first = true;
-        for (Player p : list) {
-            if (!first)
-                sb.append(',');
-            sb.append(String.format("{\"name\":\"%s\",\"score\":%d}", escapeJson(p.getName()), p.getScore()));
-            first = false;
-        }
-        sb.append("]}");
-
+        sb.append("\"winnerId\":\"").append(winnerId).append("\",");
+        sb.append("\"winnerName\":\"").append(escapeJson(winnerName)).append("\",");
+        sb.append("\"leaderboard\":");
+        appendScores(sb, ranked);
+        sb.append('}');
         return sb.toString();
     }
 
     /**
      * Creates a lobby info message containing player count, winning score, and
      * current leaderboard
+     *
+     * @param ranked players already ordered by score, highest first
      */
-    public static String createLobbyInfoMessage(Collection<Player> players, int winningScore) {
-        StringBuilder sb = new StringBuilder();
+    public static String createLobbyInfoMessage(List<Player> ranked, int winningScore) {
+        StringBuilder sb = new StringBuilder(64 + ranked.size() * 32);
         sb.append("{\"type\":\"lobby_info\",");
-        sb.append(String.format("\"playerCount\":%d,", players.size()));
-        sb.append(String.format("\"winningScore\":%d,", winningScore));
-
-        // Build player list sorted by score desc
-        List<Player> list = new ArrayList<>(players);
-        list.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
+        sb.append("\"playerCount\":").append(ranked.size()).append(',');
+        sb.append("\"winningScore\":").append(winningScore).append(',');
+        sb.append("\"players\":");
+        appendScores(sb, ranked);
+        sb.append('}');
+        return sb.toString();
+    }
 
-        sb.append("\"players\":[");
+    private static void appendScores(StringBuilder sb, List<Player> ranked) {
+        sb.append('[');
         boolean first = true;
-        for (Player p : list) {
+        for (Player p : ranked) {
             if (!first)
                 sb.append(',');
-            sb.append(String.format("{\"name\":\"%s\",\"score\":%d}", escapeJson(p.getName()), p.getScore()));
+            sb.append("{\"name\":\"").append(escapeJson(p.getName()))
+                    .append("\",\"score\":").append(p.getScore()).append('}');
             first = false;
         }
-        sb.append("]}");
-
-        return sb.toString();
+        sb.append(']');
     }
 }
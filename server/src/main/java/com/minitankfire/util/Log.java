@@ -0,0 +1,288 @@
+package com.minitankfire.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Minimal asynchronous logger.
+ *
+ * Callers never touch System.out: a log call claims a slot in a
+ * preallocated ring buffer and returns, and a background thread formats and
+ * prints the entries. When the ring is full the entry is dropped (and
+ * counted) rather than blocking, so logging can never stall the game loop
+ * or a read loop. Each tag may log a limited number of lines per second;
+ * the rest are counted and reported as one summary line.
+ *
+ * Lines look like {@code 12:00:01.250 INFO  [TAG] message}. INFO and DEBUG
+ * go to stdout, WARN and ERROR to stderr. Configured with the {@code log.*}
+ * keys in config.properties.
+ */
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final DateTimeFormatter TIME =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final long RATE_WINDOW_MS = 1000;
+    private static final long IDLE_PARK_NANOS = 200_000_000L; // Also the summary sweep interval
+
+    private static volatile Level threshold = Level.INFO;
+    private static int maxPerTagPerSecond;
+
+    // Ring buffer: a slot is readable once published[slot] holds its sequence number
+    private static int mask;
+    private static long[] times;
+    private static Level[] levels;
+    private static String[] tags;
+    private static String[] messages;
+    private static AtomicLongArray published;
+    private static final AtomicLong claimed = new AtomicLong();
+    private static volatile long consumed;
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final Map<String, RateWindow> rates = new ConcurrentHashMap<>();
+
+    private static final Thread writer;
+    private static volatile boolean writerWaiting;
+    private static volatile boolean running = true;
+
+    static {
+        Properties props = new Properties();
+        try (InputStream input = Log.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if (input != null) {
+                props.load(input);
+            }
+        } catch (IOException e) {
+            // Defaults below; nothing to log to yet
+        }
+        try {
+            threshold = Level.valueOf(props.getProperty("log.level", "INFO").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            threshold = Level.INFO;
+        }
+        maxPerTagPerSecond = Integer.parseInt(props.getProperty("log.maxPerTagPerSecond", "20"));
+        int capacity = Integer.highestOneBit(Math.max(64, Integer.parseInt(props.getProperty("log.bufferSize", "8192"))));
+        mask = capacity - 1;
+        times = new long[capacity];
+        levels = new Level[capacity];
+        tags = new String[capacity];
+        messages = new String[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+
+        writer = new Thread(Log::drainLoop, "Logger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Lines per tag in the current one-second window.
+     */
+    private static final class RateWindow {
+        long windowStart;
+        int count;
+        int suppressed;
+    }
+
+    public static boolean isDebugEnabled() {
+        return threshold == Level.DEBUG;
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level;
+    }
+
+    public static void debug(String tag, String message) {
+        log(Level.DEBUG, tag, message);
+    }
+
+    public static void info(String tag, String message) {
+        log(Level.INFO, tag, message);
+    }
+
+    public static void warn(String tag, String message) {
+        log(Level.WARN, tag, message);
+    }
+
+    public static void error(String tag, String message) {
+        log(Level.ERROR, tag, message);
+    }
+
+    /**
+     * An INFO line printed as is, without time, level or tag (banners).
+     */
+    public static void plain(String line) {
+        if (Level.INFO.compareTo(threshold) >= 0) {
+            publish(Level.INFO, null, line);
+        }
+    }
+
+    public static void log(Level level, String tag, String message) {
+        if (level.compareTo(threshold) < 0 || !allow(tag)) {
+            return;
+        }
+        publish(level, tag, message);
+    }
+
+    /**
+     * Per-tag rate limit. Suppressed lines are summarized when the tag's
+     * window rolls over, or by the writer's sweep if the tag goes quiet.
+     */
+    private static boolean allow(String tag) {
+        if (maxPerTagPerSecond <= 0) {
+            return true;
+        }
+        RateWindow window = rates.computeIfAbsent(tag, t -> new RateWindow());
+        long now = System.currentTimeMillis();
+        int suppressed = 0;
+        boolean allowed;
+        synchronized (window) {
+            if (now - window.windowStart >= RATE_WINDOW_MS) {
+                suppressed = window.suppressed;
+                window.windowStart = now;
+                window.count = 0;
+                window.suppressed = 0;
+            }
+            allowed = ++window.count <= maxPerTagPerSecond;
+            if (!allowed) {
+                window.suppressed++;
+            }
+        }
+        if (suppressed > 0) {
+            publish(Level.WARN, tag, suppressed + " similar messages suppressed");
+        }
+        return allowed;
+    }
+
+    private static void publish(Level level, String tag, String message) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed > mask) {
+                dropped.incrementAndGet(); // Full: drop rather than block the caller
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+
+        int slot = (int) (seq & mask);
+        times[slot] = System.currentTimeMillis();
+        levels[slot] = level;
+        tags[slot] = tag;
+        messages[slot] = message;
+        published.set(slot, seq); // Publishes the slot's fields to the writer
+
+        if (writerWaiting) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void drainLoop() {
+        StringBuilder sb = new StringBuilder(256);
+        long lastSweep = System.currentTimeMillis();
+        while (running) {
+            if (!drain(sb)) {
+                writerWaiting = true;
+                if (published.get((int) (consumed & mask)) != consumed) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerWaiting = false;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastSweep >= RATE_WINDOW_MS) {
+                lastSweep = now;
+                sweepSuppressed(now);
+            }
+        }
+    }
+
+    /**
+     * Prints everything published so far.
+     *
+     * @return false if there was nothing to print
+     */
+    private static synchronized boolean drain(StringBuilder sb) {
+        long next = consumed;
+        boolean printedOut = false;
+        boolean printedErr = false;
+        while (published.get((int) (next & mask)) == next) {
+            int slot = (int) (next & mask);
+            Level level = levels[slot];
+            sb.setLength(0);
+            if (tags[slot] == null) {
+                sb.append(messages[slot]);
+            } else {
+                TIME.formatTo(Instant.ofEpochMilli(times[slot]), sb);
+                sb.append(' ').append(level.name());
+                if (level.name().length() == 4) {
+                    sb.append(' ');
+                }
+                sb.append(" [").append(tags[slot]).append("] ").append(messages[slot]);
+            }
+            tags[slot] = null;
+            messages[slot] = null;
+            next++;
+            consumed = next; // Frees the slot for producers
+
+            PrintStream out = level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+            out.println(sb);
+            printedOut |= out == System.out;
+            printedErr |= out == System.err;
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            System.err.println("[LOG] Buffer full, dropped " + lost + " messages");
+            printedErr = true;
+        }
+        if (printedOut) {
+            System.out.flush();
+        }
+        if (printedErr) {
+            System.err.flush();
+        }
+        return printedOut || printedErr;
+    }
+
+    private static void sweepSuppressed(long now) {
+        for (Map.Entry<String, RateWindow> entry : rates.entrySet()) {
+            RateWindow window = entry.getValue();
+            int suppressed;
+            synchronized (window) {
+                if (window.suppressed == 0 || now - window.windowStart < RATE_WINDOW_MS) {
+                    continue;
+                }
+                suppressed = window.suppressed;
+                window.suppressed = 0;
+            }
+            publish(Level.WARN, entry.getKey(), suppressed + " similar messages suppressed");
+        }
+    }
+
+    /**
+     * Prints whatever is still buffered and stops the writer. Call last
+     * before the JVM exits; lines logged afterwards are never printed.
+     */
+    public static void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain(new StringBuilder(256));
+    }
+}
@@ -0,0 +1,88 @@
+package com.minitankfire.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.minitankfire.model.Player;
+import com.minitankfire.model.PlayerInput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+class GameRoomTest {
+
+    // PLAYER_SPEED at the default 50 ms tick
+    private static final int STEP = 36;
+
+    private GameRoom room;
+    private long seq;
+
+    private Player join() {
+        room = new GameRoom(1L);
+        room.addPlayer("p", "tester", null);
+        room.tick();
+        Player player = room.getPlayers().iterator().next();
+        player.setX(100);
+        return player;
+    }
+
+    private void press(int inputs) {
+        for (int i = 0; i < inputs; i++) {
+            room.handleInput("p", ++seq, PlayerInput.RIGHT, 0);
+        }
+    }
+
+    @Test
+    void appliesOneInputPerTick() {
+        Player player = join();
+        for (int i = 0; i < 10; i++) {
+            press(1);
+            room.tick();
+        }
+        assertEquals(100 + 10 * STEP, player.getX());
+        assertEquals(10, player.getLastInputSeq());
+    }
+
+    @Test
+    void sendingFasterThanTheTickRateDoesNotMoveFaster() {
+        Player player = join();
+        for (int i = 0; i < 10; i++) {
+            press(2);
+            room.tick();
+        }
+        // The join tick banked one credit, so at most one catch-up step
+        assertEquals(100 + 11 * STEP, player.getX());
+    }
+
+    @Test
+    void catchesUpOnTicksThatHadNoInput() {
+        Player player = join();
+        for (int i = 0; i < 4; i++) {
+            room.tick(); // The inputs are delayed on the network
+        }
+        press(5);
+        room.tick();
+        room.tick();
+        assertEquals(100 + 4 * STEP, player.getX());
+        room.tick();
+        assertEquals(100 + 5 * STEP, player.getX());
+        assertEquals(5, player.getLastInputSeq());
+    }
+
+    @Test
+    void tileMapFixesTheMapSize() throws IOException {
+        TileMap map = TileMap.parse("walled", Arrays.asList("tileSize=50", "#####", "#...#", "#...#", "#####"));
+        GameRoom walled = new GameRoom(1L, map);
+        assertEquals(250, walled.getSettings().getMapWidth());
+        assertEquals(200, walled.getSettings().getMapHeight());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> walled.updateSettings(Collections.singletonMap("mapWidth", "1920")).get());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        walled.tick();
+        assertEquals(250, walled.getSettings().getMapWidth());
+    }
+}
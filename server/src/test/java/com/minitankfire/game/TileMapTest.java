@@ -0,0 +1,113 @@
+package com.minitankfire.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class TileMapTest {
+
+    // 10 px tiles; walls at (1,1), (2,3) and (3,3)
+    private static TileMap small() throws IOException {
+        return TileMap.parse("small", Arrays.asList(
+                "tileSize=10",
+                "# a comment",
+                ".....",
+                ".#...",
+                ".....",
+                "..##.",
+                ""));
+    }
+
+    @Test
+    void parsesHeaderAndGrid() throws IOException {
+        TileMap map = small();
+        assertEquals(10, map.getTileSize());
+        assertEquals(5, map.getCols());
+        assertEquals(4, map.getRows());
+        assertTrue(map.hasWalls());
+        assertTrue(map.isWallTile(1, 1));
+        assertTrue(map.isWallTile(3, 3));
+        assertFalse(map.isWallTile(0, 0));
+        assertFalse(map.isWallTile(-1, 1));
+        assertFalse(map.isWallTile(5, 3));
+    }
+
+    @Test
+    void wallAtPixel() throws IOException {
+        TileMap map = small();
+        assertTrue(map.isWallAt(10, 10));
+        assertTrue(map.isWallAt(19, 19));
+        assertFalse(map.isWallAt(20, 19));
+        assertFalse(map.isWallAt(-5, 15)); // Outside the grid is open
+    }
+
+    @Test
+    void circleAgainstWallTile() throws IOException {
+        TileMap map = small();
+        // Tile (1,1) spans 10..20 on both axes
+        assertFalse(map.blocksCircle(25, 15, 5)); // Touching is not overlapping
+        assertTrue(map.blocksCircle(25, 15, 6));
+        assertFalse(map.blocksCircle(24, 24, 5)); // Corner is 5.66 away
+        assertTrue(map.blocksCircle(24, 24, 6));
+        assertFalse(TileMap.EMPTY.blocksCircle(15, 15, 100));
+    }
+
+    @Test
+    void segmentStopsAtTheFirstWall() throws IOException {
+        TileMap map = small();
+        assertEquals(0.125, map.segmentHit(5, 15, 45, 15), 1e-9);
+        assertEquals(0.625, map.segmentHit(45, 15, 5, 15), 1e-9);
+        assertEquals(0.5, map.segmentHit(15, 0, 15, 20), 1e-9);
+        assertEquals(0, map.segmentHit(15, 15, 45, 15), 1e-9); // Starts inside
+    }
+
+    @Test
+    void clearSegments() throws IOException {
+        TileMap map = small();
+        assertEquals(-1, map.segmentHit(5, 5, 45, 5), 1e-9);
+        assertEquals(-1, map.segmentHit(5, 25, 45, 25), 1e-9);
+        assertEquals(-1, map.segmentHit(5, 5, 5, 5), 1e-9);
+        assertTrue(map.hasLineOfSight(45, 5, 45, 35));
+        assertFalse(map.hasLineOfSight(5, 5, 45, 35));
+        assertEquals(-1, TileMap.EMPTY.segmentHit(0, 0, 1000, 1000), 1e-9);
+    }
+
+    @Test
+    void spawnPointsAreClearOfWalls() throws IOException {
+        TileMap map = TileMap.parse("spawns", Arrays.asList(
+                ".......",
+                ".......",
+                ".......",
+                "......#"));
+        // Every tile but the four around the wall (the grid edge counts as open)
+        assertEquals(24, map.getSpawnPointCount());
+        for (int i = 0; i < map.getSpawnPointCount(); i++) {
+            int x = map.getSpawnX(i);
+            int y = map.getSpawnY(i);
+            assertEquals(20, Math.floorMod(x, 40), "centre of a tile");
+            assertFalse(map.blocksCircle(x, y, 40), "spawn at " + x + "," + y);
+        }
+    }
+
+    @Test
+    void rejectsBadMaps() {
+        assertThrows(IOException.class, () -> TileMap.parse("uneven", Arrays.asList("...", "..")));
+        assertThrows(IOException.class, () -> TileMap.parse("unknown", Arrays.asList("..x")));
+        assertThrows(IOException.class, () -> TileMap.parse("empty", Arrays.asList("tileSize=10")));
+        assertThrows(IOException.class, () -> TileMap.parse("size", Arrays.asList("tileSize=0", "...")));
+        assertThrows(IOException.class, () -> TileMap.load("../config"));
+        assertThrows(IOException.class, () -> TileMap.load("missing"));
+    }
+
+    @Test
+    void loadsTheBundledArena() throws IOException {
+        TileMap map = TileMap.load("arena");
+        assertTrue(map.hasWalls());
+        assertTrue(map.getSpawnPointCount() > 0);
+    }
+}
@@ -0,0 +1,114 @@
+package com.minitankfire.game;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+
+    @Test
+    void firesOnTheDeadlineTickAcrossSeveralRevolutions() {
+        TimerWheel wheel = new TimerWheel(8);
+        List<long[]> fired = new ArrayList<>();
+        for (long delay = 1; delay <= 40; delay++) {
+            long expected = delay;
+            wheel.schedule(delay, () -> fired.add(new long[] { expected, wheel.getCurrentTick() }));
+        }
+        for (int i = 0; i < 50; i++) {
+            wheel.advance();
+        }
+        assertEquals(40, fired.size());
+        for (long[] f : fired) {
+            assertEquals(f[0], f[1], "timer for tick " + f[0]);
+        }
+    }
+
+    @Test
+    void schedulingAfterTheWheelHasWrapped() {
+        TimerWheel wheel = new TimerWheel(4);
+        for (int i = 0; i < 13; i++) {
+            wheel.advance();
+        }
+        List<Long> fired = new ArrayList<>();
+        wheel.schedule(4, () -> fired.add(wheel.getCurrentTick()));
+        wheel.schedule(9, () -> fired.add(wheel.getCurrentTick()));
+        for (int i = 0; i < 10; i++) {
+            wheel.advance();
+        }
+        assertEquals(List.of(17L, 22L), fired);
+    }
+
+    @Test
+    void delayBelowOneFiresOnTheNextTick() {
+        TimerWheel wheel = new TimerWheel(8);
+        List<Long> fired = new ArrayList<>();
+        wheel.schedule(0, () -> fired.add(wheel.getCurrentTick()));
+        wheel.advance();
+        assertEquals(List.of(1L), fired);
+    }
+
+    @Test
+    void cancelledTimersDoNotRun() {
+        TimerWheel wheel = new TimerWheel(8);
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timeout beforePlacement = wheel.schedule(3, () -> fired.add("pending"));
+        TimerWheel.Timeout afterPlacement = wheel.schedule(12, () -> fired.add("placed"));
+        wheel.schedule(12, () -> fired.add("kept"));
+        beforePlacement.cancel();
+        wheel.advance(); // Places the timers
+        afterPlacement.cancel();
+        for (int i = 0; i < 20; i++) {
+            wheel.advance();
+        }
+        assertTrue(beforePlacement.isCancelled());
+        assertEquals(List.of("kept"), fired);
+    }
+
+    @Test
+    void callbacksMayScheduleMoreTimers() {
+        TimerWheel wheel = new TimerWheel(4);
+        List<Long> fired = new ArrayList<>();
+        wheel.schedule(2, new Runnable() {
+            @Override
+            public void run() {
+                fired.add(wheel.getCurrentTick());
+                if (fired.size() < 4) {
+                    wheel.schedule(3, this);
+                }
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            wheel.advance();
+        }
+        assertEquals(List.of(2L, 5L, 8L, 11L), fired);
+    }
+
+    @Test
+    void failingCallbackDoesNotStopTheOthers() {
+        TimerWheel wheel = new TimerWheel(8);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(1, () -> {
+            throw new IllegalStateException("boom");
+        });
+        wheel.schedule(1, () -> fired.add("after"));
+        wheel.advance();
+        assertEquals(List.of("after"), fired);
+    }
+
+    @Test
+    void clearDropsEverything() {
+        TimerWheel wheel = new TimerWheel(8);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(5, () -> fired.add("placed"));
+        wheel.advance();
+        wheel.schedule(5, () -> fired.add("pending"));
+        wheel.clear();
+        for (int i = 0; i < 20; i++) {
+            wheel.advance();
+        }
+        assertTrue(fired.isEmpty());
+    }
+}
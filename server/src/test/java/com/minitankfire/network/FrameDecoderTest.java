@@ -0,0 +1,237 @@
+package com.minitankfire.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FrameDecoderTest {
+
+    private static final int MASK = 0x37FA213D;
+
+    @Test
+    void decodesTwoFramesSplitAtEveryOffset() throws IOException {
+        byte[] stream = concat(textFrame("hello", true, 0x1), textFrame("world!", true, 0x1));
+        for (int split = 1; split < stream.length; split++) {
+            FrameDecoder decoder = decoder(64, chunks(stream, split));
+            assertEquals("hello", decoder.readMessage(), "split at " + split);
+            assertEquals("world!", decoder.readMessage(), "split at " + split);
+            assertNull(decoder.readMessage(), "split at " + split);
+        }
+    }
+
+    @Test
+    void frameFollowedByPartialHeaderInOneRead() throws IOException {
+        // A whole frame plus the first three header bytes of the next one
+        byte[] first = textFrame("hello", true, 0x1);
+        byte[] second = textFrame("again", true, 0x1);
+        byte[] stream = concat(first, second);
+        FrameDecoder decoder = decoder(64, chunks(stream, first.length + 3));
+        assertEquals("hello", decoder.readMessage());
+        assertEquals("again", decoder.readMessage());
+    }
+
+    @Test
+    void extendedLengthHeaderSplitAtEveryOffset() throws IOException {
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        String big = new String(chars);
+        byte[] stream = concat(textFrame("a", true, 0x1), textFrame(big, true, 0x1));
+        for (int split = 1; split < stream.length; split++) {
+            FrameDecoder decoder = decoder(64, chunks(stream, split));
+            assertEquals("a", decoder.readMessage(), "split at " + split);
+            assertEquals(big, decoder.readMessage(), "split at " + split);
+        }
+    }
+
+    @Test
+    void fragmentsWithPingInBetween() throws IOException {
+        byte[] stream = concat(textFrame("frag", false, 0x1), textFrame("", true, 0x9),
+                textFrame("ment", true, 0x0));
+        List<String> pings = new ArrayList<>();
+        for (int split = 1; split < stream.length; split++) {
+            pings.clear();
+            FrameDecoder decoder = new FrameDecoder(new ChunkedChannel(chunks(stream, split)),
+                    ByteBuffer.allocate(64), 1024, new Recorder(pings));
+            assertEquals("fragment", decoder.readMessage(), "split at " + split);
+            assertEquals(1, pings.size(), "split at " + split);
+        }
+    }
+
+    @Test
+    void oneByteReads() throws IOException {
+        byte[] stream = concat(textFrame("one", true, 0x1), textFrame("two", true, 0x1));
+        Deque<byte[]> chunks = new ArrayDeque<>();
+        for (byte b : stream) {
+            chunks.add(new byte[] { b });
+        }
+        FrameDecoder decoder = decoder(16, chunks);
+        assertEquals("one", decoder.readMessage());
+        assertEquals("two", decoder.readMessage());
+        assertEquals(stream.length, decoder.getBytesRead());
+    }
+
+    @Test
+    void preloadedBytesComeFirst() throws IOException {
+        byte[] stream = textFrame("early", true, 0x1);
+        // The first four bytes arrived with the upgrade request
+        FrameDecoder decoder = decoder(64, single(Arrays.copyOfRange(stream, 4, stream.length)));
+        decoder.preload(ByteBuffer.wrap(stream, 0, 4));
+        assertEquals("early", decoder.readMessage());
+    }
+
+    @Test
+    void rejectsOversizedMessage() {
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'y');
+        FrameDecoder decoder = new FrameDecoder(new ChunkedChannel(single(textFrame(new String(chars), true, 0x1))),
+                ByteBuffer.allocate(64), 100, new Recorder(new ArrayList<>()));
+        FrameDecoder.ProtocolException e = assertThrows(FrameDecoder.ProtocolException.class,
+                decoder::readMessage);
+        assertEquals(FrameDecoder.ProtocolException.MESSAGE_TOO_BIG, e.getCloseCode());
+    }
+
+    @Test
+    void rejectsUnmaskedFrame() {
+        byte[] frame = { (byte) 0x81, 0x05, 'h', 'e', 'l', 'l', 'o' };
+        FrameDecoder decoder = decoder(64, single(frame));
+        FrameDecoder.ProtocolException e = assertThrows(FrameDecoder.ProtocolException.class,
+                decoder::readMessage);
+        assertEquals(FrameDecoder.ProtocolException.PROTOCOL_ERROR, e.getCloseCode());
+    }
+
+    @Test
+    void unmaskMatchesBytewiseXorAtAnyOffset() {
+        byte[] data = new byte[37];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        for (int offset = 0; offset < 4; offset++) {
+            ByteBuffer buf = ByteBuffer.wrap(data.clone());
+            FrameDecoder.unmask(buf, 0, data.length, MASK, offset);
+            for (int i = 0; i < data.length; i++) {
+                int maskByte = MASK >>> (24 - 8 * ((offset + i) & 3));
+                assertEquals((byte) (data[i] ^ maskByte), buf.get(i), "offset " + offset + " byte " + i);
+            }
+        }
+    }
+
+    private static FrameDecoder decoder(int bufferBytes, Deque<byte[]> chunks) {
+        return new FrameDecoder(new ChunkedChannel(chunks), ByteBuffer.allocate(bufferBytes), 1024,
+                new Recorder(new ArrayList<>()));
+    }
+
+    /**
+     * A masked client frame.
+     */
+    private static byte[] textFrame(String text, boolean fin, int opcode) {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write((fin ? 0x80 : 0) | opcode);
+        if (payload.length < 126) {
+            out.write(0x80 | payload.length);
+        } else {
+            out.write(0x80 | 126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length & 0xFF);
+        }
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(MASK >>> shift);
+        }
+        for (int i = 0; i < payload.length; i++) {
+            out.write(payload[i] ^ (MASK >>> (24 - 8 * (i & 3))));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static Deque<byte[]> chunks(byte[] stream, int split) {
+        Deque<byte[]> chunks = new ArrayDeque<>();
+        chunks.add(Arrays.copyOfRange(stream, 0, split));
+        chunks.add(Arrays.copyOfRange(stream, split, stream.length));
+        return chunks;
+    }
+
+    private static Deque<byte[]> single(byte[] stream) {
+        Deque<byte[]> chunks = new ArrayDeque<>();
+        chunks.add(stream);
+        return chunks;
+    }
+
+    /**
+     * Delivers each chunk in one read (or several, if the buffer is short),
+     * then end of stream.
+     */
+    private static class ChunkedChannel implements ReadableByteChannel {
+        private final Deque<byte[]> chunks;
+        private ByteBuffer current;
+
+        ChunkedChannel(Deque<byte[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            while (current == null || !current.hasRemaining()) {
+                if (chunks.isEmpty()) {
+                    return -1;
+                }
+                current = ByteBuffer.wrap(chunks.poll());
+            }
+            int n = Math.min(dst.remaining(), current.remaining());
+            ByteBuffer slice = current.duplicate();
+            slice.limit(slice.position() + n);
+            dst.put(slice);
+            current.position(current.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class Recorder implements FrameDecoder.ControlHandler {
+        private final List<String> pings;
+
+        Recorder(List<String> pings) {
+            this.pings = pings;
+        }
+
+        @Override
+        public void onPing(ByteBuffer payload) {
+            pings.add(StandardCharsets.UTF_8.decode(payload).toString());
+        }
+
+        @Override
+        public void onPong(ByteBuffer payload) {
+        }
+
+        @Override
+        public void onClose(int statusCode) {
+        }
+    }
+}
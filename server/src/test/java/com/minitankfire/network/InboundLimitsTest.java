@@ -0,0 +1,84 @@
+package com.minitankfire.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class InboundLimitsTest {
+
+    private static final long MS = 1_000_000; // Nanoseconds
+    private static final long START = 42 * MS; // Any nanoTime value will do
+
+    @Test
+    void burstThenReject() {
+        InboundLimits limits = InboundLimits.parse("fire:0.1:3");
+        InboundLimits.Budget budget = limits.newBudget(START);
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.FIRE, START));
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.FIRE, START));
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.FIRE, START));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.FIRE, START));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.FIRE, START + 9_000 * MS)); // 0.9 tokens
+        assertEquals(2, limits.getRejected(InboundLimits.Kind.FIRE));
+    }
+
+    @Test
+    void refillsOverTimeUpToTheBurst() {
+        InboundLimits limits = InboundLimits.parse("chat:1000:2");
+        InboundLimits.Budget budget = limits.newBudget(START);
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, START));
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, START));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.CHAT, START));
+
+        // One token per ms
+        long now = START + MS;
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, now));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.CHAT, now));
+
+        // Worth 20 tokens, capped at the burst of 2
+        now += 20 * MS;
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, now));
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, now));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.CHAT, now));
+        assertEquals(3, limits.getRejected(InboundLimits.Kind.CHAT));
+    }
+
+    @Test
+    void budgetsAreIndependentButShareTheCounters() {
+        InboundLimits limits = InboundLimits.parse("ping:0.1:1");
+        InboundLimits.Budget first = limits.newBudget(START);
+        InboundLimits.Budget second = limits.newBudget(START);
+        assertTrue(first.tryAcquire(InboundLimits.Kind.PING, START));
+        assertFalse(first.tryAcquire(InboundLimits.Kind.PING, START));
+        assertTrue(second.tryAcquire(InboundLimits.Kind.PING, START));
+        assertFalse(second.tryAcquire(InboundLimits.Kind.PING, START));
+        assertEquals(2, limits.getRejected(InboundLimits.Kind.PING));
+    }
+
+    @Test
+    void unlistedAndInvalidKindsAreUnlimited() {
+        InboundLimits limits = InboundLimits.parse("bogus:1:1, input:x:1, chat:1 ,voice:0.1:1");
+        InboundLimits.Budget budget = limits.newBudget(START);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(budget.tryAcquire(InboundLimits.Kind.INPUT, START));
+            assertTrue(budget.tryAcquire(InboundLimits.Kind.CHAT, START));
+            assertTrue(budget.tryAcquire(InboundLimits.Kind.CONTROL, START));
+        }
+        assertTrue(budget.tryAcquire(InboundLimits.Kind.VOICE, START));
+        assertFalse(budget.tryAcquire(InboundLimits.Kind.VOICE, START));
+        assertEquals("{\"input\":0,\"fire\":0,\"chat\":0,\"voice\":1,\"ping\":0,\"control\":0}",
+                limits.rejectedJson());
+    }
+
+    @Test
+    void messageTypesMapToKinds() {
+        assertEquals(InboundLimits.Kind.INPUT, InboundLimits.Kind.of("input"));
+        assertEquals(InboundLimits.Kind.FIRE, InboundLimits.Kind.of("fire"));
+        assertEquals(InboundLimits.Kind.VOICE, InboundLimits.Kind.of("voice-ice"));
+        assertEquals(InboundLimits.Kind.CONTROL, InboundLimits.Kind.of("resume"));
+        assertEquals(InboundLimits.Kind.CONTROL, InboundLimits.Kind.of("lobby_info"));
+        assertNull(InboundLimits.Kind.of("update"));
+    }
+}
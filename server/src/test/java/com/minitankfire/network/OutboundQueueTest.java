@@ -0,0 +1,122 @@
+package com.minitankfire.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class OutboundQueueTest {
+
+    // state:8, events:4, voice:2, chat:1
+    private static final int[] WEIGHTS = { 8, 4, 2, 1 };
+
+    @Test
+    void stateKeepsOnlyTheLatestSnapshot() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 8, 8, 8);
+        queue.offer(OutboundQueue.Lane.STATE, "old");
+        queue.offer(OutboundQueue.Lane.STATE, "new");
+        List<String> out = new ArrayList<>();
+        assertEquals(3, queue.drain(100, true, out));
+        assertEquals(Arrays.asList("new"), out);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void forcedStateIgnoresTheAllowance() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 8, 8, 8);
+        queue.offer(OutboundQueue.Lane.STATE, "0123456789");
+        queue.offer(OutboundQueue.Lane.EVENTS, "event");
+        List<String> out = new ArrayList<>();
+        assertEquals(10, queue.drain(4, true, out));
+        assertEquals(Arrays.asList("0123456789"), out);
+        assertFalse(queue.isEmpty());
+    }
+
+    @Test
+    void unforcedStateWaitsForRoom() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 8, 8, 8);
+        queue.offer(OutboundQueue.Lane.STATE, "0123456789");
+        List<String> out = new ArrayList<>();
+        assertEquals(0, queue.drain(4, false, out));
+        assertEquals(10, queue.drain(10, false, out));
+        assertEquals(Arrays.asList("0123456789"), out);
+    }
+
+    @Test
+    void reliableLaneRefusesWhenFull() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 3, 8, 8);
+        assertTrue(queue.offer(OutboundQueue.Lane.EVENTS, "a"));
+        assertTrue(queue.offer(OutboundQueue.Lane.EVENTS, "b"));
+        assertTrue(queue.offer(OutboundQueue.Lane.EVENTS, "c"));
+        assertFalse(queue.offer(OutboundQueue.Lane.EVENTS, "d"));
+
+        List<String> out = new ArrayList<>();
+        queue.drain(100, false, out);
+        assertEquals(Arrays.asList("a", "b", "c"), out);
+        assertTrue(queue.offer(OutboundQueue.Lane.EVENTS, "e"));
+    }
+
+    @Test
+    void boundedLanesDropTheOldest() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 8, 8, 2);
+        assertTrue(queue.offer(OutboundQueue.Lane.CHAT, "1"));
+        assertTrue(queue.offer(OutboundQueue.Lane.CHAT, "2"));
+        assertTrue(queue.offer(OutboundQueue.Lane.CHAT, "3"));
+        List<String> out = new ArrayList<>();
+        queue.drain(100, false, out);
+        assertEquals(Arrays.asList("2", "3"), out);
+    }
+
+    @Test
+    void allowanceLimitsWhatIsDrained() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 8, 8, 8);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(OutboundQueue.Lane.EVENTS, "event-000" + i);
+        }
+        List<String> out = new ArrayList<>();
+        assertEquals(20, queue.drain(25, false, out));
+        assertEquals(Arrays.asList("event-0000", "event-0001"), out);
+
+        out.clear();
+        assertEquals(30, queue.drain(100, false, out));
+        assertEquals(Arrays.asList("event-0002", "event-0003", "event-0004"), out);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void lanesShareTheAllowanceByWeight() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 100, 100, 100);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(OutboundQueue.Lane.EVENTS, "eeeeeeeee" + (i % 10));
+            queue.offer(OutboundQueue.Lane.CHAT, "ccccccccc" + (i % 10));
+        }
+        List<String> out = new ArrayList<>();
+        // events 4/5 and chat 1/5 of 100 characters
+        assertEquals(100, queue.drain(100, false, out));
+        assertEquals(8, out.stream().filter(m -> m.startsWith("e")).count());
+        assertEquals(2, out.stream().filter(m -> m.startsWith("c")).count());
+    }
+
+    @Test
+    void unusedShareCarriesOverToTheNextDrain() {
+        OutboundQueue queue = new OutboundQueue(WEIGHTS, 100, 100, 100);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(OutboundQueue.Lane.EVENTS, "eeeeeeeee" + (i % 10));
+        }
+        queue.offer(OutboundQueue.Lane.CHAT, "a chat of 20 chars..");
+
+        // Chat's share of 10 is too small; the rest goes to events by priority
+        List<String> out = new ArrayList<>();
+        assertEquals(50, queue.drain(50, false, out));
+        assertEquals(5, out.stream().filter(m -> m.startsWith("e")).count());
+
+        // 10 carried over plus 10 new is enough
+        out.clear();
+        queue.drain(50, false, out);
+        assertTrue(out.contains("a chat of 20 chars.."));
+    }
+}
@@ -0,0 +1,51 @@
+package com.minitankfire.network;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ResumeTokensTest {
+
+    private static final String PLAYER = "3f2c9a1e-7b4d-4e8a-9c61-5d0b2e7f8a13";
+
+    @Test
+    void verifiesItsOwnTokens() {
+        ResumeTokens tokens = new ResumeTokens();
+        assertEquals(PLAYER, tokens.verify(tokens.issue(PLAYER)));
+    }
+
+    @Test
+    void rejectsTokensFromAnotherServerRun() {
+        String token = new ResumeTokens().issue(PLAYER);
+        assertNull(new ResumeTokens().verify(token));
+    }
+
+    @Test
+    void rejectsASignatureMovedToAnotherPlayer() {
+        ResumeTokens tokens = new ResumeTokens();
+        String token = tokens.issue(PLAYER);
+        String signature = token.substring(token.lastIndexOf('.'));
+        assertNull(tokens.verify("0a1b2c3d-0000-4000-8000-000000000000" + signature));
+    }
+
+    @Test
+    void rejectsATamperedSignature() {
+        ResumeTokens tokens = new ResumeTokens();
+        String token = tokens.issue(PLAYER);
+        int first = token.lastIndexOf('.') + 1;
+        char c = token.charAt(first);
+        String tampered = token.substring(0, first) + (c == 'A' ? 'B' : 'A') + token.substring(first + 1);
+        assertNull(tokens.verify(tampered));
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        ResumeTokens tokens = new ResumeTokens();
+        assertNull(tokens.verify(""));
+        assertNull(tokens.verify(PLAYER));
+        assertNull(tokens.verify(".c2lnbmF0dXJl"));
+        assertNull(tokens.verify(PLAYER + "."));
+        assertNull(tokens.verify(PLAYER + ".not base64!"));
+    }
+}